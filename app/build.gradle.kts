@@ -8,6 +8,9 @@
 plugins {
     // Apply the application plugin to add support for building a CLI application in Java.
     application
+    
+    // Adds the jmh source set and task for running benchmarks.
+    alias(libs.plugins.jmh)
 }
 
 repositories {
@@ -44,6 +47,14 @@ application {
     mainClass = "com.evelynsalie.App"
 }
 
+// Benchmarks live in src/jmh and are run with `./gradlew jmh`. They generate their own synthetic training data.
+// The gc profiler reports the allocation rate of each benchmark.
+jmh {
+    jmhVersion = libs.versions.jmh
+    profilers = listOf("gc")
+    resultFormat = "JSON"
+}
+
 tasks.named<Test>("test") {
     // Use JUnit Platform for unit tests.
     useJUnitPlatform()
@@ -0,0 +1,75 @@
+package com.evelynsalie;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Measures saving a trained model and loading it again.
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModelFileBenchmark {
+	private Model model;
+	private File model_file;
+	private File save_file;
+	
+	// A line made of words from the training data's vocabulary.
+	private String sample_line;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		File data = Files.createTempFile("model-file-benchmark", ".ekdt").toFile();
+		SyntheticDataset dataset = new SyntheticDataset(20000, 1);
+		dataset.write(data, 100000);
+		sample_line = dataset.nextLine(5);
+		
+		model = new Model(4, 10, 50000, 2000);
+		model.buildFromFile(data, 100000, 0, 0);
+		data.delete();
+		
+		File dir = Files.createTempDirectory("model-file-benchmark").toFile();
+		model_file = new File(dir, "load.ekmd");
+		save_file = new File(dir, "save.ekmd");
+		model.saveToFile(model_file);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		model_file.delete();
+		save_file.delete();
+		model_file.getParentFile().delete();
+	}
+	
+	@Benchmark
+	public File saveToFile() throws IOException {
+		model.saveToFile(save_file);
+		return save_file;
+	}
+	
+	@Benchmark
+	public Model load() throws IOException {
+		return new Model(model_file);
+	}
+	
+	// Loading maps the file lazily, so also label a line to include the cost of faulting in the pages it touches.
+	@Benchmark
+	public double loadAndLabel() throws IOException {
+		return new Model(model_file).getLabel(sample_line);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,97 @@
+package com.evelynsalie;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Measures handling a burst of concurrent requests to label a single statement, as /api/labels does, on each kind of request executor.
+// Each request first waits on its client for a while, standing in for a slow upload, then labels its statement on the shared labeling threads.
+// "platform" handles requests on a small pool of platform threads, like the server's default executor, and "virtual" on a virtual thread per request.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestExecutorBenchmark {
+	@Param({"platform", "virtual"})
+	public String executor;
+	
+	@Param({"2000"})
+	public int num_requests;
+	
+	// The time each request spends waiting on its client.
+	@Param({"1"})
+	public int upload_millis;
+	
+	private Model model;
+	private String[] lines;
+	
+	private ExecutorService labeling_workers;
+	private ExecutorService request_executor;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		File data = Files.createTempFile("request-executor-benchmark", ".ekdt").toFile();
+		data.deleteOnExit();
+		new SyntheticDataset(20000, 1).write(data, 50000);
+		
+		model = new Model(3, 20, 50000, 2000);
+		model.buildFromFile(data, 50000, 0, 0);
+		
+		SyntheticDataset statements = new SyntheticDataset(20000, 2);
+		lines = new String[num_requests];
+		for (int i = 0; i < num_requests; i++) lines[i] = statements.nextLine(1 + i % 5);
+		
+		int num_processors = Runtime.getRuntime().availableProcessors();
+		labeling_workers = Executors.newFixedThreadPool(num_processors);
+		
+		if (executor.equals("virtual")) request_executor = Executors.newVirtualThreadPerTaskExecutor();
+		else request_executor = Executors.newFixedThreadPool(num_processors);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		request_executor.shutdownNow();
+		labeling_workers.shutdownNow();
+	}
+	
+	@Benchmark
+	public double handleRequests() throws InterruptedException, ExecutionException {
+		List<Future<Double>> requests = new ArrayList<Future<Double>>(num_requests);
+		for (int i = 0; i < num_requests; i++) {
+			String line = lines[i];
+			requests.add(request_executor.submit(() -> {
+				Thread.sleep(upload_millis);
+				
+				BatchLabeler labeler = new BatchLabeler(model, labeling_workers, 1);
+				return labeler.summarize(List.of(line).iterator(), 1000).getStats().getMean();
+			}));
+		}
+		
+		double sum = 0;
+		for (Future<Double> request : requests) sum += request.get();
+		
+		return sum;
+	}
+}
\ No newline at end of file
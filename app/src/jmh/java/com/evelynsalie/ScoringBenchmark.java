@@ -0,0 +1,84 @@
+package com.evelynsalie;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Measures the cost of labeling a single line and of its constituent steps.
+// Each invocation uses the next line of a synthetic dataset, so results average over realistic line lengths.
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScoringBenchmark {
+	@State(Scope.Benchmark)
+	public static class TrainedModel {
+		Model model;
+		String[] lines;
+		
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			File data = Files.createTempFile("scoring-benchmark", ".ekdt").toFile();
+			data.deleteOnExit();
+			new SyntheticDataset(20000, 1).write(data, 50000);
+			
+			model = new Model(3, 20, 50000, 2000);
+			model.buildFromFile(data, 50000, 0, 0);
+			
+			lines = new String[10000];
+			try (BufferedReader reader = new BufferedReader(new FileReader(data))) {
+				reader.readLine();
+				for (int i = 0; i < lines.length; i++) {
+					String line = reader.readLine();
+					lines[i] = line.substring(line.indexOf(' ') + 1);
+				}
+			}
+		}
+	}
+	
+	@State(Scope.Thread)
+	public static class Cursor {
+		int index = 0;
+		
+		String next(TrainedModel state) {
+			index = (index + 1) % state.lines.length;
+			return state.lines[index];
+		}
+	}
+	
+	@Benchmark
+	public String sanitize(TrainedModel state, Cursor cursor) {
+		return Model.sanitize(cursor.next(state));
+	}
+	
+	@Benchmark
+	public int[] tokenize(TrainedModel state, Cursor cursor) {
+		return state.model.tokenize(Model.sanitize(cursor.next(state)));
+	}
+	
+	// Every line is labeled repeatedly, so after the first pass over the lines this measures labels found in the model's cache.
+	@Benchmark
+	public double getLabel(TrainedModel state, Cursor cursor) {
+		return state.model.getLabel(cursor.next(state));
+	}
+	
+	@Benchmark
+	public double getUncachedLabel(TrainedModel state, Cursor cursor) {
+		return state.model.getUncachedLabel(cursor.next(state));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,120 @@
+package com.evelynsalie;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+* Generates labeled datasets (.ekdt) resembling reviews, so benchmarks need no real training data.
+* Word frequencies follow a Zipfian distribution. Some words are positive or negative and appear more often in lines with matching ratings.
+* The same seed always produces the same file.
+*/
+public class SyntheticDataset {
+	// Exponent of the Zipfian distribution. Natural language is close to 1.
+	private static final double ZIPF_EXPONENT = 1.1;
+	
+	private static final int MIN_LINE_LENGTH = 5;
+	private static final int MAX_LINE_LENGTH = 60;
+	
+	private final Random random;
+	
+	private final String[] vocabulary;
+	
+	// The polarity of each word: -1, 0 or 1.
+	private final int[] polarities;
+	
+	// Cumulative probability of sampling each word, in decreasing order of frequency.
+	private final double[] cumulative_probabilities;
+	
+	/**
+	* @param vocabulary_size The number of distinct words.
+	* @param seed The seed of all random choices.
+	*/
+	public SyntheticDataset(int vocabulary_size, long seed) {
+		this.random = new Random(seed);
+		
+		this.vocabulary = new String[vocabulary_size];
+		this.polarities = new int[vocabulary_size];
+		this.cumulative_probabilities = new double[vocabulary_size];
+		
+		HashSet<String> used_words = new HashSet<String>();
+		double total = 0;
+		for (int i = 0; i < vocabulary_size; i++) {
+			String word;
+			do {
+				word = randomWord(2 + random.nextInt(8));
+			} while (!used_words.add(word));
+			
+			vocabulary[i] = word;
+			
+			double x = random.nextDouble();
+			polarities[i] = x < 0.15 ? 1 : x < 0.3 ? -1 : 0;
+			
+			total += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+			cumulative_probabilities[i] = total;
+		}
+		
+		for (int i = 0; i < vocabulary_size; i++) cumulative_probabilities[i] /= total;
+	}
+	
+	/**
+	* Writes the passed number of labeled lines to the passed file, preceded by the line count.
+	*/
+	public void write(File file, int num_lines) throws IOException {
+		try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+			writer.write(Integer.toString(num_lines));
+			writer.write('\n');
+			
+			for (int i = 0; i < num_lines; i++) {
+				int rating = 1 + random.nextInt(5);
+				writer.write(Integer.toString(rating));
+				writer.write(' ');
+				writer.write(nextLine(rating));
+				writer.write('\n');
+			}
+		}
+	}
+	
+	/**
+	* Generates the text of a line with the passed rating, from 1 to 5.
+	*/
+	public String nextLine(int rating) {
+		// Sign of the polarity which words in this line tend to have.
+		int sign = Integer.signum(rating - 3);
+		
+		int length = MIN_LINE_LENGTH + random.nextInt(MAX_LINE_LENGTH - MIN_LINE_LENGTH + 1);
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			int word = nextWord();
+			
+			// Usually replace words whose polarity contradicts the rating.
+			if (polarities[word] != 0 && polarities[word] != sign && random.nextDouble() < 0.7) word = nextWord();
+			
+			if (i > 0) line.append(' ');
+			line.append(vocabulary[word]);
+		}
+		
+		return line.toString();
+	}
+	
+	// Samples the index of a word from the Zipfian distribution.
+	private int nextWord() {
+		int index = Arrays.binarySearch(cumulative_probabilities, random.nextDouble());
+		if (index < 0) index = -index - 1;
+		
+		return Math.min(index, vocabulary.length - 1);
+	}
+	
+	private String randomWord(int length) {
+		char[] word = new char[length];
+		for (int i = 0; i < length; i++) word[i] = (char) ('a' + random.nextInt(26));
+		
+		return new String(word);
+	}
+}
\ No newline at end of file
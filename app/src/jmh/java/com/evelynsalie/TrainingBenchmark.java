@@ -0,0 +1,49 @@
+package com.evelynsalie;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Measures training a model from start to finish on a synthetic dataset.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TrainingBenchmark {
+	@Param({"100000"})
+	public int num_lines;
+	
+	@Param({"1", "4"})
+	public int num_threads;
+	
+	private File data;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		data = Files.createTempFile("training-benchmark", ".ekdt").toFile();
+		data.deleteOnExit();
+		new SyntheticDataset(20000, 1).write(data, num_lines);
+	}
+	
+	@Benchmark
+	public Model buildFromFile() throws IOException {
+		Model model = new Model(3, 20, 50000, 2000, num_threads);
+		model.buildFromFile(data, num_lines, 0, 0);
+		return model;
+	}
+}
\ No newline at end of file
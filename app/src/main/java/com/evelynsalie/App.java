@@ -15,6 +15,7 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
@@ -26,25 +27,72 @@ import java.util.Base64;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class App {
 	/* ---------------- */
 	/* Final Parameters */
 	/* ---------------- */
 	
-	// How many reviews will be analyzed between sequence trie pruning steps.
+	// How many reviews will be analyzed between sequence trie pruning steps, when models are not trained within a memory budget.
 	// The sequence trie takes up an enormous amount of memory and must be pruned regularly.
 	// However, pruning too frequently reduces the accuracy of analysis.
 	final private static int sequence_pruning_interval = 50000;
 	
 	// The maximum length of a sequence of tokens which can be understood by the model.
-	// Memory usage is exponential in this parameter!
+	// The number of distinct sequences grows rapidly with this parameter, although each one only
+	// occupies a few dozen bytes in the model's NGramTable. Lengths of 4-5 are feasible with regular pruning.
 	final private static int max_token_sequence_length = 3;
 		
 	// The number of lines to use to sample the standard deviation of the model's outputs.
 	// Used to adjust them to match the standard deviation of the actual labels.
 	final private static int num_renormalization_lines = 8000;
 	
+	// The approximate number of bytes that loaded models may occupy before the least recently used are evicted.
+	// Models which are still training do not count towards this budget and are never evicted.
+	final private static long model_memory_budget = 2L * 1024 * 1024 * 1024;
+	
+	// The default number of threads used to train a model, unless one is specified when the model is created.
+	final private static int num_training_threads = Runtime.getRuntime().availableProcessors();
+	
+	// The maximum number of models which may be trained at once. Further models wait in a queue.
+	final private static int max_concurrent_training_jobs = 2;
+	
+	// The maximum number of models which may wait to be trained. Further requests are rejected.
+	final private static int max_queued_training_jobs = 16;
+	
+	// The number of bytes of heap that models being trained at once are estimated to use, together.
+	// A model whose estimate exceeds this is still trained, but only when no others are.
+	final private static long training_memory_budget = Runtime.getRuntime().maxMemory() / 2;
+	
+	// The approximate number of bytes the token sequences of each model being trained may occupy. Sequences are written to disk whenever they approach it.
+	// Leaves room within training_memory_budget for the dictionary and the tables of each batch of lines, for every model trained at once.
+	final private static long training_sequence_memory_budget = training_memory_budget / max_concurrent_training_jobs / 2;
+	
+	// The number of counters in each row of the sketch that models trained from a stream use to decide which token sequences to track.
+	// Each counter occupies 80 bytes in total.
+	final private static int streaming_sketch_width = 1 << 18;
+	
+	// The number of threads shared by all labeling requests. Requests only read and wait while their statements are labeled on these threads,
+	// so this caps how many statements are labeled at once however many requests are handled.
+	final private static int num_labeling_threads = Runtime.getRuntime().availableProcessors();
+	
+	// Whether each request is handled on its own virtual thread, rather than on the threads of the server's default executor.
+	// Requests which wait on slow uploads or on other threads then no longer hold up unrelated requests.
+	final private static boolean use_virtual_request_threads = true;
+	
+	// The maximum number of requests which may train a model or compile a dataset on their own thread at once. Further such requests wait for one to finish.
+	final private static int max_concurrent_heavy_requests = Math.max(Runtime.getRuntime().availableProcessors() / 2, 1);
+	
+	// The largest body, in bytes, which may be posted to /api/models/update. The body is saved to a temporary file before it is parsed.
+	final private static long max_update_size = 512L * 1024 * 1024;
+	
 	// Threshold after which expired bearer tokens will begin getting pruned.
 	// Only expired tokens will be pruned, even if the threshold is exceeded.
 	private final static int preferred_max_active_tokens = 50;
@@ -63,13 +111,45 @@ public class App {
 	// Tracks valid tokens obtained via login.
 	private static HashMap<String, BearerToken> valid_tokens;
 	
-	// Tracks models currently loaded in memory.
-	private static HashMap<String, Model> loaded_models;
+	// Tracks models currently loaded in memory, including those being trained.
+	private static ModelRegistry loaded_models;
+	
+	// Trains models in the background.
+	private static TrainingScheduler training_scheduler;
+	
+	// Labels lines for batch labeling requests.
+	private static ExecutorService labeling_workers;
+	
+	// Handles requests when use_virtual_request_threads is set.
+	private static ExecutorService request_executor;
+	
+	// Held by each request which trains a model or compiles a dataset on its own thread. See max_concurrent_heavy_requests.
+	private static Semaphore heavy_request_permits;
+	
+	// Each is held while the model by its name is updated, so that concurrent updates of a model are not lost. Updates of different models do not wait on each other.
+	// Locks rather than monitors, since a virtual thread waiting on a monitor would hold its carrier thread for the whole update.
+	private static final ConcurrentHashMap<String, ReentrantLock> model_update_locks = new ConcurrentHashMap<String, ReentrantLock>();
 	
 	/* --------- */
 	/* Utilities */
 	/* --------- */
 	
+	// Waits for one of the heavy_request_permits. The caller must release it once its work is done.
+	private static void acquireHeavyRequestPermit() throws InterruptedIOException {
+		try {
+			heavy_request_permits.acquire();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for other requests to finish.");
+		}
+	}
+	
+	// Returns true if the passed name of a model or dataset is present and cannot refer to a file outside of its directory.
+	private static boolean isValidName(String name) {
+		return name != null && !name.isEmpty() && !name.contains("/") && !name.contains("\\") && !name.contains("..") && name.indexOf(File.separatorChar) == -1;
+	}
+	
 	// Gets the number of lines from the passed file.
 	public static int getLinesCount(File file) throws FileNotFoundException, IOException {
 		int num_lines = 0;
@@ -105,6 +185,42 @@ public class App {
 		return out.toString();
 	}
 	
+	// Copies the passed stream to the passed file, stopping once more than max_size bytes have been read. Returns false if the stream was too long.
+	public static boolean saveStream(InputStream input, File file, long max_size) throws IOException {
+		byte[] buffer = new byte[65536];
+		long size = 0;
+		
+		try (OutputStream output = new FileOutputStream(file)) {
+			for (int num_read; (num_read = input.read(buffer)) != -1; ) {
+				size += num_read;
+				if (size > max_size) return false;
+				
+				output.write(buffer, 0, num_read);
+			}
+		}
+		
+		return true;
+	}
+	
+	// Returns a reader over the lines of the part named "file" of a multipart/form-data body.
+	// Parts before it are skipped, and parts after it are never read. Returns null if there is no such part or no boundary.
+	public static BufferedReader getUploadedFile(String content_type, InputStream input) throws IOException {
+		String boundary = MultipartReader.getBoundary(content_type);
+		if (boundary == null) {
+			System.out.println("No boundary.");
+			return null;
+		}
+		
+		MultipartReader parts = new MultipartReader(input, boundary);
+		while (parts.nextPart()) {
+			if ("file".equals(parts.getName())) {
+				return new BufferedReader(new InputStreamReader(parts.getPartStream(), StandardCharsets.UTF_8));
+			}
+		}
+		
+		return null;
+	}
+	
 	/* -------------- */
 	/* Web Page Utils */
 	/* -------------- */
@@ -202,264 +318,434 @@ public class App {
 	// Homepage
 	@Route("/")
 	public void index(Response response) throws IOException {
-		if (contemplateRedirect(response)) return;
-		
-		response.addHeader("Content-Type", "text/html; charset=utf-8");
-		response.setStatus(200);
-		
-		HashMap<String, String> map = new HashMap<String, String>();
-		map.put("content", inputStreamToString(App.class.getClassLoader().getResourceAsStream("index.html")));
-		renderTemplateToResponse(template, map, response);
+		Metrics.time("GET /", () -> {
+			if (contemplateRedirect(response)) return;
+			
+			response.addHeader("Content-Type", "text/html; charset=utf-8");
+			response.setStatus(200);
+			
+			HashMap<String, String> map = new HashMap<String, String>();
+			map.put("content", inputStreamToString(App.class.getClassLoader().getResourceAsStream("index.html")));
+			renderTemplateToResponse(template, map, response);
+		});
 	}
 	
 	// Stylesheet
 	@Route("/css")
 	public void css(Response response) throws IOException {
-		response.addHeader("Content-Type", "text/css; charset=utf-8");
-		response.setStatus(200);
-		
-		renderStaticPageToResponse(inputStreamToString(App.class.getClassLoader().getResourceAsStream("index.css")), response);
+		Metrics.time("GET /css", () -> {
+			response.addHeader("Content-Type", "text/css; charset=utf-8");
+			response.setStatus(200);
+			
+			renderStaticPageToResponse(inputStreamToString(App.class.getClassLoader().getResourceAsStream("index.css")), response);
+		});
 	}
 	
 	// Login page
 	@Route("/login")
 	public void login(Response response) throws IOException {
-		response.addHeader("Content-Type", "text/html; charset=utf-8");
-		response.setStatus(200);
-		
-		HashMap<String, String> map = new HashMap<String, String>();
-		map.put("content", inputStreamToString(App.class.getClassLoader().getResourceAsStream("login.html")));
-		renderTemplateToResponse(template, map, response);
+		Metrics.time("GET /login", () -> {
+			response.addHeader("Content-Type", "text/html; charset=utf-8");
+			response.setStatus(200);
+			
+			HashMap<String, String> map = new HashMap<String, String>();
+			map.put("content", inputStreamToString(App.class.getClassLoader().getResourceAsStream("login.html")));
+			renderTemplateToResponse(template, map, response);
+		});
 	}
 	
 	@Route("/model-selection")
 	public void model_selection(Response response) throws IOException {
-		if (contemplateRedirect(response)) return;
-		
-		response.addHeader("Content-Type", "text/html; charset=utf-8");
-		response.setStatus(200);
-		
-		HashMap<String, String> map = new HashMap<String, String>();
-		map.put("content", inputStreamToString(App.class.getClassLoader().getResourceAsStream("model-selection.html")));
-		renderTemplateToResponse(template, map, response);
+		Metrics.time("GET /model-selection", () -> {
+			if (contemplateRedirect(response)) return;
+			
+			response.addHeader("Content-Type", "text/html; charset=utf-8");
+			response.setStatus(200);
+			
+			HashMap<String, String> map = new HashMap<String, String>();
+			map.put("content", inputStreamToString(App.class.getClassLoader().getResourceAsStream("model-selection.html")));
+			renderTemplateToResponse(template, map, response);
+		});
 	}
 	
 	@Route("/model-creation")
 	public void model_creation(Response response) throws IOException {
-		if (contemplateRedirect(response)) return;
-		
-		response.addHeader("Content-Type", "text/html; charset=utf-8");
-		response.setStatus(200);
-		
-		HashMap<String, String> map = new HashMap<String, String>();
-		map.put("content", inputStreamToString(App.class.getClassLoader().getResourceAsStream("model-creation.html")));
-		renderTemplateToResponse(template, map, response);
+		Metrics.time("GET /model-creation", () -> {
+			if (contemplateRedirect(response)) return;
+			
+			response.addHeader("Content-Type", "text/html; charset=utf-8");
+			response.setStatus(200);
+			
+			HashMap<String, String> map = new HashMap<String, String>();
+			map.put("content", inputStreamToString(App.class.getClassLoader().getResourceAsStream("model-creation.html")));
+			renderTemplateToResponse(template, map, response);
+		});
 	}
 	
 	@Route("/data-labeling")
 	public void data_labeling(Response response) throws IOException {
-		if (contemplateRedirect(response)) return;
-		
-		response.addHeader("Content-Type", "text/html; charset=utf-8");
-		response.setStatus(200);
-		
-		HashMap<String, String> map = new HashMap<String, String>();
-		map.put("content", inputStreamToString(App.class.getClassLoader().getResourceAsStream("data-labeling.html")));
-		renderTemplateToResponse(template, map, response);
+		Metrics.time("GET /data-labeling", () -> {
+			if (contemplateRedirect(response)) return;
+			
+			response.addHeader("Content-Type", "text/html; charset=utf-8");
+			response.setStatus(200);
+			
+			HashMap<String, String> map = new HashMap<String, String>();
+			map.put("content", inputStreamToString(App.class.getClassLoader().getResourceAsStream("data-labeling.html")));
+			renderTemplateToResponse(template, map, response);
+		});
 	}
 	
 	// Login credential validation
 	@Route("api/authenticate")
 	@Post
 	public void login_post(Response response) throws IOException, FileNotFoundException {
-		String userpass = response.getRequest().getHeader("Authorization");
-		File logins_fin = new File("logins");
-		
-		boolean is_authenticated = false;
-		System.out.println("Authenticating with '" + userpass + "'");
-		
-		BufferedReader brin = new BufferedReader(new FileReader(logins_fin));
-	
-		String line;
-		while ((line = brin.readLine()) != null) {
-			if (line.equals(userpass)) {
-				is_authenticated = true;
-				break;
-			}
-		}
-		
-		brin.close();
-		
-		if (is_authenticated) {
-			// Redirect to original goal.
-			String new_path = "/";
+		Metrics.time("POST api/authenticate", () -> {
+			String userpass = response.getRequest().getHeader("Authorization");
+			File logins_fin = new File("logins");
 			
-			String encodedString = response.getRequest().getQuery().get("goal");
-			System.out.println("Encoded: " + encodedString);
-			if (encodedString != null) {
-				byte[] decodedBytes = Base64.getDecoder().decode(encodedString);
-				new_path = new String(decodedBytes, StandardCharsets.UTF_8);
-				System.out.println(new_path);
+			boolean is_authenticated = false;
+			System.out.println("Authenticating with '" + userpass + "'");
+			
+			BufferedReader brin = new BufferedReader(new FileReader(logins_fin));
+		
+			String line;
+			while ((line = brin.readLine()) != null) {
+				if (line.equals(userpass)) {
+					is_authenticated = true;
+					break;
+				}
 			}
 			
-			// Generate and assign a token.
-			BearerToken new_token = new BearerToken(bearer_token_lifetime);
-			valid_tokens.put(new_token.toString(), new_token);
-			response.addHeader("Set-Cookie", "tk=" + new_token.toString() + "; Path=/");
+			brin.close();
 			
-			// Redirect
-			System.out.println("Redirecting to '" + new_path + "'");
-			response.addHeader("Content-Type", "text/plain; charset=utf-8");
-			response.addHeader("Location", new_path);
-			response.setStatus(200);
-		}
-		else {
-			// Redirect to login with error message.
-			response.addHeader("Content-Type", "text/plain; charset=utf-8");
-			response.addHeader("Location", "/login?error=true");
-			response.setStatus(200);
-		}
+			if (is_authenticated) {
+				// Redirect to original goal.
+				String new_path = "/";
+				
+				String encodedString = response.getRequest().getQuery().get("goal");
+				System.out.println("Encoded: " + encodedString);
+				if (encodedString != null) {
+					byte[] decodedBytes = Base64.getDecoder().decode(encodedString);
+					new_path = new String(decodedBytes, StandardCharsets.UTF_8);
+					System.out.println(new_path);
+				}
+				
+				// Generate and assign a token.
+				BearerToken new_token = new BearerToken(bearer_token_lifetime);
+				valid_tokens.put(new_token.toString(), new_token);
+				response.addHeader("Set-Cookie", "tk=" + new_token.toString() + "; Path=/");
+				
+				// Redirect
+				System.out.println("Redirecting to '" + new_path + "'");
+				response.addHeader("Content-Type", "text/plain; charset=utf-8");
+				response.addHeader("Location", new_path);
+				response.setStatus(200);
+			}
+			else {
+				// Redirect to login with error message.
+				response.addHeader("Content-Type", "text/plain; charset=utf-8");
+				response.addHeader("Location", "/login?error=true");
+				response.setStatus(200);
+			}
+		});
 	}
 	
 	@Route("/api/models")
 	public void get_models(Response response) throws IOException {
-		File models_dir = new File("models");
-		File[] models = models_dir.listFiles();
-		
-		String data = "[";
-		boolean skipped_one = false;
-		for (int i = 0; i < models.length; i++) {
-			ModelSummaryDTO dto = new ModelSummaryDTO(models[i]);
+		Metrics.time("GET /api/models", () -> {
+			File models_dir = new File("models");
+			File[] models = models_dir.listFiles();
 			
-			if (dto.isValid()) {
-				if (skipped_one) {
-					data += ",";
-				}
-				else {
-					skipped_one = true;
-				}
+			String data = "[";
+			boolean skipped_one = false;
+			for (int i = 0; i < models.length; i++) {
+				ModelSummaryDTO dto = new ModelSummaryDTO(models[i]);
 				
-				data += dto.getJSON();
+				if (dto.isValid()) {
+					if (skipped_one) {
+						data += ",";
+					}
+					else {
+						skipped_one = true;
+					}
+					
+					data += dto.getJSON();
+				}
 			}
-		}
-		data += "]";
-		
-		response.addHeader("Content-Type", "application/json; charset=utf-8");
-		response.setStatus(200);
-		renderStaticPageToResponse(data, response);
+			data += "]";
+			
+			response.addHeader("Content-Type", "application/json; charset=utf-8");
+			response.setStatus(200);
+			renderStaticPageToResponse(data, response);
+		});
 	}
 	
 	@Route("/api/models")
 	@Delete
 	public void delete_models(Response response) throws IOException {
-		String filename = "models/" + inputStreamToString(response.getRequest().getInputStream()) + ".ekmd";
+		Metrics.time("DELETE /api/models", () -> {
+			String model_name = inputStreamToString(response.getRequest().getInputStream());
+			if (!isValidName(model_name)) {
+				response.setStatus(400);
+				return;
+			}
 			
-		File model = new File(filename);
-		
-		if (model.exists()) {
-//			System.out.println("Deleteing '" + filename + "'");
-			model.delete();
-			response.setStatus(200);
-		}
-		else {
-//			System.out.println("'" + filename + "' Not Found.");
-			response.setStatus(404);
-		}
+			File model = loaded_models.getFile(model_name);
+			
+			if (model.exists()) {
+				// Models are reserved for as long as a job is training them, and cannot be deleted until it ends.
+				if (!loaded_models.invalidateUnlessReserved(model_name)) {
+					response.setStatus(409);
+					return;
+				}
+				
+				model.delete();
+				response.setStatus(200);
+			}
+			else {
+				response.setStatus(404);
+			}
+		});
 	}
 	
 	@Route("/api/models")
 	@Post
 	public void put_models(Response response) throws IOException {
-		String input_string = inputStreamToString(response.getRequest().getInputStream());
-		String[] inputs = input_string.split("/");
-		if (inputs.length != 4) {
-			response.setStatus(400);
-			return;
-		}
-		
-		File model_file = new File("models/" + inputs[0] + ".ekmd");
-		File dataset_file = new File("labeled-data/" + inputs[1] + ".ekdt");
-		int min_token_occurence = Integer.parseInt(inputs[2]);
-		int num_lines = Integer.parseInt(inputs[3]);
-		
-		min_token_occurence = Math.max(min_token_occurence, num_lines / 5000);
-		
-		// Check parameter validity
-		if (min_token_occurence < 0 || num_lines < 1) {
-			response.setStatus(400);
-			return;
-		}
-		
-		// Check that the dataset exists.
-		if (!dataset_file.exists()) {
-			response.setStatus(400);
-			return;
-		}
-		
-		// Do not overwrite existing model.
-		if (model_file.exists()) {
-			response.setStatus(400);
-			return;
-		}
-		
-		Model model = new Model(
-			max_token_sequence_length, min_token_occurence,
-			sequence_pruning_interval, num_renormalization_lines
-		);
-		loaded_models.put(inputs[0], model);
-		
-		model.buildFromFile(dataset_file, num_lines, 0, 0);
-		
-		try {
-			model.saveToFile(model_file);
-			System.out.println("Model Recorded.");
-		}
-		catch (IOException e) {
-			response.setStatus(400);
-			return;
-		}
+		Metrics.time("POST /api/models", () -> {
+			String input_string = inputStreamToString(response.getRequest().getInputStream());
+			String[] inputs = input_string.split("/");
+			if (inputs.length != 4 && inputs.length != 5) {
+				response.setStatus(400);
+				return;
+			}
+			
+			if (!isValidName(inputs[0]) || !isValidName(inputs[1])) {
+				response.setStatus(400);
+				return;
+			}
+			
+			File model_file = loaded_models.getFile(inputs[0]);
+			File dataset_file = new File("labeled-data/" + inputs[1] + ".ekdt");
+			
+			int min_token_occurence;
+			int num_lines;
+			
+			// Optional number of training threads.
+			int num_threads = num_training_threads;
+			try {
+				min_token_occurence = Integer.parseInt(inputs[2]);
+				num_lines = Integer.parseInt(inputs[3]);
+				if (inputs.length == 5) num_threads = Integer.parseInt(inputs[4]);
+			}
+			catch (NumberFormatException e) {
+				response.setStatus(400);
+				return;
+			}
+			
+			min_token_occurence = Math.max(min_token_occurence, num_lines / 5000);
+			
+			// Check parameter validity
+			if (min_token_occurence < 0 || num_lines < 1 || num_threads < 1) {
+				response.setStatus(400);
+				return;
+			}
+			
+			// Check that the dataset exists.
+			if (!dataset_file.exists()) {
+				response.setStatus(400);
+				return;
+			}
+			
+			// Train from the dataset's compiled form if it is up to date, which avoids parsing its text.
+			if (CompiledCorpus.hasCompiledForm(dataset_file)) dataset_file = CompiledCorpus.getCompiledFile(dataset_file);
+			
+			// Do not overwrite existing model.
+			if (model_file.exists()) {
+				response.setStatus(400);
+				return;
+			}
+			
+			Model model = new Model(
+				max_token_sequence_length, min_token_occurence,
+				sequence_pruning_interval, num_renormalization_lines,
+				num_threads, training_sequence_memory_budget, new File("training-spill")
+			);
+			
+			// Do not train two models by the same name at once.
+			TrainingJob previous_job = training_scheduler.getLatestJob(inputs[0]);
+			if (previous_job != null && previous_job.isActive()) {
+				response.setStatus(400);
+				return;
+			}
+			
+			// Trained in the background. Progress is reported by /api/model-progress.
+			TrainingJob job = training_scheduler.submit(inputs[0], model, dataset_file, num_lines);
+			if (job == null) {
+				response.setStatus(503);
+				return;
+			}
+			
+			response.addHeader("Content-Type", "application/json; charset=utf-8");
+			response.setStatus(202);
+			renderStaticPageToResponse(job.getJSON(), response);
+		});
 	}
 	
-	@Route("/api/model-progress")
-	public void get_model_progress(Response response) throws IOException {
-		String model_name = response.getRequest().getQuery().get("model-name");
-		response.addHeader("Content-Type", "application/json; charset=UTF-8");
-		
-		// Model name not specified, bad request.
-		if (model_name == null) {
-			response.setStatus(400);
-			return;
-		}
-		
-		// Check if the model is done.
-		File model = new File("models/" + model_name + ".ekmd");
-		if (model.exists()) {
-			renderStaticPageToResponse(Model.getCompleteStatusJSON(), response);
-			return;
-		}
-		
-		// Model not found.
-		if (!loaded_models.containsKey(model_name)) {
-			response.setStatus(404);
-			return;
-		}
-		
-		// Model loaded but not saved to disk.
-		// Thus the model must be in progress of being built.
-		renderStaticPageToResponse(loaded_models.get(model_name).getStatusJSON(), response);
+	// Train a model in a single pass over a dataset streamed as the body of the request, and save it once the body ends.
+	// Takes the model's name and the minimum number of occurences of its tokens from the "model-name" and "min-occurences" query parameters.
+	// Training is listed by /api/jobs like any other job, and can be cancelled there.
+	@Route("/api/models/stream")
+	@Post
+	public void stream_models(Response response) throws IOException {
+		Metrics.time("POST /api/models/stream", () -> {
+			String model_name = response.getRequest().getQuery().get("model-name");
+			String min_occurences = response.getRequest().getQuery().get("min-occurences");
+			if (!isValidName(model_name) || min_occurences == null) {
+				response.setStatus(400);
+				return;
+			}
+			
+			int min_token_occurence;
+			try {
+				min_token_occurence = Integer.parseInt(min_occurences);
+			}
+			catch (NumberFormatException e) {
+				response.setStatus(400);
+				return;
+			}
+			
+			if (min_token_occurence < 1) {
+				response.setStatus(400);
+				return;
+			}
+			
+			// Reserves the name, so the model cannot overwrite an existing model, or one being trained, and is listed with the other jobs.
+			TrainingJob job = training_scheduler.startStream(model_name);
+			if (job == null) {
+				response.setStatus(400);
+				return;
+			}
+			
+			StreamingTrainer trainer = new StreamingTrainer(
+				max_token_sequence_length, min_token_occurence,
+				sequence_pruning_interval, num_renormalization_lines,
+				streaming_sketch_width
+			);
+			
+			File model_file = loaded_models.getFile(model_name);
+			Model saved_model = null;
+			job.setThread(Thread.currentThread());
+			try {
+				if (job.isCancelRequested()) throw new InterruptedIOException("Cancelled before starting.");
+				
+				Model model;
+				acquireHeavyRequestPermit();
+				try {
+					model = trainer.train(response.getRequest().getInputStream(), true);
+				}
+				finally {
+					heavy_request_permits.release();
+				}
+				
+				model.saveToFile(model_file);
+				saved_model = model;
+			}
+			finally {
+				job.setThread(null);
+				
+				// Do not leave the request's thread interrupted by a cancellation once training has stopped.
+				Thread.interrupted();
+				
+				training_scheduler.finishStream(job, saved_model);
+			}
+			
+			response.addHeader("Content-Type", "application/json; charset=utf-8");
+			response.setStatus(201);
+			renderStaticPageToResponse(new ModelSummaryDTO(model_file).getJSON(), response);
+		});
 	}
 	
-	@Route("/api/datasets")
-	public void get_datasets(Response response) throws IOException {
-		File labeled_data_dir = new File("labeled-data");
-		File[] datasets = labeled_data_dir.listFiles();
-		
-		String data = "[";
-		boolean skipped_one = false;
-		for (int i = 0; i < datasets.length; i++) {
-			DatasetSummaryDTO dto = new DatasetSummaryDTO(datasets[i]);
+	// Add the labeled lines streamed as the body of the request, in the format of a dataset, to an existing model and save it.
+	// Takes the model's name from the "model-name" query parameter. The updated model replaces the previous one once it is saved,
+	// and the previous model continues to label text until then. Updates of the same model are applied one at a time.
+	// The body is saved and its words are counted before the model's lock is taken. Bodies larger than max_update_size are refused.
+	@Route("/api/models/update")
+	@Post
+	public void update_models(Response response) throws IOException {
+		Metrics.time("POST /api/models/update", () -> {
+			String model_name = response.getRequest().getQuery().get("model-name");
+			if (!isValidName(model_name)) {
+				response.setStatus(400);
+				return;
+			}
+			
+			// Do not update a model being trained.
+			TrainingJob previous_job = training_scheduler.getLatestJob(model_name);
+			if (previous_job != null && previous_job.isActive()) {
+				response.setStatus(400);
+				return;
+			}
+			
+			File model_file = loaded_models.getFile(model_name);
+			File delta_file = File.createTempFile("update-", ".ekdt");
+			try {
+				if (!saveStream(response.getRequest().getInputStream(), delta_file, max_update_size)) {
+					response.setStatus(413);
+					return;
+				}
+				
+				Model.Delta delta;
+				acquireHeavyRequestPermit();
+				try {
+					delta = Model.Delta.read(delta_file);
+				}
+				finally {
+					heavy_request_permits.release();
+				}
+				
+				ReentrantLock model_update_lock = model_update_locks.computeIfAbsent(model_name, key -> new ReentrantLock());
+				model_update_lock.lock();
+				try {
+					Model model = loaded_models.get(model_name);
+					if (model == null) {
+						response.setStatus(404);
+						return;
+					}
+					
+					Model updated_model;
+					acquireHeavyRequestPermit();
+					try {
+						updated_model = model.update(delta);
+					}
+					finally {
+						heavy_request_permits.release();
+					}
+					
+					updated_model.saveToFile(model_file);
+					loaded_models.replace(model_name, updated_model);
+				}
+				finally {
+					model_update_lock.unlock();
+				}
+			}
+			finally {
+				delta_file.delete();
+			}
 			
-			if (dto.isValid()) {
+			response.addHeader("Content-Type", "application/json; charset=utf-8");
+			response.setStatus(200);
+			renderStaticPageToResponse(new ModelSummaryDTO(model_file).getJSON(), response);
+		});
+	}
+	
+	// List all queued, running and recently finished training jobs.
+	@Route("/api/jobs")
+	public void get_jobs(Response response) throws IOException {
+		Metrics.time("GET /api/jobs", () -> {
+			String data = "[";
+			boolean skipped_one = false;
+			for (TrainingJob job : training_scheduler.getJobs()) {
 				if (skipped_one) {
 					data += ",";
 				}
@@ -467,224 +753,291 @@ public class App {
 					skipped_one = true;
 				}
 				
-				data += dto.getJSON();
+				data += job.getJSON();
 			}
-		}
-		data += "]";
-		
-		response.addHeader("Content-Type", "application/json; charset=utf-8");
-		response.setStatus(200);
-		renderStaticPageToResponse(data, response);
+			data += "]";
+			
+			response.addHeader("Content-Type", "application/json; charset=utf-8");
+			response.setStatus(200);
+			renderStaticPageToResponse(data, response);
+		});
+	}
+	
+	// Cancel the training job whose id is the body of the request.
+	@Route("/api/jobs")
+	@Delete
+	public void delete_jobs(Response response) throws IOException {
+		Metrics.time("DELETE /api/jobs", () -> {
+			long job_id;
+			try {
+				job_id = Long.parseLong(inputStreamToString(response.getRequest().getInputStream()).trim());
+			}
+			catch (NumberFormatException e) {
+				response.setStatus(400);
+				return;
+			}
+			
+			if (training_scheduler.cancel(job_id)) {
+				response.setStatus(200);
+			}
+			else {
+				response.setStatus(404);
+			}
+		});
+	}
+	
+	@Route("/api/model-progress")
+	public void get_model_progress(Response response) throws IOException {
+		Metrics.time("GET /api/model-progress", () -> {
+			String model_name = response.getRequest().getQuery().get("model-name");
+			response.addHeader("Content-Type", "application/json; charset=UTF-8");
+			
+			// Model name not specified, bad request.
+			if (!isValidName(model_name)) {
+				response.setStatus(400);
+				return;
+			}
+			
+			// Report the state of the model's most recent training job.
+			TrainingJob job = training_scheduler.getLatestJob(model_name);
+			if (job != null) {
+				renderStaticPageToResponse(job.getStatusJSON(), response);
+				return;
+			}
+			
+			// Models trained before the server started are complete.
+			if (loaded_models.getFile(model_name).exists()) {
+				renderStaticPageToResponse(Model.getCompleteStatusJSON(), response);
+				return;
+			}
+			
+			// Model not found.
+			response.setStatus(404);
+		});
+	}
+	
+	// Counters and latency histograms of labeling, training, loading and saving models, and of every route, in the Prometheus text format.
+	@Route("/api/metrics")
+	public void get_metrics(Response response) throws IOException {
+		Metrics.time("GET /api/metrics", () -> {
+			response.addHeader("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+			response.setStatus(200);
+			renderStaticPageToResponse(Metrics.getPrometheusText(), response);
+		});
+	}
+	
+	@Route("/api/datasets")
+	public void get_datasets(Response response) throws IOException {
+		Metrics.time("GET /api/datasets", () -> {
+			File labeled_data_dir = new File("labeled-data");
+			File[] datasets = labeled_data_dir.listFiles();
+			
+			String data = "[";
+			boolean skipped_one = false;
+			for (int i = 0; i < datasets.length; i++) {
+				DatasetSummaryDTO dto = new DatasetSummaryDTO(datasets[i]);
+				
+				if (dto.isValid()) {
+					if (skipped_one) {
+						data += ",";
+					}
+					else {
+						skipped_one = true;
+					}
+					
+					data += dto.getJSON();
+				}
+			}
+			data += "]";
+			
+			response.addHeader("Content-Type", "application/json; charset=utf-8");
+			response.setStatus(200);
+			renderStaticPageToResponse(data, response);
+		});
+	}
+	
+	// Compile the dataset whose name is the body of the request into a binary corpus (.ekcorpus) beside it.
+	// Models trained on the dataset afterwards read the corpus instead, until the dataset is modified.
+	@Route("/api/datasets/compile")
+	@Post
+	public void compile_dataset(Response response) throws IOException {
+		Metrics.time("POST /api/datasets/compile", () -> {
+			String dataset_name = inputStreamToString(response.getRequest().getInputStream()).trim();
+			if (!isValidName(dataset_name)) {
+				response.setStatus(400);
+				return;
+			}
+			
+			File dataset_file = new File("labeled-data/" + dataset_name + ".ekdt");
+			if (!dataset_file.exists()) {
+				response.setStatus(404);
+				return;
+			}
+			
+			acquireHeavyRequestPermit();
+			try {
+				CompiledCorpus.compile(dataset_file, CompiledCorpus.getCompiledFile(dataset_file));
+			}
+			finally {
+				heavy_request_permits.release();
+			}
+			
+			response.addHeader("Content-Type", "application/json; charset=utf-8");
+			response.setStatus(200);
+			renderStaticPageToResponse(new DatasetSummaryDTO(dataset_file).getJSON(), response);
+		});
 	}
 	
 	// Retrieve Labels for the supplied line(s).
 	@Route("/api/labels")
 	@Post
 	public void get_labels(Response response) throws IOException {
-		String content_type = response.getRequest().getHeader("Content-Type");
-		if (content_type == null) {
-			System.out.println("No Content-Type");
-			response.setStatus(400);
-			return;
-		}
-		
-		// Acquire model for labeling.
-		String model_name = response.getRequest().getCookie("current-model");
-		if (model_name == null) {
-			System.out.println("No model selected.");
-			response.setStatus(400);
-			return;
-		}
-		
-		Model model;
-		if (loaded_models.containsKey(model_name)) {
-			model = loaded_models.get(model_name);
-		}
-		else {
-			File file = new File("models/" + model_name + ".ekmd");
-			if (!file.exists()) {
+		Metrics.time("POST /api/labels", () -> {
+			String content_type = response.getRequest().getHeader("Content-Type");
+			if (content_type == null) {
+				System.out.println("No Content-Type");
+				response.setStatus(400);
+				return;
+			}
+			
+			// Acquire model for labeling.
+			String model_name = response.getRequest().getCookie("current-model");
+			if (!isValidName(model_name)) {
+				System.out.println("No model selected.");
 				response.setStatus(400);
 				return;
 			}
+			
+			// Loaded from disk on first use and kept in memory afterwards.
+			Model model = loaded_models.get(model_name);
+			if (model == null) {
+				System.out.println("No model.");
+				response.setStatus(400);
+				return;
+			}
+			
+			Iterator<String> statements = null;
+			// Single plaintext statement.
+			if (content_type.startsWith("text/plain")) {
+				statements = List.of(inputStreamToString(response.getRequest().getInputStream())).iterator();
+			}
+			// File of newline-delimited statemetns.
+			// Lines are read from the upload as they are labeled, so the file is never held in memory.
+			else if (content_type.startsWith("multipart/form-data")) {
+				BufferedReader file_reader = getUploadedFile(content_type, response.getRequest().getInputStream());
+				if (file_reader != null) statements = file_reader.lines().iterator();
+			}
 			else {
-				model = new Model(file);
+				System.out.println("Invalid content-type");
+				response.setStatus(400);
+				return;
 			}
-		}
-		
-		// Should be impossible at this point.
-		if (model == null) {
-			System.out.println("No model.");
-			response.setStatus(400);
-			return;
-		}
-		
-		String[] statements = null;
-		// Single plaintext statement.
-		if (content_type.startsWith("text/plain")) {
-			statements = new String[1];
-			statements[0] = inputStreamToString(response.getRequest().getInputStream());
-		}
-		// File of newline-delimited statemetns.
-		else if (content_type.startsWith("multipart/form-data")) {
-			// Get the formdata boundary
-			int boundary_start = content_type.indexOf("boundary");
-			if (boundary_start == -1) {
-				System.out.println("No boundary start.");
+			
+			if (statements == null) {
+				System.out.println("No statements.");
 				response.setStatus(400);
 				return;
 			}
 			
-			boundary_start = content_type.indexOf("=", boundary_start+8) + 1;
-			if (boundary_start == -1) {
-				System.out.println("No boundary start (2).");
+			// Obtain labels on the labeling threads. Record statistics and most positive/negative 5 statements.
+			BatchLabeler labeler = new BatchLabeler(model, labeling_workers, num_labeling_threads * 2);
+			LabelSummary summary = labeler.summarize(statements, 1000);
+			
+			String[] pos_examples = summary.getPositiveExamples();
+			String[] neg_examples = summary.getNegativeExamples();
+			double[] pos_labels = summary.getPositiveLabels();
+			double[] neg_labels = summary.getNegativeLabels();
+			
+			// Construct JSON output.
+			String data = "{\"stats\": " + new StatisticsTrackerDTO(summary.getStats()).getJSON() + ", \"pos-examples\": [";
+			
+			for (int i = 0; i < 5; i++) {
+				data += "{\"statement\":\"" + pos_examples[i] + "\", \"label\":" + String.format("%.2f", pos_labels[i]) + "}";
+				if (i < 4) data += ", ";
+			}
+			
+			data += "], \"neg-examples\": [";
+			
+			for (int i = 0; i < 5; i++) {
+				data += "{\"statement\":\"" + neg_examples[i] + "\", \"label\":" + String.format("%.2f", neg_labels[i]) + "}";
+				if (i < 4) data += ", ";
+			}
+			
+			data += "]}";
+			
+			// Write response.
+			response.addHeader("Content-Type", "application/json; charset=UTF-8");
+			response.setStatus(200);
+			renderStaticPageToResponse(data, response);
+		});
+	}
+	
+	// Label every line of a plaintext body or uploaded file, streaming the labels back in input order as they are computed.
+	// Responds with newline-delimited JSON, or CSV if the "format" query parameter is "csv".
+	@Route("/api/labels/batch")
+	@Post
+	public void get_batch_labels(Response response) throws IOException {
+		Metrics.time("POST /api/labels/batch", () -> {
+			String content_type = response.getRequest().getHeader("Content-Type");
+			if (content_type == null) {
+				System.out.println("No Content-Type");
 				response.setStatus(400);
 				return;
 			}
 			
-			int boundary_end = Math.max(content_type.indexOf(";", boundary_start), content_type.length());
-			String boundary = "--" + content_type.substring(boundary_start, boundary_end);
+			String model_name = response.getRequest().getCookie("current-model");
+			if (!isValidName(model_name)) {
+				System.out.println("No model selected.");
+				response.setStatus(400);
+				return;
+			}
 			
-			// Get the rawtext body of the submission.
-			String[] form_components = inputStreamToString(response.getRequest().getInputStream()).split(boundary);
+			Model model = loaded_models.get(model_name);
+			if (model == null) {
+				System.out.println("No model.");
+				response.setStatus(400);
+				return;
+			}
 			
-			// Note we skip the first form component, an empty string before the first boundary.
-			for (int i = 1; i < form_components.length; i++) {
-				String form_component = form_components[i];
-				
-				// Check for the two-hyphen suffix for the final boundary.
-				if (form_component.startsWith("--")) break;
-				
-				// Split header and body.
-				int header_end = form_component.indexOf("\r\n\r\n");
-				if (header_end == -1) {
-					System.out.println("No header end.");
-					response.setStatus(400);
-					return;
-				}
-				
-				String header = form_component.substring(0, header_end);
-				String body = form_component.substring(header_end + 4);
-				
-				// Get name param;
-				int name_start = header.indexOf("name");
-				if (name_start == -1) {
-					System.out.println("No name start.");
-					response.setStatus(400);
-					return;
-				}
-				
-				name_start = header.indexOf("\"", name_start+4) + 1;
-				if (name_start == -1) {
-					System.out.println("No name start (2).");
+			// Lines are read either directly from the body or from the file part of a form.
+			BufferedReader reader;
+			if (content_type.startsWith("text/plain")) {
+				reader = new BufferedReader(new InputStreamReader(response.getRequest().getInputStream(), StandardCharsets.UTF_8));
+			}
+			else if (content_type.startsWith("multipart/form-data")) {
+				reader = getUploadedFile(content_type, response.getRequest().getInputStream());
+				if (reader == null) {
+					System.out.println("No statements.");
 					response.setStatus(400);
 					return;
 				}
-				
-				int name_end = Math.min(header.indexOf("\"", name_start), header.length());
-				
-				String name = header.substring(name_start, name_end);
-				
-				// Check for and return file param.
-				if (name.equals("file")) {
-					statements = body.split("\\r?\\n");
-					break;
-				}
 			}
-		}
-		else {
-			System.out.println("Invalid content-type");
-			response.setStatus(400);
-			return;
-		}
-		
-		if (statements == null) {
-			System.out.println("No statements.");
-			response.setStatus(400);
-			return;
-		}
-		
-		String[] pos_examples = new String[5];
-		String[] neg_examples = new String[5];
-		double[] pos_labels = new double[5];
-		double[] neg_labels = new double[5];
-		
-		for (int i = 0; i < 5; i++) {
-			pos_examples[i] = null;
-			neg_examples[i] = null;
-			pos_labels[i] = -2;
-			neg_labels[i] = 2;
-		}
-		
-		// Obtain labels. Record statistics and most positive/negative 5 statements.
-		StatisticsTracker tracker = new StatisticsTracker(1000, -2, 2);
-		for (int i = 0; i < statements.length; i++) {
-			String statement = statements[i];
-			double label = model.getLabel(statement);
+			else {
+				System.out.println("Invalid content-type");
+				response.setStatus(400);
+				return;
+			}
 			
-			tracker.addValue(label);
+			BatchLabeler.Format format = BatchLabeler.Format.NDJSON;
+			if ("csv".equals(response.getRequest().getQuery().get("format"))) format = BatchLabeler.Format.CSV;
 			
-			// Insert into sorted array of 5 most positive statements.
-			for (int j = 0; j < 5; j++) {
-				if (pos_examples[j] == null) {
-					pos_examples[j] = statement;
-					pos_labels[j] = label;
-					break;
-				}
-				else if (label > pos_labels[j]) {
-					// Insert value by shifting elements. Last element is overwritten.
-					for (int k = 4; k > j; k--) {
-						pos_examples[k] = pos_examples[k-1];
-						pos_labels[k] = pos_labels[k-1];
-					}
-					
-					pos_examples[j] = statement;
-					pos_labels[j] = label;
-					break;
-				}
+			if (format == BatchLabeler.Format.CSV) {
+				response.addHeader("Content-Type", "text/csv; charset=utf-8");
 			}
-			
-			// Insert into sorted arrray of 5 most negative statements.
-			for (int j = 0; j < 5; j++) {
-				if (neg_examples[j] == null) {
-					neg_examples[j] = statement;
-					neg_labels[j] = label;
-					break;
-				}
-				else if (label < neg_labels[j]) {
-					// Insert value by shifting elements. Last element is overwritten.
-					for (int k = 4; k > j; k--) {
-						neg_examples[k] = neg_examples[k-1];
-						neg_labels[k] = neg_labels[k-1];
-					}
-					
-					neg_examples[j] = statement;
-					neg_labels[j] = label;
-					break;
-				}
+			else {
+				response.addHeader("Content-Type", "application/x-ndjson; charset=utf-8");
 			}
-		}
-		
-		// Construct JSON output.
-		String data = "{\"stats\": " + new StatisticsTrackerDTO(tracker).getJSON() + ", \"pos-examples\": [";
-		
-		for (int i = 0; i < 5; i++) {
-			data += "{\"statement\":\"" + pos_examples[i] + "\", \"label\":" + String.format("%.2f", pos_labels[i]) + "}";
-			if (i < 4) data += ", ";
-		}
-		
-		data += "], \"neg-examples\": [";
-		
-		for (int i = 0; i < 5; i++) {
-			data += "{\"statement\":\"" + neg_examples[i] + "\", \"label\":" + String.format("%.2f", neg_labels[i]) + "}";
-			if (i < 4) data += ", ";
-		}
-		
-		data += "]}";
-		
-		// Write response.
-		response.addHeader("Content-Type", "application/json; charset=UTF-8");
-		response.setStatus(200);
-		renderStaticPageToResponse(data, response);
+			response.setStatus(200);
+			
+			OutputStreamWriter osw = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8);
+			
+			BatchLabeler labeler = new BatchLabeler(model, labeling_workers, num_labeling_threads * 2);
+			long num_lines = labeler.label(reader, osw, format);
+			System.out.println(String.format("Labeled %d lines with '%s'.", num_lines, model_name));
+			
+			osw.close();
+			reader.close();
+		});
 	}
 	
 	public static void main(String[] args) throws FileNotFoundException, IOException, Exception {
@@ -694,9 +1047,17 @@ public class App {
 		// Map of authentication tokens which have been distributed.
 		valid_tokens = new HashMap<String, BearerToken>();
 		
-		// Map of models currently loaded in memory.
+		// Registry of models currently loaded in memory.
 		// Models are loaded upon their creation or utilization.
-		loaded_models = new HashMap<String, Model>();
+		loaded_models = new ModelRegistry(new File("models"), model_memory_budget);
+		
+		// Queue of models to train.
+		training_scheduler = new TrainingScheduler(loaded_models, max_concurrent_training_jobs, max_queued_training_jobs, training_memory_budget);
+		
+		// Threads shared by all batch labeling requests.
+		labeling_workers = Executors.newFixedThreadPool(num_labeling_threads);
+		
+		heavy_request_permits = new Semaphore(max_concurrent_heavy_requests);
 		
 		// Create default logins file if it does not exist.
 		File logins_file = new File("logins");
@@ -714,9 +1075,24 @@ public class App {
 		File labeled_data_dir = new File("labeled-data");
 		labeled_data_dir.mkdir();
 		
+		// Create directory for token sequences written to disk during training, and delete any left by a previous run of the server.
+		File training_spill_dir = new File("training-spill");
+		training_spill_dir.mkdir();
+		SequenceSpiller.deleteRuns(training_spill_dir);
+		
 		// Begin the flak daemon.
 		flak.App app = Flak.createHttpApp(8080);
 		app.scan(new App());
+		
+		if (use_virtual_request_threads) {
+			request_executor = Executors.newVirtualThreadPerTaskExecutor();
+			if (!ServerExecutor.install(app, request_executor)) {
+				System.out.println("Could not find the executor of the server. Requests will be handled on its default threads.");
+				request_executor.shutdown();
+				request_executor = null;
+			}
+		}
+		
 		app.start();
 	}
 	
@@ -725,23 +1101,17 @@ public class App {
 	/* --------------- */
 	
 	// Perform cross-validation on the given number of lines from the given file, divided into k folds, and return the combined results.
-	// Forwards relevant arguments to the model constructor.
+	// The file is read once and all folds are tested concurrently, unless their token sequences would exceed the training memory budget. See CrossValidator.
 	public static ModelTestResults crossValidate(
 		File training_data, int num_lines, int num_folds,
 		int max_token_sequence_length, int min_token_occurence, int num_renormalization_lines
 	) throws FileNotFoundException, IOException {
-		ModelTestResults results = new ModelTestResults(200);
-		
-		for (int i = 0; i < num_folds; i++) {
-			// Build temporary model.
-			Model model = new Model(max_token_sequence_length, min_token_occurence, sequence_pruning_interval, num_renormalization_lines);
-			model.buildFromFile(training_data, num_lines, num_folds, i);
-			
-			ModelTestResults fold_results = model.testOnLines(training_data, num_lines, num_folds, i);
-			results.integrateNewResults(fold_results);
-		}
+		CrossValidator validator = new CrossValidator(
+			max_token_sequence_length, min_token_occurence, sequence_pruning_interval, num_renormalization_lines, num_training_threads,
+			training_sequence_memory_budget, new File("training-spill")
+		);
 		
-		return results;
+		return validator.crossValidate(training_data, num_lines, num_folds);
 	}
 	
 	public static void stuff() throws FileNotFoundException, IOException, Exception {
@@ -788,7 +1158,7 @@ public class App {
 		
 		assert validation_lines % cross_validation_k == 0 : "Number of lines for use in k-fold cross-validation must be divisible by k.";
 		
-		Model model = new Model(max_token_sequence_length, min_token_occurence, sequence_pruning_interval, num_renormalization_lines);
+		Model model = new Model(max_token_sequence_length, min_token_occurence, sequence_pruning_interval, num_renormalization_lines, num_training_threads);
 		model.buildFromFile(training_data, validation_lines, 0, 0);
 		
 		model.saveToFile(model_save_file);
@@ -0,0 +1,159 @@
+package com.evelynsalie;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+* Labels a stream of newline-delimited statements using a pool of worker threads,
+* either writing one label per line to an output stream in the same order as the input, or summarizing the labels.
+* Lines are read, labeled and written in chunks, so only a bounded number of lines is held in memory at once
+* and the first labels are written before the input has been fully read.
+*/
+public class BatchLabeler {
+	// The number of lines labeled by a single task.
+	private static final int CHUNK_SIZE = 512;
+	
+	public enum Format {
+		NDJSON, CSV
+	};
+	
+	private final Model model;
+	private final ExecutorService workers;
+	
+	// The maximum number of chunks read ahead of the chunk currently being written.
+	private final int max_chunks_in_flight;
+	
+	/**
+	* @param model The model to label lines with.
+	* @param workers The threads to label lines on. May be shared with other labelers.
+	* @param max_chunks_in_flight The maximum number of chunks of lines which may be read but not yet written. Typically a small multiple of the number of workers.
+	*/
+	public BatchLabeler(Model model, ExecutorService workers, int max_chunks_in_flight) {
+		if (max_chunks_in_flight < 1) throw new IllegalArgumentException("max_chunks_in_flight must be positive.");
+		
+		this.model = model;
+		this.workers = workers;
+		this.max_chunks_in_flight = max_chunks_in_flight;
+	}
+	
+	/**
+	* Labels every line read from the passed reader.
+	* Each line of output holds the (zero-based) index of an input line and its label.
+	* As NDJSON, each line is an object of the form {"line":0,"label":0.25}. As CSV, the first line is the header "line,label".
+	* The writer is flushed after every chunk, but is not closed.
+	* @return The number of lines labeled.
+	* @throws IOException When an IO error occurs while reading or writing, or the thread is interrupted.
+	*/
+	public long label(BufferedReader reader, Writer writer, Format format) throws IOException {
+		if (format == Format.CSV) writer.write("line,label\n");
+		
+		ArrayDeque<Future<double[]>> chunks = new ArrayDeque<Future<double[]>>();
+		long num_lines_read = 0;
+		long num_lines_written = 0;
+		
+		try {
+			boolean done_reading = false;
+			while (!done_reading || !chunks.isEmpty()) {
+				// Read and submit chunks until enough are in flight.
+				while (!done_reading && chunks.size() < max_chunks_in_flight) {
+					String[] lines = new String[CHUNK_SIZE];
+					int num_lines = 0;
+					while (num_lines < CHUNK_SIZE && (lines[num_lines] = reader.readLine()) != null) num_lines++;
+					
+					if (num_lines < CHUNK_SIZE) done_reading = true;
+					if (num_lines == 0) break;
+					
+					int chunk_size = num_lines;
+					chunks.add(workers.submit(() -> {
+						double[] labels = new double[chunk_size];
+						for (int i = 0; i < chunk_size; i++) labels[i] = model.getLabel(lines[i]);
+						return labels;
+					}));
+					
+					num_lines_read += num_lines;
+				}
+				
+				if (chunks.isEmpty()) break;
+				
+				// Write the oldest chunk, waiting for it if necessary.
+				double[] labels = Model.awaitResult(chunks.poll());
+				for (int i = 0; i < labels.length; i++) {
+					if (format == Format.CSV) {
+						writer.write(num_lines_written + "," + String.format("%.4f", labels[i]) + "\n");
+					}
+					else {
+						writer.write("{\"line\":" + num_lines_written + ",\"label\":" + String.format("%.4f", labels[i]) + "}\n");
+					}
+					
+					num_lines_written++;
+				}
+				
+				writer.flush();
+			}
+		}
+		finally {
+			// Only reached with chunks remaining if an exception was thrown.
+			for (Future<double[]> chunk : chunks) chunk.cancel(true);
+		}
+		
+		assert num_lines_read == num_lines_written;
+		return num_lines_written;
+	}
+	
+	/**
+	* Labels every statement returned by the passed iterator, and summarizes the labels.
+	* Each worker records the labels of its chunks in its own summary, without synchronizing, and the summaries are combined once every chunk is labeled.
+	* @param sketch_size The accuracy parameter of the sketch used to estimate quantiles of the labels.
+	* @throws IOException When the iterator throws an UncheckedIOException, or the thread is interrupted.
+	*/
+	public LabelSummary summarize(Iterator<String> statements, int sketch_size) throws IOException {
+		ConcurrentAccumulator<LabelSummary> summaries = new ConcurrentAccumulator<LabelSummary>(() -> new LabelSummary(sketch_size), LabelSummary::integrate);
+		
+		ArrayDeque<Future<?>> chunks = new ArrayDeque<Future<?>>();
+		long num_lines_read = 0;
+		
+		try {
+			while (hasNextStatement(statements)) {
+				String[] lines = new String[CHUNK_SIZE];
+				int num_lines = 0;
+				while (num_lines < CHUNK_SIZE && hasNextStatement(statements)) lines[num_lines++] = statements.next();
+				
+				// Wait for the oldest chunk if too many are in flight.
+				if (chunks.size() >= max_chunks_in_flight) Model.awaitResult(chunks.poll());
+				
+				int chunk_size = num_lines;
+				long first_index = num_lines_read;
+				chunks.add(workers.submit(() -> {
+					LabelSummary summary = summaries.get();
+					for (int i = 0; i < chunk_size; i++) summary.addLabel(first_index + i, lines[i], model.getLabel(lines[i]));
+				}));
+				
+				num_lines_read += num_lines;
+			}
+			
+			while (!chunks.isEmpty()) Model.awaitResult(chunks.poll());
+		}
+		finally {
+			// Only reached with chunks remaining if an exception was thrown.
+			for (Future<?> chunk : chunks) chunk.cancel(true);
+		}
+		
+		return summaries.fold();
+	}
+	
+	// Equivalent to statements.hasNext(), but rethrows IO errors raised while reading lines from an upload.
+	private static boolean hasNextStatement(Iterator<String> statements) throws IOException {
+		try {
+			return statements.hasNext();
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,446 @@
+package com.evelynsalie;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.IllegalArgumentException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+* A labeled dataset (.ekdt) compiled into a compact binary corpus (.ekcorpus), which is read by memory-mapping it.
+* Every distinct word in the dataset is assigned an id in order of first appearance.
+* Each line is stored as its rating (a single byte), then its number of words and the id of each word as unsigned varints.
+* An index holds the offset of every line, so that any line or fold can be reached without reading those before it.
+* The index and line data are mapped in chunks of 1 GB, since a single mapping cannot exceed 2 GB, so corpora of any size can be read.
+* Models trained from a compiled corpus are equivalent to those trained from the dataset it was compiled from, but skip parsing and splitting text.
+*/
+public class CompiledCorpus implements Closeable {
+	public static final String EXTENSION = ".ekcorpus";
+	
+	// The header holds the signature, version, number of lines, number of words and total number of word occurences,
+	// followed by the offset of the word list, index and line data, and the size of the word list and line data.
+	private static final String SIGNATURE = "EkoCrpV1";
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 128;
+	
+	// Sections are mapped in chunks of this many bytes. A multiple of 8, so that no entry of the index spans two chunks.
+	private static final int CHUNK_SHIFT = 30;
+	private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+	
+	private final FileChannel channel;
+	
+	private final int num_lines;
+	private final long num_word_occurences;
+	private final String[] words;
+	
+	// Offset of each line in data, relative to the start of the section, as num_lines + 1 longs.
+	private final ByteBuffer[] line_offsets;
+	private final ByteBuffer[] data;
+	
+	/**
+	* Opens a compiled corpus.
+	* @throws FileNotFoundException When the passed file cannot be found.
+	* @throws IOException When an IO error occurs while reading the file.
+	* @throws IllegalArgumentException If the file is not a valid .ekcorpus file.
+	*/
+	public CompiledCorpus(File file) throws FileNotFoundException, IOException, IllegalArgumentException {
+		if (!file.exists()) throw new FileNotFoundException(file.getPath());
+		
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer header = Model.mapSection(channel, 0, Math.min(HEADER_SIZE, channel.size()));
+			
+			String iden = "";
+			for (int i = 0; i < 8; i++) iden += (char) header.get();
+			if (!iden.equals(SIGNATURE)) throw new IllegalArgumentException("File is not a valid .ekcorpus file. Should have signature '" + SIGNATURE + "' but has '" + iden + "'");
+			
+			int version = header.getInt();
+			if (version != VERSION) throw new IllegalArgumentException("Unsupported .ekcorpus version " + version + ".");
+			
+			this.num_lines = header.getInt();
+			int num_words = header.getInt();
+			header.getInt(); // Padding.
+			this.num_word_occurences = header.getLong();
+			
+			long words_offset = header.getLong();
+			long words_size = header.getLong();
+			long index_offset = header.getLong();
+			long data_offset = header.getLong();
+			long data_size = header.getLong();
+			
+			// Words are read onto the heap. Each is its length as a varint, followed by its UTF-8 bytes.
+			ByteBuffer word_data = Model.mapSection(channel, words_offset, words_size);
+			this.words = new String[num_words];
+			for (int i = 0; i < num_words; i++) {
+				byte[] word = new byte[readVarint(word_data)];
+				word_data.get(word);
+				words[i] = new String(word, StandardCharsets.UTF_8);
+			}
+			
+			this.line_offsets = mapChunks(channel, index_offset, 8L * (num_lines + 1));
+			this.data = mapChunks(channel, data_offset, data_size);
+		}
+		catch (BufferUnderflowException e) {
+			channel.close();
+			throw new IllegalArgumentException("File is not a valid .ekcorpus file. A section is truncated.");
+		}
+		catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	
+	/**
+	* Returns the compiled corpus that the passed dataset is compiled to. The file may not exist.
+	*/
+	public static File getCompiledFile(File dataset) {
+		String name = dataset.getName();
+		if (name.endsWith(".ekdt")) name = name.substring(0, name.length() - 5);
+		
+		return new File(dataset.getAbsoluteFile().getParentFile(), name + EXTENSION);
+	}
+	
+	/**
+	* Returns true if the passed dataset has a compiled corpus which was written after the dataset was last modified.
+	*/
+	public static boolean hasCompiledForm(File dataset) {
+		File compiled = getCompiledFile(dataset);
+		return compiled.exists() && compiled.lastModified() >= dataset.lastModified();
+	}
+	
+	/**
+	* Returns true if the passed file begins with the signature of a compiled corpus.
+	*/
+	public static boolean isCompiledCorpus(File file) {
+		try (FileInputStream fin = new FileInputStream(file)) {
+			byte[] iden = fin.readNBytes(8);
+			return new String(iden, StandardCharsets.ISO_8859_1).equals(SIGNATURE);
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+	
+	/**
+	* Compiles every labeled line of a dataset into a corpus, which is written to the passed file.
+	* The dataset is read twice: once to assign word ids and lay out the corpus, then again to write it.
+	* @param dataset The .ekdt file to compile.
+	* @param file The file to write the corpus to. The suggested extension is .ekcorpus
+	* @throws FileNotFoundException When the dataset does not exist.
+	* @throws IOException When an IO error occurs.
+	*/
+	public static void compile(File dataset, File file) throws FileNotFoundException, IOException {
+		HashMap<String, Integer> word_ids = new HashMap<String, Integer>();
+		ArrayList<String> words = new ArrayList<String>();
+		long[] line_offsets = new long[1024];
+		
+		int num_lines = 0;
+		long num_word_occurences = 0;
+		long data_size = 0;
+		try (LabeledDataReader reader = new LabeledDataReader(dataset, Integer.MAX_VALUE, 0, 0, true)) {
+			while (reader.next()) {
+				if (num_lines + 1 == line_offsets.length) line_offsets = Arrays.copyOf(line_offsets, line_offsets.length * 2);
+				line_offsets[num_lines] = data_size;
+				
+				int num_line_words = 0;
+				long line_size = 1;
+				for (String word : reader.getText().split(" ")) {
+					if (word.isEmpty()) continue;
+					
+					Integer id = word_ids.get(word);
+					if (id == null) {
+						id = words.size();
+						word_ids.put(word, id);
+						words.add(word);
+					}
+					
+					line_size += getVarintSize(id);
+					num_line_words++;
+				}
+				
+				data_size += line_size + getVarintSize(num_line_words);
+				num_word_occurences += num_line_words;
+				num_lines++;
+			}
+		}
+		
+		line_offsets[num_lines] = data_size;
+		
+		long words_size = 0;
+		for (String word : words) {
+			int length = word.getBytes(StandardCharsets.UTF_8).length;
+			words_size += getVarintSize(length) + length;
+		}
+		
+		long words_offset = HEADER_SIZE;
+		long index_offset = Model.padToSection(words_offset + words_size);
+		long data_offset = index_offset + 8L * (num_lines + 1);
+		
+		try (ModelFileWriter writer = new ModelFileWriter(file, data_offset + data_size, null)) {
+			writer.writeBytes(SIGNATURE);
+			writer.writeInt(VERSION);
+			writer.writeInt(num_lines);
+			writer.writeInt(words.size());
+			writer.writeInt(0);
+			writer.writeLong(num_word_occurences);
+			
+			writer.writeLong(words_offset);
+			writer.writeLong(words_size);
+			writer.writeLong(index_offset);
+			writer.writeLong(data_offset);
+			writer.writeLong(data_size);
+			writer.padTo(HEADER_SIZE);
+			
+			for (String word : words) {
+				byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+				writeVarint(writer, bytes.length);
+				for (byte b : bytes) writer.writeByte(b);
+			}
+			
+			writer.padTo(8);
+			writer.writeLongs(line_offsets, num_lines + 1);
+			
+			try (LabeledDataReader reader = new LabeledDataReader(dataset, num_lines, 0, 0, true)) {
+				int[] line_words = new int[0];
+				while (reader.next()) {
+					String text = reader.getText();
+					if (line_words.length < text.length() / 2 + 1) line_words = new int[text.length() + 1];
+					
+					int num_line_words = 0;
+					for (String word : text.split(" ")) {
+						if (!word.isEmpty()) line_words[num_line_words++] = word_ids.get(word);
+					}
+					
+					writer.writeByte(reader.getRating());
+					writeVarint(writer, num_line_words);
+					for (int i = 0; i < num_line_words; i++) writeVarint(writer, line_words[i]);
+				}
+			}
+			
+			if (writer.getPosition() != data_offset + data_size) throw new IOException("The dataset changed while it was being compiled.");
+			writer.commit();
+		}
+		
+		System.out.println(String.format("Compiled %d lines containing %d distinct words into '%s'.", num_lines, words.size(), file.getPath()));
+	}
+	
+	/**
+	* Returns the number of labeled lines in the corpus.
+	*/
+	public int getNumLines() {
+		return num_lines;
+	}
+	
+	/**
+	* Returns the number of distinct words in the corpus. Word ids range from 0 to this value - 1.
+	*/
+	public int getNumWords() {
+		return words.length;
+	}
+	
+	/**
+	* Returns the total number of words on every line of the corpus, counting repeated words each time they appear.
+	*/
+	public long getNumWordOccurences() {
+		return num_word_occurences;
+	}
+	
+	public String getWord(int word) {
+		return words[word];
+	}
+	
+	/**
+	* Returns a reader over the lines belonging to a subset of the corpus's folds.
+	* Takes the same arguments as {@link LabeledDataReader#LabeledDataReader}, but folds are reached without reading the lines before them.
+	*/
+	public Reader read(int total_num_lines, int num_folds, int fold_index, boolean omit_fold) {
+		return new Reader(total_num_lines, num_folds, fold_index, omit_fold);
+	}
+	
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	// Maps a section of the file as consecutive chunks of CHUNK_SIZE bytes, of which the last may be shorter.
+	private static ByteBuffer[] mapChunks(FileChannel channel, long offset, long size) throws IOException {
+		ByteBuffer[] chunks = new ByteBuffer[(int) ((size + CHUNK_SIZE - 1) >>> CHUNK_SHIFT)];
+		for (int i = 0; i < chunks.length; i++) {
+			long chunk_offset = (long) i << CHUNK_SHIFT;
+			chunks[i] = Model.mapSection(channel, offset + chunk_offset, Math.min(CHUNK_SIZE, size - chunk_offset));
+		}
+		
+		return chunks;
+	}
+	
+	private byte getDataByte(long position) {
+		return data[(int) (position >>> CHUNK_SHIFT)].get((int) (position & (CHUNK_SIZE - 1)));
+	}
+	
+	private long getLineOffset(int line) {
+		long position = 8L * line;
+		return line_offsets[(int) (position >>> CHUNK_SHIFT)].getLong((int) (position & (CHUNK_SIZE - 1)));
+	}
+	
+	/**
+	* Reads the lines of a corpus which belong to a subset of its folds.
+	* Readers are independent, so several can read the same corpus from different threads.
+	*/
+	public class Reader {
+		private final int total_num_lines;
+		private final int lines_per_fold;
+		private final int fold_index;
+		private final boolean omit_fold;
+		
+		// Index of the next line, and the position of its data.
+		private int line_index;
+		private long position;
+		
+		// The line most recently returned by next(). Its words start at words_position.
+		private int rating;
+		private int num_line_words;
+		private long words_position;
+		
+		private Reader(int total_num_lines, int num_folds, int fold_index, boolean omit_fold) {
+			this.total_num_lines = Math.min(total_num_lines, num_lines);
+			if (num_folds > 0) {
+				this.lines_per_fold = total_num_lines / num_folds;
+				this.fold_index = fold_index;
+			}
+			else {
+				// A single fold that is never omitted.
+				this.lines_per_fold = total_num_lines;
+				this.fold_index = omit_fold ? -1 : 0;
+			}
+			
+			this.omit_fold = omit_fold;
+			this.line_index = 0;
+			this.position = 0;
+		}
+		
+		/**
+		* Advances to the next selected line.
+		* @return False if there are no more selected lines.
+		*/
+		public boolean next() {
+			// Jump over the omitted fold, or to the only selected one.
+			int fold_start = fold_index * lines_per_fold;
+			int fold_end = fold_start + lines_per_fold;
+			if (omit_fold && line_index == fold_start) seek(fold_end);
+			if (!omit_fold && line_index < fold_start) seek(fold_start);
+			if (!omit_fold && line_index >= fold_end) return false;
+			
+			if (line_index >= total_num_lines) return false;
+			
+			rating = getDataByte(position++);
+			num_line_words = readVarint();
+			words_position = position;
+			
+			for (int i = 0; i < num_line_words; i++) readVarint();
+			line_index++;
+			
+			return true;
+		}
+		
+		/**
+		* Gets the rating, from 1 to 5, of the current line.
+		*/
+		public int getRating() {
+			return rating;
+		}
+		
+		/**
+		* Gets the rating of the current line mapped onto the range -1 to 1.
+		*/
+		public double getScore() {
+			return rating / 2.0 - 1.5;
+		}
+		
+		/**
+		* Gets the number of words on the current line.
+		*/
+		public int getNumWords() {
+			return num_line_words;
+		}
+		
+		/**
+		* Writes the id of each word on the current line into the passed array, which must hold at least getNumWords() ids.
+		*/
+		public void getWords(int[] line_words) {
+			long saved_position = position;
+			position = words_position;
+			for (int i = 0; i < num_line_words; i++) line_words[i] = readVarint();
+			
+			position = saved_position;
+		}
+		
+		/**
+		* Converts the words on the current line to tokens, given the token of each word id.
+		* Words whose token is -1 are omitted, as tokenizing the line's text would.
+		*/
+		public int[] getTokens(int[] word_tokens) {
+			int[] tokens = new int[num_line_words];
+			int num_tokens_found = 0;
+			
+			long saved_position = position;
+			position = words_position;
+			for (int i = 0; i < num_line_words; i++) {
+				int token = word_tokens[readVarint()];
+				if (token != -1) tokens[num_tokens_found++] = token;
+			}
+			
+			position = saved_position;
+			return num_tokens_found == num_line_words ? tokens : Arrays.copyOf(tokens, num_tokens_found);
+		}
+		
+		private void seek(int line) {
+			line_index = Math.min(line, num_lines);
+			position = getLineOffset(line_index);
+		}
+		
+		private int readVarint() {
+			int value = 0;
+			for (int shift = 0; ; shift += 7) {
+				byte b = getDataByte(position++);
+				value |= (b & 0x7F) << shift;
+				if (b >= 0) return value;
+			}
+		}
+	}
+	
+	private static int readVarint(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) return value;
+		}
+	}
+	
+	private static void writeVarint(ModelFileWriter writer, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			writer.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		
+		writer.writeByte(value);
+	}
+	
+	private static int getVarintSize(int value) {
+		int size = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		
+		return size;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,52 @@
+package com.evelynsalie;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+* Aggregates results reported by any number of threads at once, without synchronizing on each result.
+* Every thread reports to its own partial result, which it obtains once from get() and then updates freely,
+* and the partials are only folded together when fold() is called.
+* Partials are not synchronized, so fold() must only be called once every thread has finished reporting, such as after waiting on the futures of their tasks.
+*/
+public class ConcurrentAccumulator<T> {
+	private final Supplier<T> factory;
+	private final BiConsumer<T, T> merger;
+	
+	// The partial result of every thread which has reported.
+	private final ConcurrentHashMap<Thread, T> partials;
+	
+	/**
+	* @param factory Creates an empty result.
+	* @param merger Adds the results of its second argument to its first, without modifying the second.
+	*/
+	public ConcurrentAccumulator(Supplier<T> factory, BiConsumer<T, T> merger) {
+		this.factory = factory;
+		this.merger = merger;
+		this.partials = new ConcurrentHashMap<Thread, T>();
+	}
+	
+	/**
+	* Returns the calling thread's partial result, creating it if this is the thread's first call.
+	* Only the calling thread may update it.
+	*/
+	public T get() {
+		Thread thread = Thread.currentThread();
+		
+		T partial = partials.get(thread);
+		if (partial == null) partial = partials.computeIfAbsent(thread, (key) -> factory.get());
+		
+		return partial;
+	}
+	
+	/**
+	* Returns a new result holding the results of every partial.
+	*/
+	public T fold() {
+		T result = factory.get();
+		for (T partial : partials.values()) merger.accept(result, partial);
+		
+		return result;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,367 @@
+package com.evelynsalie;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.IllegalArgumentException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+* Performs k-fold cross-validation of models with the same parameters, at roughly the cost of training a single model.
+* The dataset is read and tokenized once into an in-memory corpus of token ids, and the token sequences of each fold are counted once.
+* Since the statistics of every token sequence are sums, the table of each fold's model is the sum over all folds, minus the held-out fold.
+* Each fold's model is then renormalized and tested concurrently.
+*
+* The resulting models differ from those built by {@link Model#buildFromFile} in two ways.
+* Every model shares a single dictionary, which retains only the tokens that meet the minimum number of occurences no matter which fold is held out.
+* The sequence table is pruned once after counting, not periodically while counting, so no sequence is lost to an early, lenient pruning step.
+*
+* Counting every fold at once holds all of their unpruned sequences, and their sum, in memory together.
+* If a sequence memory budget is given and counting would exceed it, the counts are discarded,
+* and each fold's model is instead trained and tested by {@link Model#buildFromFile} and {@link Model#testOnLines} within the budget, one fold at a time.
+*/
+public class CrossValidator {
+	private final int max_token_sequence_length;
+	private final int min_token_occurence;
+	private final int sequence_pruning_interval;
+	private final int num_output_renormalization_samples;
+	private final int num_threads;
+	private final long sequence_memory_budget;
+	private final File spill_directory;
+	
+	// The number of sequences counted so far in all folds, while counting them at once.
+	private final AtomicLong num_counted_ngrams;
+	
+	// The dataset, tokenized with the shared dictionary. The tokens of line i are corpus_tokens[line_starts[i]] through corpus_tokens[line_starts[i+1]-1].
+	private TokenDictionary all_tokens;
+	private int[] corpus_tokens;
+	private int[] line_starts;
+	private double[] line_scores;
+	private int num_lines;
+	
+	/**
+	* Create a cross-validator for models with the passed parameters.
+	* @param max_token_sequence_length The maximum length of sequences of tokens whose scores are trackeed.
+	* @param min_token_occurence The minimum number of times that a token or token sequence can appear in the training data for it to not be pruned.
+	* @param sequence_pruning_interval Saved with each model, but otherwise unused. Sequences are pruned once counting is complete.
+	* @param num_output_renormalization_samples The number of training lines to label, after constructing each model, to use for renormalizing its output.
+	* @param num_threads The number of threads to count and test folds with.
+	*/
+	public CrossValidator(
+		int max_token_sequence_length, int min_token_occurence,
+		int sequence_pruning_interval, int num_output_renormalization_samples,
+		int num_threads
+	) {
+		this(max_token_sequence_length, min_token_occurence, sequence_pruning_interval, num_output_renormalization_samples, num_threads, 0, null);
+	}
+	
+	/**
+	* Create a cross-validator for models with the passed parameters, whose token sequences must fit in a memory budget.
+	* @param max_token_sequence_length The maximum length of sequences of tokens whose scores are trackeed.
+	* @param min_token_occurence The minimum number of times that a token or token sequence can appear in the training data for it to not be pruned.
+	* @param sequence_pruning_interval Saved with each model. Models trained one fold at a time are pruned or spilled to fit sequence_memory_budget instead.
+	* @param num_output_renormalization_samples The number of training lines to label, after constructing each model, to use for renormalizing its output.
+	* @param num_threads The number of threads to count and test folds with.
+	* @param sequence_memory_budget The approximate number of bytes of heap that token sequences may occupy, or 0 to count every fold at once regardless of their size.
+	* @param spill_directory The directory that models trained one fold at a time write runs of token sequences to, or null to prune them instead. See {@link Model#Model(int, int, int, int, int, long, File)}.
+	*/
+	public CrossValidator(
+		int max_token_sequence_length, int min_token_occurence,
+		int sequence_pruning_interval, int num_output_renormalization_samples,
+		int num_threads, long sequence_memory_budget, File spill_directory
+	) {
+		if (num_threads < 1) throw new IllegalArgumentException("num_threads must be positive.");
+		if (sequence_memory_budget < 0) throw new IllegalArgumentException("sequence_memory_budget must be non-negative.");
+		
+		this.max_token_sequence_length = max_token_sequence_length;
+		this.min_token_occurence = min_token_occurence;
+		this.sequence_pruning_interval = sequence_pruning_interval;
+		this.num_output_renormalization_samples = num_output_renormalization_samples;
+		this.num_threads = num_threads;
+		this.sequence_memory_budget = sequence_memory_budget;
+		this.spill_directory = spill_directory;
+		
+		this.num_counted_ngrams = new AtomicLong();
+	}
+	
+	/**
+	* Divides the passed number of lines of the passed file into folds, tests a model trained on all other folds against each one,
+	* and returns the combined results.
+	* @param file The file to read labeled data from, either a dataset (.ekdt) or a compiled corpus (.ekcorpus).
+	* @param total_num_lines The number of lines to divide into folds.
+	* @param num_folds The number of folds, which must be at least 2 and evenly divide total_num_lines.
+	* @throws FileNotFoundException When the passed file does not exist.
+	* @throws IllegalArgumentException
+	* @throws IOException When an IO error occurs while reading the passed file.
+	*/
+	public ModelTestResults crossValidate(File file, int total_num_lines, int num_folds) throws FileNotFoundException, IllegalArgumentException, IOException {
+		if (file == null) throw new IllegalArgumentException("file must be non-null.");
+		if (total_num_lines <= 0) throw new IllegalArgumentException("total_num_lines must be positive.");
+		if (num_folds < 2) throw new IllegalArgumentException("num_folds must be at least 2.");
+		if (total_num_lines % num_folds != 0) throw new IllegalArgumentException("num_folds must evenly divide total_num_lines.");
+		
+		int lines_per_fold = total_num_lines / num_folds;
+		
+		System.out.println(String.format(
+			"Cross-validating on %d folds consisting of %d lines each using %d threads.",
+			num_folds, lines_per_fold, num_threads
+		));
+		
+		ExecutorService workers = Executors.newFixedThreadPool(num_threads);
+		try {
+			readCorpus(file, total_num_lines, num_folds, lines_per_fold);
+			
+			// Count the sequences of each fold, then sum them.
+			System.out.println("Analyzing token sequences...");
+			List<NGramTable> fold_sequences = countFolds(workers, num_folds, lines_per_fold);
+			if (fold_sequences == null) {
+				System.out.println("Token sequences of all folds exceed the memory budget. Training and testing one fold at a time instead.");
+				
+				corpus_tokens = null;
+				line_starts = null;
+				line_scores = null;
+				
+				return crossValidateEachFold(file, total_num_lines, num_folds);
+			}
+			
+			// A sequence with fewer occurences in all folds than the minimum has fewer in any training set, so it can be pruned from the sum immediately.
+			// Scores are multiples of 0.5, so sums and differences are exact.
+			NGramTable all_sequences = new NGramTable();
+			for (NGramTable sequences : fold_sequences) all_sequences.merge(sequences);
+			all_sequences.prune(min_token_occurence);
+			
+			System.out.println(String.format("Analysis complete. %d token sequences retained across all folds.", all_sequences.getNumSequences()));
+			
+			// Build and test the model for each fold.
+			ArrayList<Callable<ModelTestResults>> test_tasks = new ArrayList<Callable<ModelTestResults>>();
+			for (int i = 0; i < num_folds; i++) {
+				int fold_index = i;
+				test_tasks.add(() -> testFold(all_sequences, fold_sequences.get(fold_index), fold_index, lines_per_fold));
+			}
+			
+			ModelTestResults results = new ModelTestResults(ModelTestResults.DEFAULT_SKETCH_SIZE);
+			for (ModelTestResults fold_results : Model.runInParallel(workers, test_tasks)) {
+				results.integrateNewResults(fold_results);
+			}
+			
+			return results;
+		}
+		finally {
+			workers.shutdownNow();
+			
+			all_tokens = null;
+			corpus_tokens = null;
+			line_starts = null;
+			line_scores = null;
+		}
+	}
+	
+	// Trains a model omitting each fold in turn, within the sequence memory budget, and tests it on the omitted fold.
+	private ModelTestResults crossValidateEachFold(File file, int total_num_lines, int num_folds) throws IOException {
+		ModelTestResults results = new ModelTestResults(ModelTestResults.DEFAULT_SKETCH_SIZE);
+		for (int fold_index = 0; fold_index < num_folds; fold_index++) {
+			Model model = new Model(
+				max_token_sequence_length, min_token_occurence, sequence_pruning_interval, num_output_renormalization_samples,
+				num_threads, sequence_memory_budget, spill_directory
+			);
+			
+			model.buildFromFile(file, total_num_lines, num_folds, fold_index);
+			results.integrateNewResults(model.testOnLines(file, total_num_lines, num_folds, fold_index));
+		}
+		
+		return results;
+	}
+	
+	// Reads and tokenizes every line, then prunes the dictionary and removes pruned tokens from the corpus.
+	private void readCorpus(File file, int total_num_lines, int num_folds, int lines_per_fold) throws IOException {
+		System.out.println("Constructing Dictionary...");
+		
+		all_tokens = new TokenDictionary();
+		corpus_tokens = new int[1024];
+		line_starts = new int[total_num_lines + 1];
+		line_scores = new double[total_num_lines];
+		num_lines = 0;
+		
+		int num_corpus_tokens = 0;
+		int[] line_tokens = new int[0];
+		if (CompiledCorpus.isCompiledCorpus(file)) {
+			// Every word is learned at once, then the word ids of each line are converted to tokens.
+			try (CompiledCorpus corpus = new CompiledCorpus(file)) {
+				int[] word_occurences = new int[corpus.getNumWords()];
+				CompiledCorpus.Reader reader = corpus.read(total_num_lines, 0, 0, true);
+				while (reader.next()) {
+					if (num_lines % Model.TRAINING_BATCH_SIZE == 0) Model.checkInterrupted();
+					
+					if (line_tokens.length < reader.getNumWords()) line_tokens = new int[reader.getNumWords() * 2];
+					reader.getWords(line_tokens);
+					
+					int num_line_tokens = reader.getNumWords();
+					if (num_corpus_tokens + num_line_tokens > corpus_tokens.length) {
+						corpus_tokens = Arrays.copyOf(corpus_tokens, Math.max(corpus_tokens.length * 2, num_corpus_tokens + num_line_tokens));
+					}
+					
+					for (int i = 0; i < num_line_tokens; i++) word_occurences[line_tokens[i]]++;
+					System.arraycopy(line_tokens, 0, corpus_tokens, num_corpus_tokens, num_line_tokens);
+					num_corpus_tokens += num_line_tokens;
+					
+					line_scores[num_lines] = reader.getScore();
+					line_starts[++num_lines] = num_corpus_tokens;
+				}
+				
+				int[] word_tokens = new int[corpus.getNumWords()];
+				for (int word = 0; word < word_tokens.length; word++) {
+					word_tokens[word] = word_occurences[word] > 0 ? all_tokens.learnToken(corpus.getWord(word), word_occurences[word]) : -1;
+				}
+				
+				for (int i = 0; i < num_corpus_tokens; i++) corpus_tokens[i] = word_tokens[corpus_tokens[i]];
+			}
+		}
+		else {
+			try (LabeledDataReader reader = new LabeledDataReader(file, total_num_lines, 0, 0, true)) {
+				while (reader.next()) {
+					if (num_lines % Model.TRAINING_BATCH_SIZE == 0) Model.checkInterrupted();
+					
+					String text = reader.getText();
+					if (line_tokens.length < text.length() / 2 + 1) line_tokens = new int[text.length() + 1];
+					
+					int num_line_tokens = all_tokens.learnTokens(text, line_tokens);
+					if (num_corpus_tokens + num_line_tokens > corpus_tokens.length) {
+						corpus_tokens = Arrays.copyOf(corpus_tokens, Math.max(corpus_tokens.length * 2, num_corpus_tokens + num_line_tokens));
+					}
+					
+					System.arraycopy(line_tokens, 0, corpus_tokens, num_corpus_tokens, num_line_tokens);
+					num_corpus_tokens += num_line_tokens;
+					
+					line_scores[num_lines] = reader.getScore();
+					line_starts[++num_lines] = num_corpus_tokens;
+				}
+			}
+		}
+		
+		System.out.println(String.format("Dictionary built. %d tokens encountered in %d lines.", all_tokens.getNumTokens(), num_lines));
+		System.out.println("Pruning Dictionary...");
+		
+		// Count the occurences of each token within each fold.
+		int[][] fold_occurences = new int[num_folds][all_tokens.getNumNodes()];
+		for (int line = 0; line < num_lines; line++) {
+			int[] occurences = fold_occurences[line / lines_per_fold];
+			for (int i = line_starts[line]; i < line_starts[line + 1]; i++) occurences[corpus_tokens[i]]++;
+		}
+		
+		int[] new_ids = all_tokens.pruneHeldOut(fold_occurences, min_token_occurence);
+		
+		// Renumber the remaining tokens and drop the rest, as tokenizing with the pruned dictionary would.
+		int num_kept = 0;
+		for (int line = 0; line < num_lines; line++) {
+			int start = line_starts[line];
+			line_starts[line] = num_kept;
+			
+			for (int i = start; i < line_starts[line + 1]; i++) {
+				int token = new_ids[corpus_tokens[i]];
+				if (token != -1) corpus_tokens[num_kept++] = token;
+			}
+		}
+		
+		line_starts[num_lines] = num_kept;
+		corpus_tokens = Arrays.copyOf(corpus_tokens, num_kept);
+		
+		System.out.println(String.format("Dictionary finalized. %d tokens retained.", all_tokens.getNumTokens()));
+	}
+	
+	// Counts the token sequences of each fold into a separate table, or returns null if they could exceed the memory budget.
+	private List<NGramTable> countFolds(ExecutorService workers, int num_folds, int lines_per_fold) throws IOException {
+		num_counted_ngrams.set(0);
+		
+		ArrayList<Callable<NGramTable>> count_tasks = new ArrayList<Callable<NGramTable>>();
+		for (int i = 0; i < num_folds; i++) {
+			int fold_index = i;
+			count_tasks.add(() -> countFold(fold_index, lines_per_fold));
+		}
+		
+		List<NGramTable> fold_sequences = Model.runInParallel(workers, count_tasks);
+		return fold_sequences.contains(null) ? null : fold_sequences;
+	}
+	
+	// Counts the token sequences of every line in the passed fold into a new table.
+	// Returns null once the sequences counted in all folds, and their sum, could exceed the memory budget.
+	private NGramTable countFold(int fold_index, int lines_per_fold) throws IOException {
+		NGramTable sequences = new NGramTable();
+		long num_reported_ngrams = 0;
+		
+		int start = fold_index * lines_per_fold;
+		int end = Math.min(start + lines_per_fold, num_lines);
+		for (int line = start; line < end; line++) {
+			// Checked relative to the start of the fold, so that folds of fewer lines than a batch are checked too.
+			if ((line - start) % Model.TRAINING_BATCH_SIZE == 0) {
+				Model.checkInterrupted();
+				
+				if (exceedsBudget(sequences.getNumNGrams() - num_reported_ngrams)) return null;
+				num_reported_ngrams = sequences.getNumNGrams();
+			}
+			
+			sequences.addStatement(corpus_tokens, line_starts[line], line_starts[line + 1], line_scores[line], max_token_sequence_length);
+		}
+		
+		return exceedsBudget(sequences.getNumNGrams() - num_reported_ngrams) ? null : sequences;
+	}
+	
+	// Adds the passed number of newly counted sequences to the total of all folds, and returns true if the folds could then exceed the memory budget.
+	private boolean exceedsBudget(long num_new_ngrams) {
+		if (sequence_memory_budget == 0) return false;
+		
+		// The sum is at most as large as all of the folds, and each table's arrays are up to twice as long as it.
+		long num_ngrams = num_counted_ngrams.addAndGet(num_new_ngrams);
+		return 2 * 2 * num_ngrams * NGramTable.BYTES_PER_NGRAM >= sequence_memory_budget;
+	}
+	
+	// Builds the model which omits the passed fold, renormalizes it against the first lines of the other folds, and tests it on the omitted fold.
+	private ModelTestResults testFold(NGramTable all_sequences, NGramTable fold_sequences, int fold_index, int lines_per_fold) throws IOException {
+		int fold_start = fold_index * lines_per_fold;
+		int fold_end = Math.min(fold_start + lines_per_fold, num_lines);
+		
+		NGramTable sequences = new NGramTable();
+		sequences.merge(all_sequences);
+		sequences.subtract(fold_sequences);
+		sequences.prune(min_token_occurence);
+		
+		Model model = new Model(
+			all_tokens, sequences, num_lines - (fold_end - fold_start),
+			max_token_sequence_length, min_token_occurence, sequence_pruning_interval, num_output_renormalization_samples
+		);
+		
+		System.out.println(String.format("Model omitting fold %d built. %d token sequences retained.", fold_index, model.getNumTokenSequences()));
+		
+		// Renormalize the outputs.
+		int num_lines_sampled = 0;
+		StatisticsTracker generated_labels = new StatisticsTracker(0, -1, 1);
+		for (int line = 0; line < num_lines && num_lines_sampled < num_output_renormalization_samples; line++) {
+			if (line == fold_start) line = fold_end;
+			if (line == num_lines) break;
+			if (num_lines_sampled % Model.TRAINING_BATCH_SIZE == 0) Model.checkInterrupted();
+			
+			generated_labels.addValue(getLabel(model, line));
+			
+			num_lines_sampled++;
+			if (num_lines_sampled == num_output_renormalization_samples) model.renormalizeOutput(generated_labels);
+		}
+		
+		ModelTestResults results = new ModelTestResults(ModelTestResults.DEFAULT_SKETCH_SIZE);
+		for (int line = fold_start; line < fold_end; line++) {
+			results.addResult(getLabel(model, line), line_scores[line]);
+		}
+		
+		System.out.println(String.format("Testing on fold %d complete.", fold_index));
+		System.out.println(results);
+		return results;
+	}
+	
+	private double getLabel(Model model, int line) {
+		return model.getLabel(corpus_tokens, line_starts[line], line_starts[line + 1] - line_starts[line]);
+	}
+}
\ No newline at end of file
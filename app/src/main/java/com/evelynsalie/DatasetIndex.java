@@ -0,0 +1,172 @@
+package com.evelynsalie;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+* Holds the exact number of labeled lines in a dataset (.ekdt), and the byte offset of every INTERVAL-th one.
+* Any line can be reached by seeking to the closest indexed line before it, then reading at most INTERVAL - 1 lines.
+* Indexes are saved beside their dataset (.ekidx), and rebuilt whenever the dataset's size or modification time changes.
+*/
+public class DatasetIndex {
+	public static final String EXTENSION = ".ekidx";
+	public static final int INTERVAL = 1024;
+	
+	// The header holds the signature, version, the size and modification time of the dataset, the number of lines and the number of offsets.
+	private static final String SIGNATURE = "EkoIdxV1";
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 40;
+	
+	private final int num_lines;
+	
+	// Offset of line i * INTERVAL, for every such line that exists.
+	private final long[] offsets;
+	
+	private DatasetIndex(int num_lines, long[] offsets) {
+		this.num_lines = num_lines;
+		this.offsets = offsets;
+	}
+	
+	/**
+	* Returns the index of the passed dataset, reading it from the dataset's index file if it is up to date.
+	* Otherwise, the dataset is scanned and the index file is rewritten. If it cannot be written, the index is still returned.
+	* @throws FileNotFoundException When the dataset does not exist.
+	* @throws IOException When an IO error occurs while reading the dataset.
+	*/
+	public static DatasetIndex forDataset(File dataset) throws FileNotFoundException, IOException {
+		if (!dataset.exists()) throw new FileNotFoundException(dataset.getPath());
+		
+		DatasetIndex index = readIfCurrent(dataset);
+		if (index != null) return index;
+		
+		index = build(dataset);
+		try {
+			index.write(getIndexFile(dataset), dataset);
+		}
+		catch (IOException e) {
+			System.out.println("Could not save index of '" + dataset.getPath() + "': " + e.getMessage());
+		}
+		
+		return index;
+	}
+	
+	/**
+	* Returns the saved index of the passed dataset if it is up to date, or null if there is none. Never scans the dataset.
+	* @throws IOException When an IO error occurs while reading the index file.
+	*/
+	public static DatasetIndex readIfCurrent(File dataset) throws IOException {
+		File index_file = getIndexFile(dataset);
+		return index_file.exists() ? read(index_file, dataset) : null;
+	}
+	
+	/**
+	* Returns the file the index of the passed dataset is saved to. The file may not exist.
+	*/
+	public static File getIndexFile(File dataset) {
+		String name = dataset.getName();
+		if (name.endsWith(".ekdt")) name = name.substring(0, name.length() - 5);
+		
+		return new File(dataset.getAbsoluteFile().getParentFile(), name + EXTENSION);
+	}
+	
+	/**
+	* Returns the exact number of labeled lines in the dataset, which does not count the header.
+	*/
+	public int getNumLines() {
+		return num_lines;
+	}
+	
+	/**
+	* Returns the byte offset of the closest indexed line at or before the passed line, which is line (line / INTERVAL) * INTERVAL.
+	*/
+	public long getOffset(int line) {
+		return offsets[line / INTERVAL];
+	}
+	
+	// Scans the dataset for line breaks. The first line is the header, which is not counted.
+	private static DatasetIndex build(File dataset) throws IOException {
+		long[] offsets = new long[16];
+		int num_lines = 0;
+		
+		try (FileChannel channel = FileChannel.open(dataset.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+			
+			// A line starts after every line break, unless the break ends the file.
+			boolean at_line_start = false;
+			long position = 0;
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					if (at_line_start) {
+						if (num_lines % INTERVAL == 0) {
+							if (num_lines / INTERVAL == offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+							offsets[num_lines / INTERVAL] = position;
+						}
+						
+						num_lines++;
+						at_line_start = false;
+					}
+					
+					if (buffer.get() == '\n') at_line_start = true;
+					
+					position++;
+				}
+				
+				buffer.clear();
+			}
+		}
+		
+		return new DatasetIndex(num_lines, Arrays.copyOf(offsets, (num_lines + INTERVAL - 1) / INTERVAL));
+	}
+	
+	// Reads a saved index, returning null if it is invalid or does not match the dataset.
+	private static DatasetIndex read(File index_file, File dataset) throws IOException {
+		try (FileChannel channel = FileChannel.open(index_file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while (header.hasRemaining() && channel.read(header) != -1);
+			header.flip();
+			
+			byte[] iden = new byte[8];
+			header.get(iden);
+			if (!new String(iden, StandardCharsets.ISO_8859_1).equals(SIGNATURE) || header.getInt() != VERSION) return null;
+			if (header.getLong() != dataset.length() || header.getLong() != dataset.lastModified()) return null;
+			
+			int num_lines = header.getInt();
+			int num_offsets = header.getInt();
+			if (num_lines < 0 || num_offsets != (num_lines + INTERVAL - 1) / INTERVAL) return null;
+			
+			ByteBuffer data = ByteBuffer.allocate(8 * num_offsets);
+			while (data.hasRemaining() && channel.read(data) != -1);
+			data.flip();
+			
+			long[] offsets = new long[num_offsets];
+			data.asLongBuffer().get(offsets);
+			return new DatasetIndex(num_lines, offsets);
+		}
+		catch (BufferUnderflowException e) {
+			return null;
+		}
+	}
+	
+	private void write(File index_file, File dataset) throws IOException {
+		try (ModelFileWriter writer = new ModelFileWriter(index_file, HEADER_SIZE + 8L * offsets.length, null)) {
+			writer.writeBytes(SIGNATURE);
+			writer.writeInt(VERSION);
+			writer.writeLong(dataset.length());
+			writer.writeLong(dataset.lastModified());
+			writer.writeInt(num_lines);
+			writer.writeInt(offsets.length);
+			writer.padTo(HEADER_SIZE);
+			writer.writeLongs(offsets, offsets.length);
+			
+			writer.commit();
+		}
+	}
+}
\ No newline at end of file
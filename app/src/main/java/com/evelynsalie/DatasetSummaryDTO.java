@@ -3,7 +3,6 @@ package com.evelynsalie;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.InputStreamReader;
 import java.io.IOException;
 
@@ -13,6 +12,9 @@ public class DatasetSummaryDTO {
 	private String name;
 	private int num_lines;
 	
+	// True if the dataset has an up-to-date compiled corpus.
+	private boolean is_compiled;
+	
 	public DatasetSummaryDTO(File model_file) {
 		is_valid = true;
 		
@@ -25,18 +27,28 @@ public class DatasetSummaryDTO {
 			return;
 		}
 		
+		// The index holds the exact count, but listing datasets never builds it. Until the dataset is first read out of order, the header's count is reported.
 		try {
-			BufferedReader data_scanner = new BufferedReader(new InputStreamReader(new FileInputStream(model_file)));
-			num_lines = Integer.parseInt(data_scanner.readLine());
+			DatasetIndex index = DatasetIndex.readIfCurrent(model_file);
+			if (index != null) {
+				num_lines = index.getNumLines();
+			}
+			else {
+				try (BufferedReader data_scanner = new BufferedReader(new InputStreamReader(new FileInputStream(model_file)))) {
+					num_lines = Integer.parseInt(data_scanner.readLine().trim());
+				}
+			}
 		}
-		catch (IOException e) {
+		catch (IOException | RuntimeException e) {
 			is_valid = false;
 			return;
 		}
+		
+		is_compiled = CompiledCorpus.hasCompiledForm(model_file);
 	}
 	
 	public String getJSON() {
-		return "{\"name\":\"" + name + "\",\"num_lines\":\"" + num_lines + "\"}";
+		return "{\"name\":\"" + name + "\",\"num_lines\":\"" + num_lines + "\",\"compiled\":" + is_compiled + "}";
 	}
 	
 	public boolean isValid() {
@@ -0,0 +1,252 @@
+package com.evelynsalie;
+
+/**
+* A bounded cache of the labels a model has generated, keyed by a 64-bit hash of the words of each labeled text.
+* Texts with the same words once sanitized, such as "Great food!" and "great food", share an entry, since they are always given the same label.
+* With 2^16 entries, the chance that any lookup collides with another text's hash is about 2^-48.
+*
+* Entries are evicted by a segmented LRU policy: a newly cached label enters a probationary segment,
+* and is promoted to a protected segment if it is requested again. Labels requested only once are therefore evicted first,
+* so a burst of unique texts cannot flush the labels of frequently repeated ones.
+* The cache is split into independently locked shards, so threads labeling at once rarely contend. Each shard allocates its arrays when first written.
+*/
+public class LabelCache {
+	private static final int NUM_SHARDS = 16;
+	
+	// The fraction of each shard reserved for labels which have been requested more than once.
+	private static final double PROTECTED_FRACTION = 0.8;
+	
+	private final Shard[] shards;
+	
+	/**
+	* @param capacity The maximum number of labels to hold. Rounded up to a multiple of the number of shards.
+	*/
+	public LabelCache(int capacity) {
+		int shard_capacity = Math.max((capacity + NUM_SHARDS - 1) / NUM_SHARDS, 2);
+		
+		this.shards = new Shard[NUM_SHARDS];
+		for (int i = 0; i < NUM_SHARDS; i++) shards[i] = new Shard(shard_capacity);
+	}
+	
+	/**
+	* Returns the hash of the words of the passed raw text, as Model.sanitize() would separate them.
+	* Letters are lowercased one at a time, as in labeling.
+	*/
+	public static long hashWords(String raw) {
+		long hash = 0xCBF29CE484222325L;
+		
+		// True once a word has ended, and the separator before the next word has not yet been hashed.
+		boolean separated = false;
+		boolean in_word = false;
+		for (int i = 0; i < raw.length(); i++) {
+			char c = Character.toLowerCase(raw.charAt(i));
+			
+			if (Model.isWordChar(c)) {
+				if (separated) {
+					hash = (hash ^ ' ') * 0x100000001B3L;
+					separated = false;
+				}
+				
+				hash = (hash ^ c) * 0x100000001B3L;
+				in_word = true;
+			}
+			else if (in_word) {
+				separated = true;
+				in_word = false;
+			}
+		}
+		
+		// The finalizer of MurmurHash3, which spreads every bit of the hash over the key.
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+	
+	/**
+	* Returns the label cached under the passed key, or NaN if there is none.
+	*/
+	public double get(long key) {
+		double label = getShard(key).get(key);
+		
+		if (Double.isNaN(label)) Metrics.LABEL_CACHE_MISSES.add(1);
+		else Metrics.LABEL_CACHE_HITS.add(1);
+		
+		return label;
+	}
+	
+	/**
+	* Caches a label under the passed key, evicting another label if the cache is full. The label must not be NaN.
+	*/
+	public void put(long key, double label) {
+		getShard(key).put(key, label);
+	}
+	
+	/**
+	* Returns the number of labels held.
+	*/
+	public int getSize() {
+		int size = 0;
+		for (Shard shard : shards) size += shard.getSize();
+		
+		return size;
+	}
+	
+	// The high bits of the key choose its shard, and the low bits its slot in the shard's table.
+	private Shard getShard(long key) {
+		return shards[(int) (key >>> 60) & (NUM_SHARDS - 1)];
+	}
+	
+	// A segmented LRU cache of a fixed number of entries, stored in parallel primitive arrays.
+	// Entries are found through an open-addressed (linear probing) table of entry indices, and each segment is a circular, doubly linked list
+	// ordered from most to least recently used, whose head is a sentinel stored past the last entry.
+	private static class Shard {
+		private final int capacity;
+		private final int protected_capacity;
+		
+		// Sentinels heading the list of each segment.
+		private final int probation_head;
+		private final int protected_head;
+		
+		private long[] keys;
+		private double[] labels;
+		private int[] prev;
+		private int[] next;
+		private boolean[] is_protected;
+		
+		// Holds the index of an entry plus one, or 0 in unused slots. The length is a power of two, at least twice the capacity.
+		private int[] table;
+		
+		private int size;
+		private int num_protected;
+		
+		Shard(int capacity) {
+			this.capacity = capacity;
+			this.protected_capacity = Math.max((int) (capacity * PROTECTED_FRACTION), 1);
+			this.probation_head = capacity;
+			this.protected_head = capacity + 1;
+		}
+		
+		synchronized int getSize() {
+			return size;
+		}
+		
+		synchronized double get(long key) {
+			if (table == null) return Double.NaN;
+			
+			int entry = find(key);
+			if (entry == -1) return Double.NaN;
+			
+			unlink(entry);
+			if (!is_protected[entry]) {
+				is_protected[entry] = true;
+				num_protected++;
+			}
+			
+			link(entry, protected_head);
+			
+			// Demote the least recently used protected entry, giving it another chance before it is evicted.
+			if (num_protected > protected_capacity) {
+				int demoted = prev[protected_head];
+				unlink(demoted);
+				is_protected[demoted] = false;
+				num_protected--;
+				link(demoted, probation_head);
+			}
+			
+			return labels[entry];
+		}
+		
+		synchronized void put(long key, double label) {
+			if (table == null) allocate();
+			
+			int entry = find(key);
+			if (entry != -1) {
+				labels[entry] = label;
+				return;
+			}
+			
+			if (size < capacity) {
+				entry = size++;
+			}
+			else {
+				// Evict the least recently used probationary entry, or protected entry if there are none.
+				entry = prev[probation_head] != probation_head ? prev[probation_head] : prev[protected_head];
+				unlink(entry);
+				if (is_protected[entry]) num_protected--;
+				
+				removeFromTable(keys[entry]);
+			}
+			
+			keys[entry] = key;
+			labels[entry] = label;
+			is_protected[entry] = false;
+			link(entry, probation_head);
+			
+			int slot = getHomeSlot(key);
+			while (table[slot] != 0) slot = (slot + 1) & (table.length - 1);
+			table[slot] = entry + 1;
+		}
+		
+		private void allocate() {
+			keys = new long[capacity];
+			labels = new double[capacity];
+			prev = new int[capacity + 2];
+			next = new int[capacity + 2];
+			is_protected = new boolean[capacity];
+			table = new int[Integer.highestOneBit(capacity - 1) << 2];
+			
+			prev[probation_head] = next[probation_head] = probation_head;
+			prev[protected_head] = next[protected_head] = protected_head;
+		}
+		
+		private int getHomeSlot(long key) {
+			return (int) key & (table.length - 1);
+		}
+		
+		// Returns the index of the entry with the passed key, or -1 if there is none.
+		private int find(long key) {
+			for (int slot = getHomeSlot(key); table[slot] != 0; slot = (slot + 1) & (table.length - 1)) {
+				if (keys[table[slot] - 1] == key) return table[slot] - 1;
+			}
+			
+			return -1;
+		}
+		
+		// Removes the passed key from the table, shifting later entries of its cluster back so that every entry stays reachable from its home slot.
+		private void removeFromTable(long key) {
+			int mask = table.length - 1;
+			
+			int slot = getHomeSlot(key);
+			while (keys[table[slot] - 1] != key) slot = (slot + 1) & mask;
+			table[slot] = 0;
+			
+			for (int other = (slot + 1) & mask; table[other] != 0; other = (other + 1) & mask) {
+				int home = getHomeSlot(keys[table[other] - 1]);
+				
+				// Move the entry into the emptied slot unless its home lies cyclically after the emptied slot, up to the entry's own slot.
+				boolean reachable = slot <= other ? (home > slot && home <= other) : (home > slot || home <= other);
+				if (!reachable) {
+					table[slot] = table[other];
+					table[other] = 0;
+					slot = other;
+				}
+			}
+		}
+		
+		// Inserts the passed entry at the front of the list headed by the passed sentinel.
+		private void link(int entry, int head) {
+			prev[entry] = head;
+			next[entry] = next[head];
+			prev[next[head]] = entry;
+			next[head] = entry;
+		}
+		
+		private void unlink(int entry) {
+			next[prev[entry]] = next[entry];
+			prev[next[entry]] = prev[entry];
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,115 @@
+package com.evelynsalie;
+
+/**
+* Statistics of the labels generated for a set of statements, along with the most positive and most negative statements.
+* Summaries of separate parts of the statements can be filled by separate threads and combined with integrate() once complete.
+* Examples with equal labels are ranked by the index of their statement, so a combined summary holds the same examples as one filled in order.
+*/
+public class LabelSummary {
+	public static final int NUM_EXAMPLES = 5;
+	
+	private final StatisticsTracker stats;
+	
+	// Sorted from most to least extreme. Unfilled examples are null, with the least extreme label possible.
+	private final String[] pos_examples;
+	private final double[] pos_labels;
+	private final long[] pos_indices;
+	
+	private final String[] neg_examples;
+	private final double[] neg_labels;
+	private final long[] neg_indices;
+	
+	/**
+	* @param sketch_size The accuracy parameter of the sketch used to estimate quantiles of the labels. See {@link StatisticsTracker#StatisticsTracker}.
+	*/
+	public LabelSummary(int sketch_size) {
+		this.stats = new StatisticsTracker(sketch_size, -2, 2);
+		
+		this.pos_examples = new String[NUM_EXAMPLES];
+		this.pos_labels = new double[NUM_EXAMPLES];
+		this.pos_indices = new long[NUM_EXAMPLES];
+		
+		this.neg_examples = new String[NUM_EXAMPLES];
+		this.neg_labels = new double[NUM_EXAMPLES];
+		this.neg_indices = new long[NUM_EXAMPLES];
+		
+		for (int i = 0; i < NUM_EXAMPLES; i++) {
+			pos_labels[i] = -2;
+			neg_labels[i] = 2;
+		}
+	}
+	
+	/**
+	* Records the label of a statement.
+	* @param index The position of the statement among all statements summarized, used to rank examples with equal labels.
+	*/
+	protected void addLabel(long index, String statement, double label) {
+		stats.addValue(label);
+		
+		insertExample(pos_examples, pos_labels, pos_indices, 1, index, statement, label);
+		insertExample(neg_examples, neg_labels, neg_indices, -1, index, statement, label);
+	}
+	
+	// Combines the passed summary with this one, overwritting the values on this. The passed summary is not modified.
+	protected void integrate(LabelSummary other) {
+		stats.integrateNewValues(other.stats);
+		
+		for (int i = 0; i < NUM_EXAMPLES && other.pos_examples[i] != null; i++) {
+			insertExample(pos_examples, pos_labels, pos_indices, 1, other.pos_indices[i], other.pos_examples[i], other.pos_labels[i]);
+		}
+		
+		for (int i = 0; i < NUM_EXAMPLES && other.neg_examples[i] != null; i++) {
+			insertExample(neg_examples, neg_labels, neg_indices, -1, other.neg_indices[i], other.neg_examples[i], other.neg_labels[i]);
+		}
+	}
+	
+	public StatisticsTracker getStats() {
+		return stats;
+	}
+	
+	/**
+	* Returns the most positive statements, most positive first. Holds null in place of examples which were never filled.
+	*/
+	public String[] getPositiveExamples() {
+		return pos_examples.clone();
+	}
+	
+	public double[] getPositiveLabels() {
+		return pos_labels.clone();
+	}
+	
+	/**
+	* Returns the most negative statements, most negative first. Holds null in place of examples which were never filled.
+	*/
+	public String[] getNegativeExamples() {
+		return neg_examples.clone();
+	}
+	
+	public double[] getNegativeLabels() {
+		return neg_labels.clone();
+	}
+	
+	// Inserts a statement into a sorted array of examples if it is more extreme than any of them, overwriting the last.
+	// A direction of 1 keeps the most positive examples, and -1 the most negative.
+	private static void insertExample(String[] examples, double[] labels, long[] indices, int direction, long index, String statement, double label) {
+		for (int j = 0; j < NUM_EXAMPLES; j++) {
+			boolean is_more_extreme = examples[j] == null
+				|| label * direction > labels[j] * direction
+				|| (label == labels[j] && index < indices[j]);
+			
+			if (is_more_extreme) {
+				// Insert value by shifting elements. Last element is overwritten.
+				for (int k = NUM_EXAMPLES - 1; k > j; k--) {
+					examples[k] = examples[k-1];
+					labels[k] = labels[k-1];
+					indices[k] = indices[k-1];
+				}
+				
+				examples[j] = statement;
+				labels[j] = label;
+				indices[j] = index;
+				return;
+			}
+		}
+	}
+}
\ No newline at end of file
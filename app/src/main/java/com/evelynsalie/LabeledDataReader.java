@@ -0,0 +1,310 @@
+package com.evelynsalie;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Reads the labeled lines of a dataset (.ekdt) which belong to a subset of its folds.
+// The first line of the file, which holds the number of labeled lines, is skipped.
+// Folds far from the current line are reached by seeking through the dataset's DatasetIndex, rather than reading every line before them.
+// Lines are read as raw bytes, and their text is only decoded into a String when getText() is called. Training reads the bytes instead, through a LineBatch.
+public class LabeledDataReader implements Closeable {
+	private static final int INITIAL_BUFFER_SIZE = 1 << 20;
+	
+	// Classes of bytes, looked up in BYTE_CLASSES. Every byte of a line is classified once, to find where it ends and whether it is ASCII.
+	private static final byte TEXT_BYTE = 0;
+	private static final byte LINE_BREAK = 1;
+	private static final byte NON_ASCII_BYTE = 2;
+	private static final byte[] BYTE_CLASSES = new byte[256];
+	static {
+		for (int b = 0x80; b < 0x100; b++) BYTE_CLASSES[b] = NON_ASCII_BYTE;
+		BYTE_CLASSES['\n'] = LINE_BREAK;
+	}
+	
+	private final File file;
+	private final FileChannel channel;
+	
+	// Bytes read from the file but not yet consumed lie between buffer_position and buffer_limit.
+	private byte[] buffer;
+	private int buffer_position;
+	private int buffer_limit;
+	private boolean end_of_file;
+	
+	// Loaded the first time the reader seeks.
+	private DatasetIndex index;
+	
+	private final int total_num_lines;
+	private final int lines_per_fold;
+	private final int fold_index;
+	private final boolean omit_fold;
+	
+	// Index of the next labeled line in the file.
+	private int line_index;
+	
+	// The bytes of the line most recently read lie between line_start and line_end in the buffer, excluding its line break.
+	private int line_start;
+	private int line_end;
+	private boolean line_is_ascii;
+	
+	// The line most recently returned by next(). Its text lies between text_start and line_end, and is decoded the first time it is requested.
+	private int rating;
+	private int text_start;
+	private String text;
+	
+	/**
+	* @param file The file to read labeled data from.
+	* @param total_num_lines The number of labeled lines to divide into folds. Lines past this point are never read.
+	* @param num_folds The number of folds to divide the lines into. If zero, all lines are read and fold_index is ignored.
+	* @param fold_index The index (ranging from 0 to num_folds-1) of the fold to read or skip.
+	* @param omit_fold If true, every fold except fold_index is read. Otherwise, only fold_index is read.
+	* @throws FileNotFoundException When the passed file does not exist.
+	* @throws IOException When an IO error occurs while reading the header.
+	*/
+	public LabeledDataReader(File file, int total_num_lines, int num_folds, int fold_index, boolean omit_fold) throws FileNotFoundException, IOException {
+		this.file = file;
+		try {
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		}
+		catch (NoSuchFileException e) {
+			throw new FileNotFoundException(file.getPath());
+		}
+		
+		this.buffer = new byte[INITIAL_BUFFER_SIZE];
+		this.buffer_position = 0;
+		this.buffer_limit = 0;
+		this.end_of_file = false;
+		
+		readLine(); // Throw header away.
+		
+		this.total_num_lines = total_num_lines;
+		if (num_folds > 0) {
+			this.lines_per_fold = total_num_lines / num_folds;
+			this.fold_index = fold_index;
+			this.omit_fold = omit_fold;
+		}
+		else {
+			// A single fold that is never omitted.
+			this.lines_per_fold = total_num_lines;
+			this.fold_index = omit_fold ? -1 : 0;
+			this.omit_fold = omit_fold;
+		}
+		
+		this.line_index = 0;
+	}
+	
+	/**
+	* Returns the number of lines this reader will return, assuming the file is long enough.
+	*/
+	public int getNumSelectedLines() {
+		if (fold_index == -1) return total_num_lines;
+		return omit_fold ? total_num_lines - lines_per_fold : lines_per_fold;
+	}
+	
+	/**
+	* Advances to the next selected line.
+	* @return False if there are no more selected lines.
+	*/
+	public boolean next() throws IOException {
+		while (line_index < total_num_lines) {
+			if (fold_index >= 0) {
+				int fold_start = fold_index * lines_per_fold;
+				int fold_end = fold_start + lines_per_fold;
+				
+				if (omit_fold && line_index == fold_start) seek(fold_end);
+				else if (!omit_fold && line_index < fold_start) seek(fold_start);
+				else if (!omit_fold && line_index >= fold_end) return false;
+				
+				if (line_index >= total_num_lines) return false;
+			}
+			
+			if (!readLine()) return false;
+			
+			boolean in_fold = line_index / lines_per_fold == fold_index;
+			line_index++;
+			
+			if (in_fold == omit_fold) continue;
+			
+			// Obtain the rating of the line, and the position of its text. A space is never part of a multi-byte character.
+			int statement_start = line_start;
+			while (statement_start < line_end && buffer[statement_start] != ' ') statement_start++;
+			
+			// Ratings of a single digit, as in every dataset, are read straight from the byte. Others are parsed as text.
+			if (statement_start == line_start + 1 && buffer[line_start] >= '0' && buffer[line_start] <= '9') {
+				rating = buffer[line_start] - '0';
+			}
+			else {
+				rating = Integer.parseInt(new String(buffer, line_start, statement_start - line_start, StandardCharsets.UTF_8));
+			}
+			
+			text_start = Math.min(statement_start + 1, line_end);
+			text = null;
+			
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	* Gets the rating, from 1 to 5, of the current line.
+	*/
+	public int getRating() {
+		return rating;
+	}
+	
+	/**
+	* Gets the rating of the current line mapped onto the range -1 to 1.
+	*/
+	public double getScore() {
+		double statement_score = rating / 2.0 - 1.5;
+		assert statement_score >= -1 && statement_score <= 1 : rating + ", " + statement_score;
+		
+		return statement_score;
+	}
+	
+	/**
+	* Gets the text of the current line, without its rating.
+	*/
+	public String getText() {
+		if (text == null) text = new String(buffer, text_start, line_end - text_start, StandardCharsets.UTF_8);
+		return text;
+	}
+	
+	// Returns the buffer holding the raw bytes of the current line's text, which lie between getTextStart() and getTextEnd().
+	// The buffer is overwritten once next() is called again.
+	protected byte[] getTextBytes() {
+		return buffer;
+	}
+	
+	protected int getTextStart() {
+		return text_start;
+	}
+	
+	protected int getTextEnd() {
+		return line_end;
+	}
+	
+	// Returns true if the current line is entirely ASCII, so that each byte of its text is one character.
+	protected boolean isTextAscii() {
+		return line_is_ascii;
+	}
+	
+	// Returns the rating of the passed line of a dataset, or -1 if the line does not begin with a rating from 1 to 5.
+	protected static int parseRating(String data) {
+		int statement_start = data.indexOf(" ");
+		
+		int rating;
+		try {
+			rating = Integer.parseInt(statement_start == -1 ? data : data.substring(0, statement_start));
+		}
+		catch (NumberFormatException e) {
+			return -1;
+		}
+		
+		return rating >= 1 && rating <= 5 ? rating : -1;
+	}
+	
+	// Returns the text of the passed line of a dataset, without its rating.
+	protected static String parseText(String data) {
+		int statement_start = data.indexOf(" ");
+		return statement_start == -1 ? "" : data.substring(statement_start + 1);
+	}
+	
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	// Reads the next line of the file into the buffer, between line_start and line_end. Returns false at the end of the file.
+	// Lines end with a line feed, which may be preceded by a carriage return. The last line of the file need not end with either.
+	private boolean readLine() throws IOException {
+		int scan_position = buffer_position;
+		boolean is_ascii = true;
+		while (true) {
+			for (; scan_position < buffer_limit; scan_position++) {
+				byte byte_class = BYTE_CLASSES[buffer[scan_position] & 0xFF];
+				
+				if (byte_class == LINE_BREAK) {
+					setLine(buffer_position, scan_position, is_ascii);
+					buffer_position = scan_position + 1;
+					return true;
+				}
+				
+				if (byte_class == NON_ASCII_BYTE) is_ascii = false;
+			}
+			
+			if (end_of_file) {
+				if (buffer_position == buffer_limit) return false;
+				
+				setLine(buffer_position, buffer_limit, is_ascii);
+				buffer_position = buffer_limit;
+				return true;
+			}
+			
+			// Bytes already scanned are moved to the start of the buffer, along with the rest of the line.
+			scan_position -= buffer_position;
+			fillBuffer();
+			scan_position += buffer_position;
+		}
+	}
+	
+	private void setLine(int start, int end, boolean is_ascii) {
+		if (end > start && buffer[end - 1] == '\r') end--;
+		
+		line_start = start;
+		line_end = end;
+		line_is_ascii = is_ascii;
+	}
+	
+	// Moves the unconsumed bytes to the start of the buffer, which is doubled if they fill it, and reads as many bytes from the file as fit after them.
+	private void fillBuffer() throws IOException {
+		int num_unconsumed = buffer_limit - buffer_position;
+		if (num_unconsumed == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+		else {
+			System.arraycopy(buffer, buffer_position, buffer, 0, num_unconsumed);
+		}
+		
+		buffer_position = 0;
+		buffer_limit = num_unconsumed;
+		
+		int num_read = channel.read(ByteBuffer.wrap(buffer, buffer_limit, buffer.length - buffer_limit));
+		if (num_read == -1) end_of_file = true;
+		else buffer_limit += num_read;
+	}
+	
+	// Moves to the passed line. Lines less than DatasetIndex.INTERVAL ahead are simply read past.
+	private void seek(int line) throws IOException {
+		if (line - line_index >= DatasetIndex.INTERVAL) {
+			if (index == null) index = DatasetIndex.forDataset(file);
+			
+			if (line >= index.getNumLines()) {
+				line_index = total_num_lines;
+				return;
+			}
+			
+			// Buffered bytes are discarded.
+			channel.position(index.getOffset(line));
+			buffer_position = 0;
+			buffer_limit = 0;
+			end_of_file = false;
+			line_index = line / DatasetIndex.INTERVAL * DatasetIndex.INTERVAL;
+		}
+		
+		while (line_index < line) {
+			if (!readLine()) {
+				line_index = total_num_lines;
+				return;
+			}
+			
+			line_index++;
+		}
+	}
+}
\ No newline at end of file
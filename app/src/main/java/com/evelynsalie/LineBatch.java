@@ -0,0 +1,75 @@
+package com.evelynsalie;
+
+import java.util.Arrays;
+
+// A batch of lines of text read from a dataset for training, stored as the raw bytes of each line one after another, so that reading a batch creates no Strings.
+// Lines holding characters outside of ASCII are kept as decoded Strings instead, since tokens are learned as characters rather than bytes.
+// A batch is filled by one thread, then read by any number of threads.
+public class LineBatch {
+	private static final int INITIAL_BYTES_PER_LINE = 256;
+	
+	// The bytes of line i lie between line_ends[i-1] (or 0) and line_ends[i].
+	private byte[] text;
+	private final int[] line_ends;
+	
+	// Holds the text of each line which is not ASCII, and null for every other line.
+	private final String[] decoded_lines;
+	
+	private int size;
+	
+	public LineBatch(int capacity) {
+		this.text = new byte[capacity * INITIAL_BYTES_PER_LINE];
+		this.line_ends = new int[capacity];
+		this.decoded_lines = new String[capacity];
+		this.size = 0;
+	}
+	
+	public int getSize() {
+		return size;
+	}
+	
+	public int getCapacity() {
+		return line_ends.length;
+	}
+	
+	public void clear() {
+		Arrays.fill(decoded_lines, 0, size, null);
+		size = 0;
+	}
+	
+	// Appends the text of the reader's current line.
+	protected void add(LabeledDataReader reader) {
+		int start = size == 0 ? 0 : line_ends[size - 1];
+		
+		if (reader.isTextAscii()) {
+			int length = reader.getTextEnd() - reader.getTextStart();
+			if (start + length > text.length) text = Arrays.copyOf(text, Math.max(text.length * 2, start + length));
+			
+			System.arraycopy(reader.getTextBytes(), reader.getTextStart(), text, start, length);
+			line_ends[size] = start + length;
+		}
+		else {
+			decoded_lines[size] = reader.getText();
+			line_ends[size] = start;
+		}
+		
+		size++;
+	}
+	
+	protected byte[] getText() {
+		return text;
+	}
+	
+	protected int getStart(int line) {
+		return line == 0 ? 0 : line_ends[line - 1];
+	}
+	
+	protected int getEnd(int line) {
+		return line_ends[line];
+	}
+	
+	// Returns the text of the passed line if it is not ASCII, or null if it is held as bytes.
+	protected String getDecodedLine(int line) {
+		return decoded_lines[line];
+	}
+}
\ No newline at end of file
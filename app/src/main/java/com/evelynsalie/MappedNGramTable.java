@@ -0,0 +1,115 @@
+package com.evelynsalie;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+// A read-only NGramTable whose columns are memory-mapped from a version 2 model file.
+public class MappedNGramTable extends NGramTable {
+	private final IntBuffer parents;
+	private final IntBuffer tokens;
+	private final IntBuffer occurences;
+	private final DoubleBuffer score_sums;
+	private final DoubleBuffer score_sqr_sums;
+	
+	private final LongBuffer edge_keys;
+	private final IntBuffer edge_children;
+	
+	/**
+	* @param channel The channel of the model file.
+	* @param num_ngrams The number of n-grams in the table, including the root.
+	* @param edge_capacity The number of slots in the key table, always a power of two.
+	* @param section_offsets The file offsets of each section listed by {@link NGramTable#getSectionSizes()}.
+	* @throws IOException When a section cannot be mapped.
+	*/
+	protected MappedNGramTable(FileChannel channel, int num_ngrams, int edge_capacity, long[] section_offsets) throws IOException {
+		super(num_ngrams);
+		
+		this.parents = Model.mapSection(channel, section_offsets[0], 4L * num_ngrams).asIntBuffer();
+		this.tokens = Model.mapSection(channel, section_offsets[1], 4L * num_ngrams).asIntBuffer();
+		this.occurences = Model.mapSection(channel, section_offsets[2], 4L * num_ngrams).asIntBuffer();
+		this.score_sums = Model.mapSection(channel, section_offsets[3], 8L * num_ngrams).asDoubleBuffer();
+		this.score_sqr_sums = Model.mapSection(channel, section_offsets[4], 8L * num_ngrams).asDoubleBuffer();
+		
+		this.edge_keys = Model.mapSection(channel, section_offsets[5], 8L * edge_capacity).asLongBuffer();
+		this.edge_children = Model.mapSection(channel, section_offsets[6], 4L * edge_capacity).asIntBuffer();
+	}
+	
+	@Override
+	public int getChild(int ngram, int token) {
+		long key = edgeKey(ngram, token);
+		int mask = edge_keys.capacity() - 1;
+		for (int slot = hashSlot(key, mask); ; slot = (slot + 1) & mask) {
+			long slot_key = edge_keys.get(slot);
+			if (slot_key == key) return edge_children.get(slot);
+			if (slot_key == NO_EDGE) return -1;
+		}
+	}
+	
+	@Override
+	public int getNumOccurences(int ngram) {
+		return occurences.get(ngram);
+	}
+	
+	@Override
+	public double getCumulativeScore(int ngram) {
+		return score_sums.get(ngram);
+	}
+	
+	@Override
+	public double getCumulativeSqrScore(int ngram) {
+		return score_sqr_sums.get(ngram);
+	}
+	
+	@Override
+	public int getParent(int ngram) {
+		return parents.get(ngram);
+	}
+	
+	@Override
+	public int getToken(int ngram) {
+		return tokens.get(ngram);
+	}
+	
+	@Override
+	protected int getEdgeCapacity() {
+		return edge_keys.capacity();
+	}
+	
+	@Override
+	public int getOrCreateChild(int ngram, int token) {
+		throw new UnsupportedOperationException("Memory-mapped tables are read-only.");
+	}
+	
+	@Override
+	public void addScore(int ngram, double new_score) {
+		throw new UnsupportedOperationException("Memory-mapped tables are read-only.");
+	}
+	
+	@Override
+	protected void addScores(int ngram, int num_occurences, double score_sum, double score_sqr_sum) {
+		throw new UnsupportedOperationException("Memory-mapped tables are read-only.");
+	}
+	
+	@Override
+	protected void merge(NGramTable other) {
+		throw new UnsupportedOperationException("Memory-mapped tables are read-only.");
+	}
+	
+	@Override
+	protected void subtract(NGramTable other) {
+		throw new UnsupportedOperationException("Memory-mapped tables are read-only.");
+	}
+	
+	@Override
+	protected void prune(int min_num_occurences) {
+		throw new UnsupportedOperationException("Memory-mapped tables are read-only.");
+	}
+	
+	@Override
+	protected void writeSections(ModelFileWriter writer) {
+		throw new UnsupportedOperationException("Memory-mapped tables cannot be saved again.");
+	}
+}
\ No newline at end of file
@@ -0,0 +1,103 @@
+package com.evelynsalie;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+// A read-only TokenDictionary whose columns are memory-mapped from a version 2 model file.
+// Loading costs no more than mapping the file, and the pages are shared by every model loaded from it.
+public class MappedTokenDictionary extends TokenDictionary {
+	private final CharBuffer node_keys;
+	private final IntBuffer node_parents;
+	private final IntBuffer node_occurences;
+	
+	private final LongBuffer edge_keys;
+	private final IntBuffer edge_children;
+	
+	/**
+	* @param channel The channel of the model file.
+	* @param num_tokens The number of nodes which are full words.
+	* @param num_nodes The number of nodes in the prefix tree, including the root.
+	* @param edge_capacity The number of slots in the edge table, always a power of two.
+	* @param section_offsets The file offsets of each section listed by {@link TokenDictionary#getSectionSizes()}.
+	* @throws IOException When a section cannot be mapped.
+	*/
+	protected MappedTokenDictionary(FileChannel channel, int num_tokens, int num_nodes, int edge_capacity, long[] section_offsets) throws IOException {
+		super(num_tokens, num_nodes);
+		
+		this.node_keys = Model.mapSection(channel, section_offsets[0], 2L * num_nodes).asCharBuffer();
+		this.node_parents = Model.mapSection(channel, section_offsets[1], 4L * num_nodes).asIntBuffer();
+		this.node_occurences = Model.mapSection(channel, section_offsets[2], 4L * num_nodes).asIntBuffer();
+		
+		this.edge_keys = Model.mapSection(channel, section_offsets[3], 8L * edge_capacity).asLongBuffer();
+		this.edge_children = Model.mapSection(channel, section_offsets[4], 4L * edge_capacity).asIntBuffer();
+	}
+	
+	@Override
+	public int getNumOccurences(int node) {
+		return node_occurences.get(node);
+	}
+	
+	@Override
+	protected char getKey(int node) {
+		return node_keys.get(node);
+	}
+	
+	@Override
+	protected int getParent(int node) {
+		return node_parents.get(node);
+	}
+	
+	@Override
+	protected int getChild(int node, char c) {
+		long key = edgeKey(node, c);
+		int mask = edge_keys.capacity() - 1;
+		for (int slot = hashSlot(key, mask); ; slot = (slot + 1) & mask) {
+			long slot_key = edge_keys.get(slot);
+			if (slot_key == key) return edge_children.get(slot);
+			if (slot_key == NO_EDGE) return -1;
+		}
+	}
+	
+	@Override
+	protected int getEdgeCapacity() {
+		return edge_keys.capacity();
+	}
+	
+	@Override
+	public void learnTokens(String line) {
+		throw new UnsupportedOperationException("Memory-mapped dictionaries are read-only.");
+	}
+	
+	@Override
+	protected void merge(TokenDictionary other) {
+		throw new UnsupportedOperationException("Memory-mapped dictionaries are read-only.");
+	}
+	
+	@Override
+	protected int[] prune(int min_num_occurences) {
+		throw new UnsupportedOperationException("Memory-mapped dictionaries are read-only.");
+	}
+	
+	@Override
+	protected int[] pruneHeldOut(int[][] held_out_occurences, int min_num_occurences) {
+		throw new UnsupportedOperationException("Memory-mapped dictionaries are read-only.");
+	}
+	
+	@Override
+	protected void writeSections(ModelFileWriter writer) {
+		throw new UnsupportedOperationException("Memory-mapped dictionaries cannot be saved again.");
+	}
+	
+	@Override
+	protected int getOrCreateChild(int node, char c) {
+		throw new UnsupportedOperationException("Memory-mapped dictionaries are read-only.");
+	}
+	
+	@Override
+	protected void addOccurence(int node) {
+		throw new UnsupportedOperationException("Memory-mapped dictionaries are read-only.");
+	}
+}
\ No newline at end of file
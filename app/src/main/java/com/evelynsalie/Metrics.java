@@ -0,0 +1,238 @@
+package com.evelynsalie;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+* Counters, gauges and latency histograms for labeling, training, loading and saving models, and serving requests.
+* Every metric is updated without locks, so that recording on the labeling path costs little more than reading the clock.
+* All metrics are exposed by {@link #getPrometheusText()}, which the server serves at /api/metrics.
+* Rates, such as lines trained per second, are derived from the counters by the scraper.
+*/
+public class Metrics {
+	private static final String PREFIX = "sentiment_";
+	
+	// Registered in the order they are listed.
+	private static final ArrayList<Metric> metrics = new ArrayList<Metric>();
+	
+	public static final Histogram LABEL_SECONDS = register(new Histogram("label_duration_seconds", "Time taken to label one statement."));
+	public static final Histogram TOKENIZE_SECONDS = register(new Histogram("tokenize_duration_seconds", "Time taken to tokenize one statement, whether labeled or counted during training."));
+	public static final Counter LABEL_CACHE_HITS = register(new Counter("label_cache_hits_total", "Statements whose labels were found in their model's label cache."));
+	public static final Counter LABEL_CACHE_MISSES = register(new Counter("label_cache_misses_total", "Statements whose labels were looked up in their model's label cache but not found."));
+	
+	public static final Histogram MODEL_LOAD_SECONDS = register(new Histogram("model_load_duration_seconds", "Time taken to load a model from disk."));
+	public static final Histogram MODEL_SAVE_SECONDS = register(new Histogram("model_save_duration_seconds", "Time taken to save a model to disk."));
+	
+	public static final HistogramFamily TRAINING_STAGE_SECONDS = register(new HistogramFamily(
+		"training_stage_duration_seconds", "Time taken by each stage of training a model.", "stage"
+	));
+	
+	public static final Histogram TRAINING_PRUNE_SECONDS = register(new Histogram("training_prune_duration_seconds", "Time taken to prune the token sequence table during training."));
+	public static final Histogram TRAINING_SPILL_SECONDS = register(new Histogram("training_spill_duration_seconds", "Time taken to write the token sequence table to disk during training."));
+	public static final Counter TRAINING_LINES = register(new Counter("training_lines_total", "Lines whose token sequences have been counted during training."));
+	public static final Counter TRAINING_TOKENS = register(new Counter("training_tokens_total", "Tokens whose sequences have been counted during training."));
+	public static final Gauge TRAINING_SEQUENCES = register(new Gauge("training_sequences", "Token sequences tracked by the most recently analyzed batch of training lines."));
+	
+	public static final HistogramFamily REQUEST_SECONDS = register(new HistogramFamily(
+		"request_duration_seconds", "Time taken to serve requests to each route.", "route"
+	));
+	
+	private Metrics() {}
+	
+	/**
+	* Returns every metric in the Prometheus text exposition format (version 0.0.4).
+	*/
+	public static String getPrometheusText() {
+		StringBuilder text = new StringBuilder();
+		for (Metric metric : metrics) {
+			text.append("# HELP ").append(PREFIX).append(metric.name).append(' ').append(metric.help).append('\n');
+			text.append("# TYPE ").append(PREFIX).append(metric.name).append(' ').append(metric.type).append('\n');
+			metric.write(text);
+		}
+		
+		return text.toString();
+	}
+	
+	private static synchronized <T extends Metric> T register(T metric) {
+		metrics.add(metric);
+		return metric;
+	}
+	
+	// A named metric with a help string, which writes its samples to an exposition.
+	private static abstract class Metric {
+		final String name;
+		final String help;
+		final String type;
+		
+		Metric(String name, String help, String type) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+		}
+		
+		abstract void write(StringBuilder text);
+	}
+	
+	/**
+	* A count which only increases.
+	*/
+	public static class Counter extends Metric {
+		private final LongAdder count = new LongAdder();
+		
+		private Counter(String name, String help) {
+			super(name, help, "counter");
+		}
+		
+		public void add(long amount) {
+			count.add(amount);
+		}
+		
+		void write(StringBuilder text) {
+			text.append(PREFIX).append(name).append(' ').append(count.sum()).append('\n');
+		}
+	}
+	
+	/**
+	* A value which is overwritten whenever it is measured.
+	*/
+	public static class Gauge extends Metric {
+		private final AtomicLong value = new AtomicLong();
+		
+		private Gauge(String name, String help) {
+			super(name, help, "gauge");
+		}
+		
+		public void set(long new_value) {
+			value.set(new_value);
+		}
+		
+		void write(StringBuilder text) {
+			text.append(PREFIX).append(name).append(' ').append(value.get()).append('\n');
+		}
+	}
+	
+	/**
+	* A histogram of durations, with a bucket for each power of two nanoseconds from 256 nanoseconds to about 69 seconds.
+	* Every duration is counted in exactly one bucket, so recording is a pair of uncontended additions.
+	*/
+	public static class Histogram extends Metric {
+		// Durations of up to 2^MIN_BUCKET_EXP nanoseconds (256 ns) share the first bucket, and those over 2^MAX_BUCKET_EXP (about 69 s) share the last.
+		private static final int MIN_BUCKET_EXP = 8;
+		private static final int MAX_BUCKET_EXP = 36;
+		
+		// Bucket i counts durations of at most 2^(MIN_BUCKET_EXP + i) nanoseconds which are not counted by bucket i - 1. The last bucket has no limit.
+		private final LongAdder[] buckets;
+		private final LongAdder sum_nanos;
+		
+		private Histogram(String name, String help) {
+			super(name, help, "histogram");
+			
+			this.buckets = new LongAdder[MAX_BUCKET_EXP - MIN_BUCKET_EXP + 2];
+			for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+			this.sum_nanos = new LongAdder();
+		}
+		
+		/**
+		* Records a duration in nanoseconds.
+		*/
+		public void record(long nanos) {
+			if (nanos < 0) nanos = 0;
+			
+			// The smallest exponent such that nanos <= 2^exp.
+			int exp = nanos <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(nanos - 1);
+			int bucket = Math.min(Math.max(exp - MIN_BUCKET_EXP, 0), buckets.length - 1);
+			
+			buckets[bucket].increment();
+			sum_nanos.add(nanos);
+		}
+		
+		/**
+		* Records the time elapsed since the passed value of System.nanoTime().
+		*/
+		public void recordSince(long start_nanos) {
+			record(System.nanoTime() - start_nanos);
+		}
+		
+		void write(StringBuilder text) {
+			write(text, "");
+		}
+		
+		// Writes the samples of this histogram, with the passed labels (formatted as 'name="value",') added to each.
+		void write(StringBuilder text, String labels) {
+			long count = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				count += buckets[i].sum();
+				
+				String limit = i == buckets.length - 1 ? "+Inf" : Double.toString((1L << (MIN_BUCKET_EXP + i)) / 1e9);
+				text.append(PREFIX).append(name).append("_bucket{").append(labels).append("le=\"").append(limit).append("\"} ").append(count).append('\n');
+			}
+			
+			String bare_labels = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+			text.append(PREFIX).append(name).append("_sum").append(bare_labels).append(' ').append(sum_nanos.sum() / 1e9).append('\n');
+			text.append(PREFIX).append(name).append("_count").append(bare_labels).append(' ').append(count).append('\n');
+		}
+	}
+	
+	/**
+	* A set of histograms of the same durations, one for each value of a label, such as a route or a stage of training.
+	*/
+	public static class HistogramFamily extends Metric {
+		private final String label_name;
+		private final ConcurrentHashMap<String, Histogram> histograms;
+		
+		private HistogramFamily(String name, String help, String label_name) {
+			super(name, help, "histogram");
+			
+			this.label_name = label_name;
+			this.histograms = new ConcurrentHashMap<String, Histogram>();
+		}
+		
+		/**
+		* Returns the histogram for the passed label value, creating it if it does not exist.
+		*/
+		public Histogram get(String label_value) {
+			Histogram histogram = histograms.get(label_value);
+			if (histogram == null) histogram = histograms.computeIfAbsent(label_value, (key) -> new Histogram(name, help));
+			
+			return histogram;
+		}
+		
+		void write(StringBuilder text) {
+			// Sorted, so that the exposition is stable between scrapes.
+			for (Map.Entry<String, Histogram> entry : new TreeMap<String, Histogram>(histograms).entrySet()) {
+				entry.getValue().write(text, label_name + "=\"" + escape(entry.getKey()) + "\",");
+			}
+		}
+	}
+	
+	/**
+	* The body of a request handler, which is timed by time().
+	*/
+	public interface RequestHandler {
+		void handle() throws IOException;
+	}
+	
+	/**
+	* Runs the passed handler and records its duration under the passed route, whether or not it throws.
+	*/
+	public static void time(String route, RequestHandler handler) throws IOException {
+		Histogram histogram = REQUEST_SECONDS.get(route);
+		long start_nanos = System.nanoTime();
+		try {
+			handler.handle();
+		}
+		finally {
+			histogram.recordSince(start_nanos);
+		}
+	}
+	
+	// Escapes a label value as the exposition format requires.
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
\ No newline at end of file
@@ -1,29 +1,41 @@
 package com.evelynsalie;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.IOException;
 import java.lang.IllegalArgumentException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.Map;
 /**
 * Represents a language processing model capable of labeling text on a continuous scale from negative (-1) to positive (1).
 * Maintains a dictionary of encountered tokens and sequences of tokens,
 * and statistics regarding the positivity of negativity of those tokens.
+* Training may use several threads, and the trained model is identical regardless of the number of threads used.
 */
 public class Model {
-	// The root node of the TokenSequence prefix tree
-	// This tracks all encountered token sequences up to the length specified in the constructor.
-	private TokenSequence root;
+	// Table of all encountered token sequences up to the length specified in the constructor.
+	// Its root tracks stats on every ingested line.
+	private NGramTable sequences;
 	
 	// Dictionary of all encountered tokens
 	private TokenDictionary all_tokens;
@@ -41,11 +53,66 @@ public class Model {
 	private final int sequence_pruning_interval;
 	private final int num_output_renormalization_samples;
 	
+	// Normalized mean score and weight of each token sequence, indexed by sequence id.
+	// Computed once training or loading finishes, or read from the model file. Null while the model is being trained.
+	private DoubleBuffer sequence_scores;
+	private DoubleBuffer sequence_weights;
+	
+	// The number of threads used to ingest lines during training. Not saved with the model.
+	private final int num_training_threads;
+	
+	// The approximate number of bytes the sequence table may occupy during training, or 0 to prune it every sequence_pruning_interval lines. Not saved with the model.
+	private final long sequence_memory_budget;
+	
+	// When training within a memory budget, the table is written to runs in this directory instead of being pruned, if it is non-null. Not saved with the model.
+	private final File sequence_spill_directory;
+	
+	// When training within a memory budget, the table is pruned down to this fraction of the budget, leaving room for it to grow before the next prune.
+	private final static double BUDGET_PRUNE_TARGET = 0.5;
+	
+	// The number of lines read from the training data before being handed to worker threads at once.
+	protected final static int TRAINING_BATCH_SIZE = 10000;
+	
+	// Models are saved in the version 2 format, a fixed-size header followed by the sections of each table.
+	// The legacy format, which serializes both prefix trees in pre-order, can still be loaded.
+	private final static String MODEL_SIGNATURE = "EkoMdlV2";
+	private final static String LEGACY_MODEL_SIGNATURE = "EkoModel";
+	private final static int MODEL_VERSION = 2;
+	private final static int HEADER_SIZE = 256;
+	
+	// Five sections of the token dictionary, seven of the sequence table, then the normalized score and weight of each sequence.
+	private final static int NUM_SECTIONS = 14;
+	
 	private final static double POLARITY_BIAS_EXP = 1;
 	private final static double DEVIATION_BIAS_EXP = 3;
 	
+	// Scratch buffers reused by every call to getLabel() on the same thread, so labeling allocates nothing.
+	private static class LabelScratch {
+		int[] tokens = new int[0];
+		int[] max_sequence_lengths = new int[0];
+		int[] max_sequences = new int[0];
+		
+		void ensureCapacity(int capacity) {
+			if (tokens.length >= capacity) return;
+			
+			capacity = Math.max(capacity, tokens.length * 2);
+			tokens = new int[capacity];
+			max_sequence_lengths = new int[capacity];
+			max_sequences = new int[capacity];
+		}
+	}
+	
+	private final static ThreadLocal<LabelScratch> label_scratch = ThreadLocal.withInitial(LabelScratch::new);
+	
+	// The number of labels cached by each model.
+	private final static int LABEL_CACHE_CAPACITY = 1 << 16;
+	
+	// Labels generated by this model, before they are renormalized, so that renormalizing never invalidates them.
+	// Models are never modified once complete, and retrained or updated models are new instances, so cached labels never go stale.
+	private final LabelCache label_cache = new LabelCache(LABEL_CACHE_CAPACITY);
+	
 	private enum Stage {
-		INIT, WORDS, PHRASES, RENORMALIZING, COMPLETE
+		INIT, WORDS, PHRASES, RENORMALIZING, SAVING, COMPLETE
 	};
 	
 	// Used to track status during training.
@@ -63,7 +130,65 @@ public class Model {
 		int max_token_sequence_length, int min_token_occurence,
 		int sequence_pruning_interval, int num_output_renormalization_samples
 	) {
-		root = new TokenSequence(max_token_sequence_length, null, null);
+		this(max_token_sequence_length, min_token_occurence, sequence_pruning_interval, num_output_renormalization_samples, 1);
+	}
+	
+	/**
+	* Create an empty model which trains using multiple threads.
+	* @param max_token_sequence_length The maximum length of sequences of tokens whose scores are trackeed.
+	* @param min_token_occurence The minimum number of times that a token can appear in the training data for it to not be pruned.
+	* @param sequence_pruning_interval The number of reviews analyzed between sequence trie pruning steps.
+	* @param num_output_renormalization_samples The number of lines to label, after constructing the model, to use for renormalizing the model's output to match the distribution of training data.
+	* @param num_training_threads The number of threads to ingest training data with.
+	*/
+	public Model(
+		int max_token_sequence_length, int min_token_occurence,
+		int sequence_pruning_interval, int num_output_renormalization_samples,
+		int num_training_threads
+	) {
+		this(max_token_sequence_length, min_token_occurence, sequence_pruning_interval, num_output_renormalization_samples, num_training_threads, 0, null);
+	}
+	
+	/**
+	* Create an empty model which trains using multiple threads, and prunes its token sequences whenever they approach a memory budget, instead of at a fixed interval.
+	* Each time, sequences are pruned with the smallest minimum number of occurences that reduces them to half the budget, so as many as possible are kept.
+	* @param max_token_sequence_length The maximum length of sequences of tokens whose scores are trackeed.
+	* @param min_token_occurence The minimum number of times that a token can appear in the training data for it to not be pruned.
+	* @param sequence_pruning_interval Saved with the model. Only used if sequence_memory_budget is 0.
+	* @param num_output_renormalization_samples The number of lines to label, after constructing the model, to use for renormalizing the model's output to match the distribution of training data.
+	* @param num_training_threads The number of threads to ingest training data with.
+	* @param sequence_memory_budget The approximate number of bytes of heap the token sequence table may occupy while training, or 0 to prune it every sequence_pruning_interval lines.
+	*/
+	public Model(
+		int max_token_sequence_length, int min_token_occurence,
+		int sequence_pruning_interval, int num_output_renormalization_samples,
+		int num_training_threads, long sequence_memory_budget
+	) {
+		this(max_token_sequence_length, min_token_occurence, sequence_pruning_interval, num_output_renormalization_samples, num_training_threads, sequence_memory_budget, null);
+	}
+	
+	/**
+	* Create an empty model which trains using multiple threads within a memory budget, and may spill its token sequences to disk.
+	* If spill_directory is non-null, the token sequence table is written to a sorted run in that directory whenever it reaches the budget, rather than being pruned.
+	* The runs are merged once every line is counted, so every sequence is counted exactly, as though the table had never been pruned, and training data is bounded by disk rather than heap.
+	* @param max_token_sequence_length The maximum length of sequences of tokens whose scores are trackeed.
+	* @param min_token_occurence The minimum number of times that a token can appear in the training data for it to not be pruned.
+	* @param sequence_pruning_interval Saved with the model. Only used if sequence_memory_budget is 0.
+	* @param num_output_renormalization_samples The number of lines to label, after constructing the model, to use for renormalizing the model's output to match the distribution of training data.
+	* @param num_training_threads The number of threads to ingest training data with.
+	* @param sequence_memory_budget The approximate number of bytes of heap the token sequence table may occupy while training, or 0 to prune it every sequence_pruning_interval lines.
+	* @param spill_directory The directory to write runs of token sequences to, or null to prune them when they reach the budget. Ignored if sequence_memory_budget is 0.
+	*/
+	public Model(
+		int max_token_sequence_length, int min_token_occurence,
+		int sequence_pruning_interval, int num_output_renormalization_samples,
+		int num_training_threads, long sequence_memory_budget, File spill_directory
+	) {
+		if (num_training_threads < 1) throw new IllegalArgumentException("num_training_threads must be positive.");
+		if (sequence_memory_budget < 0) throw new IllegalArgumentException("sequence_memory_budget must be non-negative.");
+		if (sequence_memory_budget == 0 && sequence_pruning_interval < 1) throw new IllegalArgumentException("sequence_pruning_interval must be positive without a sequence_memory_budget.");
+		
+		this.sequences = new NGramTable();
 		this.all_tokens = new TokenDictionary();
 		
 		this.num_token_sequences = 0;
@@ -76,11 +201,44 @@ public class Model {
 		this.min_token_occurence = min_token_occurence;
 		this.sequence_pruning_interval = sequence_pruning_interval;
 		this.num_output_renormalization_samples = num_output_renormalization_samples;
+		this.num_training_threads = num_training_threads;
+		this.sequence_memory_budget = sequence_memory_budget;
+		this.sequence_spill_directory = spill_directory;
 		
 		this.status_stage = Stage.INIT;
 		this.status_percent = 0;
 	}
 	
+	// Creates a model from a finished dictionary and sequence table, such as those assembled by CrossValidator.
+	// The sequence table must already be pruned. The model is complete, but its output is not renormalized until renormalizeOutput() is called.
+	protected Model(
+		TokenDictionary all_tokens, NGramTable sequences, int num_lines_analyzed,
+		int max_token_sequence_length, int min_token_occurence,
+		int sequence_pruning_interval, int num_output_renormalization_samples
+	) {
+		this.sequences = sequences;
+		this.all_tokens = all_tokens;
+		
+		this.num_token_sequences = sequences.getNumSequences();
+		this.num_lines_analyzed = num_lines_analyzed;
+		
+		this.gen_labels_mul = 1;
+		this.gen_labels_off = 0;
+		
+		this.max_token_sequence_length = max_token_sequence_length;
+		this.min_token_occurence = min_token_occurence;
+		this.sequence_pruning_interval = sequence_pruning_interval;
+		this.num_output_renormalization_samples = num_output_renormalization_samples;
+		this.num_training_threads = 1;
+		this.sequence_memory_budget = 0;
+		this.sequence_spill_directory = null;
+		
+		computeSequenceWeights();
+		
+		this.status_stage = Stage.COMPLETE;
+		this.status_percent = 1;
+	}
+	
 	/**
 	* Load a previously saved model from file.
 	* @throws FileNotFoundException When the passed file cannot be found.
@@ -88,33 +246,93 @@ public class Model {
 	* @throws IllegalArgumentException If the file is not a valid ekmd file.
 	*/
 	public Model(File file) throws FileNotFoundException, IOException, IllegalArgumentException {
-		DataInputStream din = new DataInputStream(new FileInputStream(file));
+		long start_time = System.nanoTime();
+		this.num_training_threads = 1;
+		this.sequence_memory_budget = 0;
+		this.sequence_spill_directory = null;
 		
 		String iden = "";
-		for (int i = 0; i < 8; i++) iden += (char) din.read();
-		if (!iden.equals("EkoModel")) {
-			din.close();
-			throw new IllegalArgumentException("File is not a valid .ekmd file. Should have signature 'EkoModel' but has '" + iden + "'");
+		try (FileInputStream fin = new FileInputStream(file)) {
+			for (int i = 0; i < 8; i++) iden += (char) fin.read();
 		}
 		
-		this.num_token_sequences = din.readInt();
-		this.num_lines_analyzed = din.readInt();
-		
-		this.gen_labels_mul = din.readDouble();
-		this.gen_labels_off = din.readDouble();
-		
-		this.max_token_sequence_length = din.readInt();
-		this.min_token_occurence = din.readInt();
-		this.sequence_pruning_interval = din.readInt();
-		this.num_output_renormalization_samples = din.readInt();
-		
-		// Read all tokens from file.
-		this.all_tokens = new TokenDictionary(din);
+		if (iden.equals(MODEL_SIGNATURE)) {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				ByteBuffer header = mapSection(channel, 0, Math.min(HEADER_SIZE, channel.size()));
+				header.position(8);
+				
+				int version = header.getInt();
+				if (version != MODEL_VERSION) throw new IllegalArgumentException("Unsupported .ekmd version " + version + ".");
+				
+				this.num_token_sequences = header.getInt();
+				this.num_lines_analyzed = header.getInt();
+				
+				this.gen_labels_mul = header.getDouble();
+				this.gen_labels_off = header.getDouble();
+				
+				this.max_token_sequence_length = header.getInt();
+				this.min_token_occurence = header.getInt();
+				this.sequence_pruning_interval = header.getInt();
+				this.num_output_renormalization_samples = header.getInt();
+				
+				int num_tokens = header.getInt();
+				int num_nodes = header.getInt();
+				int token_edge_capacity = header.getInt();
+				
+				int num_ngrams = header.getInt();
+				int ngram_edge_capacity = header.getInt();
+				
+				int num_sections = header.getInt();
+				if (num_sections != NUM_SECTIONS) {
+					throw new IllegalArgumentException("Expected " + NUM_SECTIONS + " sections but found " + num_sections + ".");
+				}
+				
+				long[] section_offsets = new long[num_sections];
+				for (int i = 0; i < num_sections; i++) section_offsets[i] = header.getLong();
+				
+				this.all_tokens = new MappedTokenDictionary(channel, num_tokens, num_nodes, token_edge_capacity, Arrays.copyOfRange(section_offsets, 0, 5));
+				this.sequences = new MappedNGramTable(channel, num_ngrams, ngram_edge_capacity, Arrays.copyOfRange(section_offsets, 5, 12));
+				
+				this.sequence_scores = mapSection(channel, section_offsets[12], 8L * num_ngrams).asDoubleBuffer();
+				this.sequence_weights = mapSection(channel, section_offsets[13], 8L * num_ngrams).asDoubleBuffer();
+			}
+			catch (BufferUnderflowException e) {
+				throw new IllegalArgumentException("File is not a valid .ekmd file. The header is truncated.");
+			}
+		}
+		else if (iden.equals(LEGACY_MODEL_SIGNATURE)) {
+			DataInputStream din = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			din.skipNBytes(8);
+			
+			this.num_token_sequences = din.readInt();
+			this.num_lines_analyzed = din.readInt();
+			
+			this.gen_labels_mul = din.readDouble();
+			this.gen_labels_off = din.readDouble();
+			
+			this.max_token_sequence_length = din.readInt();
+			this.min_token_occurence = din.readInt();
+			this.sequence_pruning_interval = din.readInt();
+			this.num_output_renormalization_samples = din.readInt();
+			
+			// Read all tokens from file.
+			this.all_tokens = new TokenDictionary(din);
+			
+			// Read all token sequences from file.
+			this.sequences = new NGramTable(din);
+			
+			din.close();
+			
+			computeSequenceWeights();
+		}
+		else {
+			throw new IllegalArgumentException("File is not a valid .ekmd file. Should have signature '" + MODEL_SIGNATURE + "' but has '" + iden + "'");
+		}
 		
-		// Read all TokenSequences from file.
-		root = new TokenSequence(din, null, all_tokens);
+		this.status_stage = Stage.COMPLETE;
+		this.status_percent = 1;
 		
-		din.close();
+		Metrics.MODEL_LOAD_SECONDS.recordSince(start_time);
 	}
 	
 	/**
@@ -133,26 +351,31 @@ public class Model {
 	public static String sanitize(String raw) {
 		raw = raw.trim().toLowerCase();
 		
-		String ret = "";
+		StringBuilder ret = new StringBuilder(raw.length());
 		boolean do_space = false;
 		for (int i = 0; i < raw.length(); i++) {
 			char c = raw.charAt(i);
-			if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '\'') {
+			if (isWordChar(c)) {
 				do_space = true;
-				ret += c;
+				ret.append(c);
 			}
 			else if (do_space) {
-				ret += " ";
+				ret.append(' ');
 				do_space = false;
 			}
 		}
 		
-		return ret;
+		return ret.toString();
+	}
+	
+	// Returns true for the characters which sanitize() keeps: lowercase english letters, numbers, the apostrophe and hyphen.
+	protected static boolean isWordChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '\'';
 	}
 	
 	/**
 	* Gets a JSON string representing the status of this model as it is built in another thread.
-	* @return A JSON string containing a "stage" key, whose value is one of: "initialization", "words", "phrases", "renormalization", or "complete". An optional "progress" key containing a number between 0 and 1 may also signify the fraction of the current stage which is complete.
+	* @return A JSON string containing a "stage" key, whose value is one of: "initialization", "words", "phrases", "renormalization", "saving", or "complete". An optional "progress" key containing a number between 0 and 1 may also signify the fraction of the current stage which is complete.
 	*/
 	public String getStatusJSON() {
 		if (status_stage == Stage.COMPLETE) {
@@ -164,8 +387,8 @@ public class Model {
 	}
 		
 	/**
-	* Creates and retains a Token object for every unique (whitespace-delimited) character sequence in the passed string.
-	* Will not create new Token entities for previously seen words. Tracks the number of occurences of the encounteredx words.
+	* Creates and retains a token for every unique (whitespace-delimited) character sequence in the passed string.
+	* Will not create new tokens for previously seen words. Tracks the number of occurences of the encounteredx words.
 	* @param line The raw text to learn from.
 	*/
 	public void learnTokens(String line) {
@@ -173,42 +396,46 @@ public class Model {
 	}
 	
 	/**
-	* Converts a raw string into an array of tokens.
-	* Returned Token objects must have been previously created by a call to learnTokens()
-	* If a character sequence is not recognized, a corresponding entry in the returned array will be null.
+	* Converts a raw string into an array of token ids.
+	* Returned tokens must have been previously created by a call to learnTokens()
+	* If a character sequence is not recognized, it is omitted from the returned array.
 	* Individual tokens do not have tracked stats or statistics, except the number of occurences.
-	* TokenSequence objects (which may consist of a single Token) do have statistics.
+	* Token sequences (which may consist of a single token) do have statistics.
 	* @param line The raw text to tokenize.
-	* @return An array of Token objects. Typically used to obtain TokenSequence object(s).
+	* @return An array of token ids. Typically used to obtain token sequence(s).
 	*/
-	public ArrayList<Token> tokenize(String line) {
-		return all_tokens.tokenize(line);
+	public int[] tokenize(String line) {
+		long start_time = System.nanoTime();
+		int[] tokens = all_tokens.tokenize(line);
+		
+		Metrics.TOKENIZE_SECONDS.recordSince(start_time);
+		return tokens;
 	}
 	
 	/**
-	* Returns the token sequence associated with a substring of the passed, tokenized string,
-	* or null if no such sequence was encountered in the ingested data.
+	* Returns the id of the token sequence associated with a substring of the passed, tokenized string,
+	* or -1 if no such sequence was encountered in the ingested data.
 	* @param tokens The tokenized text.
 	* @param offset The index of the first token to include in the sequence.
 	* @param length The number of tokens to include in the returned sequence.
 	*/
-	public TokenSequence getTokenSequence(List<Token> tokens, int offset, int length) {
-		TokenSequence node = root;
-		for (int i = 0; i < tokens.size(); i++) {
-			node = node.getChildOrNull(tokens.get(i));
-			if (node == null) return null;
+	public int getTokenSequence(int[] tokens, int offset, int length) {
+		int node = NGramTable.ROOT;
+		for (int i = offset; i < offset + length; i++) {
+			node = sequences.getChild(node, tokens[i]);
+			if (node == -1) return -1;
 		}
 		
 		return node;
 	}
 	
 	/**
-	* Returns the token sequence associated with the passed, tokenized string,
-	* or null if no such sequence was encountered in the ing3e3sted data.
+	* Returns the id of the token sequence associated with the passed, tokenized string,
+	* or -1 if no such sequence was encountered in the ing3e3sted data.
 	* @param tokens The tokenized text.
 	*/
-	public TokenSequence getTokenSequence(List<Token> tokens) {
-		return getTokenSequence(tokens, 0, tokens.size());
+	public int getTokenSequence(int[] tokens) {
+		return getTokenSequence(tokens, 0, tokens.length);
 	}
 	
 	/**
@@ -227,12 +454,75 @@ public class Model {
 		return num_token_sequences;
 	}
 	
+	/**
+	* Returns the approximate number of bytes occupied by this model's tables, which is also the size of its saved file.
+	* Tables loaded from a version 2 file occupy memory-mapped pages rather than the heap.
+	*/
+	public long getMemoryFootprint() {
+		long total = 0;
+		for (long size : all_tokens.getSectionSizes()) total += padToSection(size);
+		for (long size : sequences.getSectionSizes()) total += padToSection(size);
+		total += 16L * sequences.getNumNGrams();
+		
+		return total;
+	}
+	
+	/**
+	* Estimates the peak number of bytes of heap used to train this model on the passed number of lines of the passed file.
+	* The sequence table dominates. Between pruning steps, or until it reaches its memory budget, it can gain an n-gram for every token sequence of every line,
+	* and its arrays are briefly held twice whenever they grow.
+	* The length of lines is sampled from the start of the file, or read from the header of a compiled corpus.
+	*/
+	public long estimateTrainingMemory(File file, int total_num_lines) {
+		double bytes_per_line = 200;
+		double tokens_per_line = -1;
+		if (CompiledCorpus.isCompiledCorpus(file)) {
+			try (CompiledCorpus corpus = new CompiledCorpus(file)) {
+				if (corpus.getNumLines() > 0) tokens_per_line = (double) corpus.getNumWordOccurences() / corpus.getNumLines();
+			}
+			catch (IOException | IllegalArgumentException e) {
+				// Use the default.
+			}
+		}
+		else {
+			try (FileInputStream fin = new FileInputStream(file)) {
+				byte[] sample = fin.readNBytes(1 << 16);
+				
+				int num_line_breaks = 0;
+				for (byte b : sample) {
+					if (b == '\n') num_line_breaks++;
+				}
+				
+				// The first line holds the number of lines.
+				if (num_line_breaks > 1) bytes_per_line = (double) sample.length / num_line_breaks;
+			}
+			catch (IOException e) {
+				// Keep the default.
+			}
+		}
+		
+		// Words average about five letters and a space.
+		if (tokens_per_line < 0) tokens_per_line = bytes_per_line / 6;
+		
+		// Within a memory budget, the table is pruned before it occupies more than the budget.
+		long num_lines = total_num_lines;
+		if (sequence_memory_budget <= 0) num_lines = Math.min(total_num_lines, sequence_pruning_interval);
+		
+		long max_num_ngrams = (long) (num_lines * tokens_per_line * max_token_sequence_length);
+		if (sequence_memory_budget > 0) max_num_ngrams = Math.min(max_num_ngrams, sequence_memory_budget / (2 * NGramTable.BYTES_PER_NGRAM));
+		
+		// Lines in a training batch are also counted into a separate table per worker before being merged.
+		if (num_training_threads > 1) max_num_ngrams += (long) (Math.min(total_num_lines, TRAINING_BATCH_SIZE) * tokens_per_line * max_token_sequence_length);
+		
+		return max_num_ngrams * NGramTable.BYTES_PER_NGRAM * 2;
+	}
+	
 	/**
 	* Returns the bias in the training data ingested so far.
 	* @return The mean of the sentiment labels of all ingested lines.
 	*/
 	public double getAllScoreMean() {
-		return root.getScoreMean();
+		return sequences.getScoreMean(NGramTable.ROOT);
 	}
 	
 	/**
@@ -240,22 +530,24 @@ public class Model {
 	* @return The standard deviation in the sentiment labels of all ingested lines.
 	*/
 	public double getAllScoreStdDev() {
-		return root.getScoreStdDev();
+		return sequences.getScoreStdDev(NGramTable.ROOT);
 	}
 	
 	// Ingests the passed number of lines into the passed TokenDictionary, training the model.
 	/**
 	* Reads labeled data from the passed file and uses it to train the model.
 	* Optionally leaves out a portion of the data to be used for testing at a later time.
-	* @param file The file to read labeled data from.
+	* @param file The file to read labeled data from, either a dataset (.ekdt) or a compiled corpus (.ekcorpus).
 	* @param total_num_lines The number of lines to read, although a portion may be skipped over and not actually used for training.
 	* @param num_folds The number of folds to divide the training data into. If nonzero, all but one such fold will be used for training. Otherwise, all data will be used for training.
 	* @param omit_fold_index The index (ranging from 0 to num_folds-1) of the fold to exclude from training.
 	* @throws FileNotFoundException When the passed file does not exist.
 	* @throws IllegalArgumentException
 	* @throws IOException When an IO error occurs while reading the passed file.
+	* @throws IllegalStateException When this model has already been built or loaded. Complete models are never modified, so that they can be shared by any number of threads.
 	*/
 	public void buildFromFile(File file, int total_num_lines, int num_folds, int omit_fold_index) throws FileNotFoundException, IllegalArgumentException, IOException {
+		if (status_stage != Stage.INIT) throw new IllegalStateException("Models can only be built once. Use update() to add lines to a complete model.");
 		if (file == null) throw new IllegalArgumentException("file must be non-null.");
 		if (total_num_lines <= 0) throw new IllegalArgumentException("total_num_lines must be positive.");
 		if (num_folds < 0) throw new IllegalArgumentException("num_folds must be non-negative.");
@@ -271,167 +563,372 @@ public class Model {
 		}
 		
 		if (num_folds == 0) {
-			// Modify params such that all lines are ingested.
-			num_folds = 1;
-			omit_fold_index = -1;
-			
 			System.out.println(String.format(
-				"Building full model from %d lines.",
-				total_num_lines
+				"Building full model from %d lines using %d threads.",
+				total_num_lines, num_training_threads
 			));
 		}
 		else {
 			System.out.println(String.format(
-				"Building model from %d folds consisting of %d lines each, Fold %d omitted. Training on %d lines total.",
-				num_folds, lines_per_fold, omit_fold_index, total_training_lines
+				"Building model from %d folds consisting of %d lines each, Fold %d omitted. Training on %d lines total using %d threads.",
+				num_folds, lines_per_fold, omit_fold_index, total_training_lines, num_training_threads
 			));
 		}
 		
-		System.out.println("Constructing Dictionary...");
-		status_stage = Stage.WORDS;
-		
-		// Build the token dictionary.
-		all_tokens.buildFromFile(file, total_num_lines, num_folds, omit_fold_index, this);
-		
-		System.out.println(String.format("Dictionary built. %d tokens encountered.", all_tokens.getNumTokens()));
-		System.out.println("Pruning Dictionary...");
+		// Worker threads each ingest a slice of every batch of lines into their own tables,
+		// which are then merged into this model's.
+		ExecutorService workers = null;
+		if (num_training_threads > 1) workers = Executors.newFixedThreadPool(num_training_threads);
 		
-		all_tokens.prune(min_token_occurence);
+		// Compiled corpora hold word ids, which are mapped to tokens once the dictionary is final.
+		CompiledCorpus corpus = CompiledCorpus.isCompiledCorpus(file) ? new CompiledCorpus(file) : null;
+		int[] word_tokens = null;
 		
-		System.out.println(String.format("Dictionary finalized. %d tokens retained.", all_tokens.getNumTokens()));
+		// Writes the sequence table to disk whenever it reaches the memory budget, if enabled.
+		SequenceSpiller spiller = sequence_memory_budget > 0 && sequence_spill_directory != null ? new SequenceSpiller(sequence_spill_directory, max_token_sequence_length) : null;
 		
-		System.out.println("Analyzing token sequences...");
-		status_stage = Stage.PHRASES;
-		setStatusPercent(0);
-		
-		BufferedReader data_scanner = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
-		
-		// Build the token sequence trie.
-		for (int fold_index = 0; fold_index < num_folds; fold_index++) {
-			// Skip over a fold.
-			if (fold_index == omit_fold_index) {
-				for (int line_index = 0; line_index < lines_per_fold; line_index++) data_scanner.readLine();
-				continue;
+		try {
+			System.out.println("Constructing Dictionary...");
+			status_stage = Stage.WORDS;
+			long stage_start_time = System.nanoTime();
+			
+			// Build the token dictionary.
+			if (corpus != null) {
+				all_tokens.buildFromCorpus(corpus, corpus.read(total_num_lines, num_folds, omit_fold_index, true), this);
+			}
+			else {
+				try (LabeledDataReader reader = new LabeledDataReader(file, total_num_lines, num_folds, omit_fold_index, true)) {
+					all_tokens.buildFromFile(reader, this, workers, num_training_threads);
+				}
 			}
 			
-			data_scanner.readLine(); // Throw header away.
-			for (int line_index = 0; line_index < lines_per_fold; line_index++) {
-				String data = data_scanner.readLine();
-				assert data != null : "Cannot ingest lines, EOF reached.";
-				
-				// Obtain raw text of the line and its score.
-				int statement_start = data.indexOf(" ");
-				String line = data.substring(statement_start + 1);
-				
-				int statement_rating = Integer.parseInt(data.substring(0, statement_start));
-				double statement_score = statement_rating / 2.0 - 1.5;
-				assert statement_score >= -1 && statement_score <= 1 : statement_rating + ", " + statement_score;
+			System.out.println(String.format("Dictionary built. %d tokens encountered.", all_tokens.getNumTokens()));
+			System.out.println("Pruning Dictionary...");
+			
+			all_tokens.prune(min_token_occurence);
+			
+			System.out.println(String.format("Dictionary finalized. %d tokens retained.", all_tokens.getNumTokens()));
+			if (corpus != null) word_tokens = getWordTokens(corpus);
+			
+			System.out.println("Analyzing token sequences...");
+			Metrics.TRAINING_STAGE_SECONDS.get("words").recordSince(stage_start_time);
+			status_stage = Stage.PHRASES;
+			stage_start_time = System.nanoTime();
+			setStatusPercent(0);
+			
+			// Computed again once the sequence table is final.
+			sequence_scores = null;
+			sequence_weights = null;
+			
+			// Build the token sequence table.
+			// Lines of a dataset are tokenized by the workers. Lines of a compiled corpus are converted to tokens as they are read.
+			try (LabeledDataReader reader = corpus == null ? new LabeledDataReader(file, total_num_lines, num_folds, omit_fold_index, true) : null) {
+				CompiledCorpus.Reader corpus_reader = corpus == null ? null : corpus.read(total_num_lines, num_folds, omit_fold_index, true);
 				
-				// Use the root to track stats on all ingested lines.
-				root.addScore(statement_score);
+				LineBatch batch_lines = corpus == null ? new LineBatch(TRAINING_BATCH_SIZE) : null;
+				int[][] batch_tokens = corpus == null ? null : new int[TRAINING_BATCH_SIZE][];
+				double[] batch_scores = new double[TRAINING_BATCH_SIZE];
 				
-				ArrayList<Token> tokens = all_tokens.tokenize(line);
+				// The sum of the minimum occurences sequences have been pruned with, less one each, when pruning to fit the memory budget.
+				int max_sequence_undercount = 0;
 				
-				// Add scores to discovered token sequences.
-				for (int i = 0; i < tokens.size(); i++) {
-					TokenSequence node = root;
-					boolean is_new = false;
+				while (true) {
+					// Batches never span a pruning step, so pruning happens at the same points regardless of the number of threads.
+					// Within a memory budget, the table is checked after every batch instead, and the interval is unused.
+					int max_batch_size = TRAINING_BATCH_SIZE;
+					if (sequence_memory_budget <= 0) max_batch_size = Math.min(max_batch_size, sequence_pruning_interval - num_lines_analyzed % sequence_pruning_interval);
 					
-					for (int j = i; j < tokens.size() && j - i < max_token_sequence_length; j++) {
-						Token next_token = tokens.get(j);
-						if (next_token == null) break;
-						
-						is_new = is_new || !node.hasChild(next_token);
-						node = node.getOrCreateChild(next_token);
-						node.addScore(statement_score);
-						
-						if (is_new) {
-							num_token_sequences++;
+					int batch_size = 0;
+					if (batch_lines != null) batch_lines.clear();
+					while (batch_size < max_batch_size) {
+						if (corpus_reader != null) {
+							if (!corpus_reader.next()) break;
+							batch_tokens[batch_size] = corpus_reader.getTokens(word_tokens);
+							batch_scores[batch_size] = corpus_reader.getScore();
 						}
+						else {
+							if (!reader.next()) break;
+							batch_lines.add(reader);
+							batch_scores[batch_size] = reader.getScore();
+						}
+						
+						batch_size++;
 					}
-				}
-				
-				num_lines_analyzed++;
-				if (num_lines_analyzed % 1000 == 0) {
+					
+					if (batch_size == 0) break;
+					
+					checkInterrupted();
+					analyzeLines(batch_lines, batch_tokens, batch_scores, batch_size, workers);
+					
+					num_lines_analyzed += batch_size;
 					setStatusPercent((double) num_lines_analyzed / total_training_lines);
 					
-					if (num_lines_analyzed % 100000 == 0) {
+					Metrics.TRAINING_LINES.add(batch_size);
+					Metrics.TRAINING_SEQUENCES.set(num_token_sequences);
+					
+					if (num_lines_analyzed / 100000 != (num_lines_analyzed - batch_size) / 100000) {
 						System.out.println(String.format("%d Lines Analyzed. %d unique token sequences encountered so far.", num_lines_analyzed, num_token_sequences));
 					}
+					
+					if (sequence_memory_budget > 0) {
+						// The table's arrays are up to twice as long as it, so it may occupy twice its size.
+						if (2L * sequences.getNumNGrams() * NGramTable.BYTES_PER_NGRAM >= sequence_memory_budget && spiller != null) {
+							spiller.spill(sequences);
+							System.out.println(String.format("Sequence trie reached its memory budget and was written to disk. %d runs written so far.", spiller.getNumRuns()));
+							
+							sequences = new NGramTable();
+							num_token_sequences = 0;
+						}
+						else if (2L * sequences.getNumNGrams() * NGramTable.BYTES_PER_NGRAM >= sequence_memory_budget) {
+							int max_num_sequences = (int) Math.min(sequence_memory_budget * BUDGET_PRUNE_TARGET / (2 * NGramTable.BYTES_PER_NGRAM), Integer.MAX_VALUE);
+							int effective_min_token_occurence = Math.max(sequences.getPruneThreshold(max_num_sequences), 2);
+							
+							// As in lossy counting, a sequence which is pruned and encountered again loses the occurences counted before it was pruned.
+							max_sequence_undercount += effective_min_token_occurence - 1;
+							
+							pruneSequenceTrie(effective_min_token_occurence);
+							System.out.println(String.format(
+								"Sequence trie reached its memory budget and was pruned with %d min occurences. %d unique token sequences retained. Occurences of each may be undercounted by up to %d.",
+								effective_min_token_occurence, num_token_sequences, max_sequence_undercount
+							));
+						}
+					}
+					else if (num_lines_analyzed % sequence_pruning_interval == 0) {
+						// The effective min occurence used for pruning is very leniant,
+						// in order to lower the chance that sequences will be incorrectly deleted early on as a result of an unusually low rate of occurence in the earlier reviews.
+						double min_token_occurence_mul = Math.pow((double) num_lines_analyzed / total_training_lines, 1.4);
+						int effective_min_token_occurence = (int) (min_token_occurence * min_token_occurence_mul);
+						
+						if (effective_min_token_occurence > 1) {
+							pruneSequenceTrie(effective_min_token_occurence);
+							System.out.println(String.format("Sequence trie pruned with %d min occurences. %d unique token sequences retained.", effective_min_token_occurence, num_token_sequences));
+						}
+					}
 				}
+			}
+			
+			setStatusPercent(1);
+			
+			if (spiller != null && spiller.getNumRuns() > 0) {
+				// The last table is written too, so that every sequence is read from the runs in order.
+				spiller.spill(sequences);
+				System.out.println(String.format("Merging %d runs of token sequences...", spiller.getNumRuns()));
 				
-				if (num_lines_analyzed % sequence_pruning_interval == 0) {
-					// The effective min occurence used for pruning is very leniant,
-					// in order to lower the chance that sequences will be incorrectly deleted early on as a result of an unusually low rate of occurence in the earlier reviews.
-					double min_token_occurence_mul = Math.pow((double) num_lines_analyzed / total_training_lines, 1.4);
-					int effective_min_token_occurence = (int) (min_token_occurence * min_token_occurence_mul);
+				sequences = spiller.merge(min_token_occurence);
+				num_token_sequences = sequences.getNumSequences();
+			}
+			else {
+				pruneSequenceTrie(min_token_occurence);
+			}
+			
+			computeSequenceWeights();
+			System.out.println(String.format("Analysis complete. %d token sequences retained.", num_token_sequences));
+			Metrics.TRAINING_STAGE_SECONDS.get("phrases").recordSince(stage_start_time);
+			status_stage = Stage.RENORMALIZING;
+			stage_start_time = System.nanoTime();
+			
+			// Renormalize the outputs.
+			int num_lines_sampled = 0;
+			StatisticsTracker generated_labels = new StatisticsTracker(0, -1, 1);
+			try (LabeledDataReader reader = corpus == null ? new LabeledDataReader(file, total_num_lines, num_folds, omit_fold_index, true) : null) {
+				CompiledCorpus.Reader corpus_reader = corpus == null ? null : corpus.read(total_num_lines, num_folds, omit_fold_index, true);
+				
+				while (num_lines_sampled < num_output_renormalization_samples && (corpus_reader != null ? corpus_reader.next() : reader.next())) {
+					if (num_lines_sampled % TRAINING_BATCH_SIZE == 0) checkInterrupted();
 					
-					if (effective_min_token_occurence > 1) {
-						pruneSequenceTrie(effective_min_token_occurence);
-						System.out.println(String.format("Sequence trie pruned with %d min occurences. %d unique token sequences retained.", effective_min_token_occurence, num_token_sequences));
+					// Generate many labels and get their standard deviation.
+					double label;
+					if (corpus_reader != null) {
+						int[] tokens = corpus_reader.getTokens(word_tokens);
+						label = getLabel(tokens, 0, tokens.length);
+					}
+					else {
+						label = getUncachedLabel(reader.getText());
 					}
+					
+					generated_labels.addValue(label);
+					
+					num_lines_sampled++;
+					if (num_lines_sampled == num_output_renormalization_samples) renormalizeOutput(generated_labels);
 				}
 			}
 			
-			setStatusPercent(1);
+			Metrics.TRAINING_STAGE_SECONDS.get("renormalizing").recordSince(stage_start_time);
 		}
+		finally {
+			if (workers != null) workers.shutdownNow();
+			if (spiller != null) spiller.close();
+			if (corpus != null) corpus.close();
+		}
+		
+		status_stage = Stage.COMPLETE;
+	}
+	
+	// Adjusts the distribution of this model's output to match that of the training data,
+	// given the labels this model generated for a sample of the training lines.
+	protected void renormalizeOutput(StatisticsTracker generated_labels) {
+		System.out.println(generated_labels.getStdDev());
+		gen_labels_mul = getAllScoreStdDev() / generated_labels.getStdDev();
+		gen_labels_off = getAllScoreMean() - generated_labels.getMean();
+		assert gen_labels_mul > 0 : gen_labels_mul + " is not positive.";
 		
-		pruneSequenceTrie(min_token_occurence);
-		System.out.println(String.format("Analysis complete. %d token sequences retained.", num_token_sequences));
-		status_stage = Stage.RENORMALIZING;
+		System.out.println(String.format(
+			"Output renormalization complete.\nGen. Mean (%.2f) - Act. Mean (%.2f) = %.2f\nGen. Std. Dev. (%.2f) / Act. Std. Dev. (%.2f) = %.2f",
+			getAllScoreMean(), generated_labels.getMean(), gen_labels_off, generated_labels.getStdDev(), getAllScoreStdDev(), gen_labels_mul
+		));
 		
-		data_scanner.close();
+		status_stage = Stage.COMPLETE;
+	}
+	
+	/**
+	* The labeled lines of a dataset (.ekdt) which is to be added to a model, along with the number of times each of their words occurs.
+	* Reading the lines does not depend on any model, so it may be done before the model to update is chosen. The lines themselves are not held in memory,
+	* and are read again from the file by update().
+	*/
+	public static class Delta {
+		private final File file;
+		private final TokenDictionary words;
+		private final int num_lines;
 		
-		// Renormalize the outputs.
-		data_scanner = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+		private Delta(File file, TokenDictionary words, int num_lines) {
+			this.file = file;
+			this.words = words;
+			this.num_lines = num_lines;
+		}
 		
-		int num_lines_sampled = 0;
-		StatisticsTracker generated_labels = new StatisticsTracker(0, -1, 1);
-		for (int fold_index = 0; fold_index < num_folds; fold_index++) {
-			// Skip over a fold.
-			if (fold_index == omit_fold_index) {
-				for (int line_index = 0; line_index < lines_per_fold; line_index++) data_scanner.readLine();
-				continue;
+		/**
+		* Reads the labeled lines of the passed file, which holds UTF-8 text in the format of a dataset, including its header.
+		* Lines which are not labeled with a rating from 1 to 5 are skipped. The file must not change until the delta has been applied.
+		* @throws IOException When an IO error occurs while reading the file, or it holds no labeled lines.
+		*/
+		public static Delta read(File file) throws IOException {
+			TokenDictionary words = new TokenDictionary();
+			int[] line_words = new int[0];
+			int num_lines = 0;
+			
+			try (BufferedReader data_scanner = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+				data_scanner.readLine();
+				
+				String data;
+				while ((data = data_scanner.readLine()) != null) {
+					if (num_lines % TRAINING_BATCH_SIZE == 0) checkInterrupted();
+					
+					if (LabeledDataReader.parseRating(data) == -1) continue;
+					
+					String text = LabeledDataReader.parseText(data);
+					if (line_words.length < text.length() / 2 + 1) line_words = new int[text.length() + 1];
+					words.learnTokens(text, line_words);
+					
+					num_lines++;
+				}
 			}
 			
-			for (int line_index = 0; line_index < lines_per_fold; line_index++) {
-				String data = data_scanner.readLine();
-				assert data != null : "Cannot ingest lines, EOF reached.";
+			if (num_lines == 0) throw new IOException("The file holds no labeled lines.");
+			
+			return new Delta(file, words, num_lines);
+		}
+		
+		/**
+		* Returns the number of labeled lines in the delta.
+		*/
+		public int getNumLines() {
+			return num_lines;
+		}
+	}
+	
+	/**
+	* Returns a new model holding the statistics of this one along with those of every labeled line in the passed delta.
+	* This model is not modified, so it may continue to label text while the update is built. Its tables are copied onto the heap, even if they are memory-mapped.
+	* The work done beyond copying the tables scales with the number of new lines, rather than the number this model was trained on. The new lines are read from the delta's file
+	* again rather than being held in memory.
+	* Words and token sequences which were pruned from this model only count their new occurences, so they are kept if they are as frequent among the new lines
+	* as the minimum number of occurences requires of all lines. That is, if they occur min_token_occurence * (new lines) / (all lines) times, but at least twice.
+	* The output is renormalized on lines sampled evenly from the new lines if there are at least num_output_renormalization_samples of them. Otherwise, this model's normalization is kept.
+	* @throws IOException When an IO error occurs while reading the delta's file.
+	*/
+	public Model update(Delta delta) throws IOException {
+		int num_lines = delta.num_lines;
+		
+		// The number of occurences among the new lines alone which a word or sequence missing from this model needs to be kept.
+		int min_new_occurence = (int) Math.ceil((double) min_token_occurence * num_lines / (num_lines_analyzed + num_lines));
+		min_new_occurence = Math.min(Math.max(min_new_occurence, 2), min_token_occurence);
+		
+		// Node ids, and therefore token ids, are the same in the copy. Tokens are only ever added to it, so existing token sequences remain valid.
+		// Words of the new lines were counted apart from it, so that words which remain too rare never add nodes to it.
+		TokenDictionary new_tokens = new TokenDictionary();
+		new_tokens.merge(all_tokens);
+		
+		for (int node = 1; node < delta.words.getNumNodes(); node++) {
+			int num_occurences = delta.words.getNumOccurences(node);
+			if (num_occurences == 0) continue;
+			
+			String word = delta.words.getString(node);
+			if (num_occurences >= min_new_occurence || new_tokens.getTokenId(word) != -1) new_tokens.learnToken(word, num_occurences);
+		}
+		
+		// Only the lines which the output is renormalized on are kept.
+		boolean renormalize = num_lines >= num_output_renormalization_samples && num_output_renormalization_samples > 0;
+		String[] samples = new String[renormalize ? num_output_renormalization_samples : 0];
+		int num_samples = 0;
+		
+		NGramTable new_sequences = new NGramTable();
+		try (BufferedReader data_scanner = new BufferedReader(new InputStreamReader(new FileInputStream(delta.file), StandardCharsets.UTF_8))) {
+			data_scanner.readLine();
+			
+			int line_index = 0;
+			String data;
+			while (line_index < num_lines && (data = data_scanner.readLine()) != null) {
+				if (line_index % TRAINING_BATCH_SIZE == 0) checkInterrupted();
 				
-				// Obtain raw text of the line
-				int statement_start = data.indexOf(" ");
-				String line = data.substring(statement_start + 1);
+				int rating = LabeledDataReader.parseRating(data);
+				if (rating == -1) continue;
 				
-				// Generate many labels and get their standard deviation.
-				double label = getLabel(line);
-				generated_labels.addValue(label);
+				String text = LabeledDataReader.parseText(data);
+				int[] tokens = new_tokens.tokenize(text);
+				new_sequences.addStatement(tokens, 0, tokens.length, rating / 2.0 - 1.5, max_token_sequence_length);
 				
-				num_lines_sampled++;
-				if (num_lines_sampled == num_output_renormalization_samples) {
-					System.out.println(generated_labels.getStdDev());
-					gen_labels_mul = getAllScoreStdDev() / generated_labels.getStdDev();
-					gen_labels_off = getAllScoreMean() - generated_labels.getMean();
-					assert gen_labels_mul > 0 : gen_labels_mul + " is not positive.";
-					
-					System.out.println(String.format(
-						"Output renormalization complete.\nGen. Mean (%.2f) - Act. Mean (%.2f) = %.2f\nGen. Std. Dev. (%.2f) / Act. Std. Dev. (%.2f) = %.2f",
-						getAllScoreMean(), generated_labels.getMean(), gen_labels_off, generated_labels.getStdDev(), getAllScoreStdDev(), gen_labels_mul
-					));
-					break;
-				}
+				if (num_samples < samples.length && line_index == (int) ((long) num_lines * num_samples / samples.length)) samples[num_samples++] = text;
+				
+				line_index++;
 			}
+		}
+		
+		if (num_samples < samples.length) throw new IOException("The delta's file changed after it was read.");
+		
+		// The existing sequences are copied first, so they keep their relative order. Every one of them already meets the minimum.
+		NGramTable all_sequences = new NGramTable();
+		all_sequences.merge(sequences);
+		all_sequences.merge(new_sequences);
+		all_sequences.prune(min_new_occurence);
+		
+		Model model = new Model(
+			new_tokens, all_sequences, num_lines_analyzed + num_lines,
+			max_token_sequence_length, min_token_occurence, sequence_pruning_interval, num_output_renormalization_samples
+		);
+		
+		System.out.println(String.format(
+			"Update complete. %d lines added, %d tokens and %d token sequences retained.",
+			num_lines, new_tokens.getNumTokens(), model.getNumTokenSequences()
+		));
+		
+		if (renormalize) {
+			StatisticsTracker generated_labels = new StatisticsTracker(0, -1, 1);
+			for (String sample : samples) generated_labels.addValue(model.getUncachedLabel(sample));
 			
-			if (num_lines_sampled == num_output_renormalization_samples) break;
+			model.renormalizeOutput(generated_labels);
+		}
+		else {
+			model.gen_labels_mul = gen_labels_mul;
+			model.gen_labels_off = gen_labels_off;
 		}
 		
-		data_scanner.close();
-		status_stage = Stage.COMPLETE;
+		return model;
 	}
 	
 	/**
 	* Divides the given set of lines into a number of folds and tests one of them,
 	* returning a statistical analysis of the results. Useful in k-fold cross-validation of a model.
-	* @param file The file to read labeled data from.
+	* @param file The file to read labeled data from, either a dataset (.ekdt) or a compiled corpus (.ekcorpus).
 	* @param total_num_lines The number of lines which will be divided into folds, only one of which will be tested.
 	* @param num_folds The number of folds to divide the training data into. If zero, all data will be used for testing.
 	* @param test_fold_index The index (ranging from 0 to num_folds-1) of the fold to test. Presumably, this is given the same value that was passed as omit_fold_index to buildFromFile().
@@ -452,87 +949,155 @@ public class Model {
 			lines_per_fold /= num_folds;
 		}
 		
-		if (num_folds == 0) {
-			// Modify params such that all lines are tested.
-			num_folds = 1;
-			test_fold_index = 0;
-		}
-		
 		System.out.println(
-			String.format("Testing model on fold %d of %d, consisting of %d lines.", test_fold_index, num_folds-1, lines_per_fold)
+			String.format("Testing model on fold %d of %d, consisting of %d lines.", test_fold_index, Math.max(num_folds-1, 0), lines_per_fold)
 		);
 		
-		BufferedReader data_scanner = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
-		data_scanner.readLine();
-		for (int fold_index = 0; fold_index < num_folds; fold_index++) {
-			if (fold_index == test_fold_index) {
-				ModelTestResults results = new ModelTestResults(200); // TODO: Magic number.
-				for (int line_index = 0; line_index < lines_per_fold; line_index++) {
-					String data = data_scanner.readLine();
-					if (data == null) break;
-					
-					// Obtain raw text of the line and its score.
-					int statement_start = data.indexOf(" ");
-					String line = data.substring(statement_start + 1);
-					double result = getLabel(line);
-					
-					int label = Integer.parseInt(data.substring(0, statement_start));
-					double statement_score = label / 2.0 - 1.5;
-					assert statement_score >= -1 && statement_score <= 1 : label + ", " + statement_score;
-//					System.out.println(result);
+		// Batches of lines are divided between worker threads, each recording results in its own partial results.
+		ConcurrentAccumulator<ModelTestResults> partial_results = new ConcurrentAccumulator<ModelTestResults>(
+			() -> new ModelTestResults(ModelTestResults.DEFAULT_SKETCH_SIZE), ModelTestResults::integrateNewResults
+		);
+		
+		ExecutorService workers = null;
+		if (num_training_threads > 1) workers = Executors.newFixedThreadPool(num_training_threads);
+		
+		try {
+			double[] batch_scores = new double[TRAINING_BATCH_SIZE];
+			if (CompiledCorpus.isCompiledCorpus(file)) {
+				try (CompiledCorpus corpus = new CompiledCorpus(file)) {
+					int[] word_tokens = getWordTokens(corpus);
+					int[][] batch_tokens = new int[TRAINING_BATCH_SIZE][];
 					
-					results.addResult(result, statement_score);
+					CompiledCorpus.Reader reader = corpus.read(total_num_lines, num_folds, test_fold_index, false);
+					while (true) {
+						int batch_size = 0;
+						while (batch_size < TRAINING_BATCH_SIZE && reader.next()) {
+							batch_tokens[batch_size] = reader.getTokens(word_tokens);
+							batch_scores[batch_size] = reader.getScore();
+							batch_size++;
+						}
+						
+						if (batch_size == 0) break;
+						testLines(partial_results, null, batch_tokens, batch_scores, batch_size, workers);
+					}
 				}
-				
-				data_scanner.close();
-				
-				System.out.println("Testing Complete.");
-				System.out.println(results);
-				return results;
 			}
 			else {
-				// Skip 
-				for (int line_index = 0; line_index < lines_per_fold; line_index++) data_scanner.readLine();
+				try (LabeledDataReader reader = new LabeledDataReader(file, total_num_lines, num_folds, test_fold_index, false)) {
+					String[] batch_lines = new String[TRAINING_BATCH_SIZE];
+					while (true) {
+						int batch_size = 0;
+						while (batch_size < TRAINING_BATCH_SIZE && reader.next()) {
+							batch_lines[batch_size] = reader.getText();
+							batch_scores[batch_size] = reader.getScore();
+							batch_size++;
+						}
+						
+						if (batch_size == 0) break;
+						testLines(partial_results, batch_lines, null, batch_scores, batch_size, workers);
+					}
+				}
 			}
 		}
+		finally {
+			if (workers != null) workers.shutdownNow();
+		}
 		
-		assert false;
-		return null;
+		ModelTestResults results = partial_results.fold();
+		
+		System.out.println("Testing Complete.");
+		System.out.println(results);
+		return results;
 	}
 	
 	/**
 	* Returns a label for the passed raw text.
 	* Begins by converting the string into a list of tokens (tokenization)
 	* and taking a weighted average of their associated scores.
+	* Sanitization and tokenization happen in a single pass, and no objects are allocated once the calling thread's scratch buffers are large enough.
+	* Labels are cached by the words of the sanitized text, so repeated statements are only scored once.
 	*/
 	public double getLabel(String line) {
-		line = Model.sanitize(line);
-		ArrayList<Token> tokens = all_tokens.tokenize(line);
+		long start_time = System.nanoTime();
+		
+		// Labels are only cached once the sequence table is final.
+		boolean use_cache = sequence_scores != null;
+		long key = use_cache ? LabelCache.hashWords(line) : 0;
+		
+		double label = use_cache ? label_cache.get(key) : Double.NaN;
+		if (Double.isNaN(label)) {
+			label = getUnnormalizedLabel(line);
+			
+			// Lines with no understood tokens are not cached, since they are labeled without scoring any sequences.
+			if (use_cache && !Double.isNaN(label)) label_cache.put(key, label);
+		}
+		
+		label = normalizeLabel(label);
+		
+		Metrics.LABEL_SECONDS.recordSince(start_time);
+		return label;
+	}
+	
+	// Returns a label for the passed raw text like getLabel(String), without using the cache.
+	// Used when renormalizing and testing, which label lines of the training data that requests rarely repeat, so they neither fill the cache nor count towards its hit rate.
+	protected double getUncachedLabel(String line) {
+		return normalizeLabel(getUnnormalizedLabel(line));
+	}
+	
+	private double getUnnormalizedLabel(String line) {
+		LabelScratch scratch = label_scratch.get();
+		scratch.ensureCapacity(line.length() / 2 + 1);
+		
+		long start_time = System.nanoTime();
+		int num_tokens = all_tokens.tokenizeRaw(line, scratch.tokens);
+		Metrics.TOKENIZE_SECONDS.recordSince(start_time);
+		
+		return getUnnormalizedLabel(scratch, num_tokens);
+	}
+	
+	// Returns a label for text which has already been tokenized by this model's dictionary, found at tokens[offset] through tokens[offset+num_tokens-1].
+	protected double getLabel(int[] tokens, int offset, int num_tokens) {
+		LabelScratch scratch = label_scratch.get();
+		scratch.ensureCapacity(num_tokens);
+		
+		System.arraycopy(tokens, offset, scratch.tokens, 0, num_tokens);
+		return normalizeLabel(getUnnormalizedLabel(scratch, num_tokens));
+	}
+	
+	// Labels the first num_tokens tokens held by the passed scratch buffers, before the output is renormalized.
+	// Returns NaN if none of the tokens belong to a scored sequence.
+	private double getUnnormalizedLabel(LabelScratch scratch, int num_tokens) {
+		// The review contains no understood tokens.
+		if (num_tokens == 0) return Double.NaN;
+		
+		int[] tokens = scratch.tokens;
 		
 		double total_score = 0;
 		double total_weight = 0;
 		
-		HashSet<TokenSequence> already_counted = new HashSet<TokenSequence>();
-		int[] max_sequence_lengths = new int[tokens.size()];
-		TokenSequence[] max_sequences = new TokenSequence[tokens.size()];
+		int[] max_sequence_lengths = scratch.max_sequence_lengths;
+		int[] max_sequences = scratch.max_sequences;
+		Arrays.fill(max_sequence_lengths, 0, num_tokens, 0);
+		Arrays.fill(max_sequences, 0, num_tokens, -1);
 		
-		// The review contains no understood tokens.
-		if (tokens.size() == 0) return 0;
+		// Absent while training, in which case they are computed as needed.
+		DoubleBuffer scores = sequence_scores;
+		DoubleBuffer weights = sequence_weights;
 		
-		for (int i = 0; i < tokens.size(); i++) {
-			TokenSequence node = root;
+		for (int i = 0; i < num_tokens; i++) {
+			int node = NGramTable.ROOT;
 			int curr_sequence_length = 0;
 			
-			for (int j = i; j < tokens.size(); j++) {
-				Token token = tokens.get(j);
+			for (int j = i; j < num_tokens; j++) {
+				int token = tokens[j];
 				
-				TokenSequence next_node = node.getChildOrNull(token);
-				if (next_node != null) {
+				int next_node = sequences.getChild(node, token);
+				if (next_node != -1) {
 					curr_sequence_length++;
 					node = next_node;
 				}
 				
-				if (next_node == null || j == tokens.size() - 1) {
+				if (next_node == -1 || j == num_tokens - 1) {
 					for (int k = i; k < i + curr_sequence_length; k++) {
 						if (max_sequence_lengths[k] < curr_sequence_length) {
 							max_sequence_lengths[k] = curr_sequence_length;
@@ -546,17 +1111,23 @@ public class Model {
 				
 			// We now have the maximum-length token sequence belonging to the current node.
 			// Add its contribution if it has not already been considered.
-			if (max_sequences[i] != null) {
-				TokenSequence current_sequence = max_sequences[i];
-				for (int j = i; j < tokens.size() && max_sequences[j] == current_sequence; j++) {
-					max_sequences[j] = null;
+			if (max_sequences[i] != -1) {
+				int current_sequence = max_sequences[i];
+				for (int j = i; j < num_tokens && max_sequences[j] == current_sequence; j++) {
+					max_sequences[j] = -1;
 				}
 				
-				double token_score = getNormalizedMeanScore(current_sequence);
-				double weight = 
-					Math.pow(Math.abs(token_score), POLARITY_BIAS_EXP) /
-					Math.pow(Math.sqrt(Math.pow(current_sequence.getScoreStdDev(), 2) + 0.02), DEVIATION_BIAS_EXP); // Approximates reciprical w/o allowing for division by zero.
-//				System.out.println(current_sequence.getString() + ": " + token_score + " (<- " + current_sequence.getScoreMean() + ") * " + weight);
+				double token_score;
+				double weight;
+				if (scores != null) {
+					token_score = scores.get(current_sequence);
+					weight = weights.get(current_sequence);
+				}
+				else {
+					token_score = getNormalizedMeanScore(current_sequence);
+					weight = getSequenceWeight(current_sequence, token_score);
+				}
+//				System.out.println(sequences.getString(current_sequence, all_tokens) + ": " + token_score + " (<- " + sequences.getScoreMean(current_sequence) + ") * " + weight);
 				
 				assert token_score >= -1 && token_score <= 1 : token_score + " is not in the range -1.0 - 1.0";
 				assert !Double.isNaN(weight);
@@ -569,51 +1140,121 @@ public class Model {
 			}
 		}
 		
-		if (total_weight == 0) {
-			return 0;
-		}
-		else {
-			double ret = ((total_score / total_weight + gen_labels_off) - getAllScoreMean()) * gen_labels_mul + getAllScoreMean();
-			ret = Math.max(Math.min(ret, 2), -2);
-			assert ret >= -2 && ret <= 2 : ret + " is not in the range -2.0 - 2.0";
-			return ret;
-		}
+		return total_weight == 0 ? Double.NaN : total_score / total_weight;
+	}
+	
+	// Renormalizes a label returned by getUnnormalizedLabel() to match the distribution of the training data. NaN, for text with no understood tokens, becomes 0.
+	private double normalizeLabel(double label) {
+		if (Double.isNaN(label)) return 0;
+		
+		double ret = ((label + gen_labels_off) - getAllScoreMean()) * gen_labels_mul + getAllScoreMean();
+		ret = Math.max(Math.min(ret, 2), -2);
+		assert ret >= -2 && ret <= 2 : ret + " is not in the range -2.0 - 2.0";
+		return ret;
 	}
 	
 	/**
 	* Saves a copy of this model to the passed file.
 	* The suggested extension is .ekmd
+	* Models are always saved in the version 2 format, which is loaded by memory-mapping each section of the file.
+	* The model is written to a temporary file which is renamed to the passed file once complete,
+	* so the passed file never holds a partially written model. While saving, the model's stage is "saving".
 	* @param file the file to save to.
 	* @throws IOException if an error occurs during file IO.
 	*/
 	public void saveToFile(File file) throws FileNotFoundException, IOException {
-		FileOutputStream fout = new FileOutputStream(file);
+		if (sequence_scores == null) computeSequenceWeights();
 		
-		ByteBuffer header = ByteBuffer.allocate(48);
-		for (int i = 0; i < 8; i++) header.put((byte) "EkoModel".charAt(i));
-		header.putInt(num_token_sequences);
-		header.putInt(num_lines_analyzed);
+		long[] token_section_sizes = all_tokens.getSectionSizes();
+		long[] ngram_section_sizes = sequences.getSectionSizes();
 		
-		header.putDouble(gen_labels_mul);
-		header.putDouble(gen_labels_off);
+		// Sections are laid out back to back after the header, each starting on an 8-byte boundary.
+		// The last two hold the scores and weights of each sequence.
+		long[] section_offsets = new long[NUM_SECTIONS];
+		long offset = HEADER_SIZE;
+		for (int i = 0; i < NUM_SECTIONS; i++) {
+			section_offsets[i] = offset;
+			
+			if (i < 5) offset += padToSection(token_section_sizes[i]);
+			else if (i < 12) offset += padToSection(ngram_section_sizes[i - 5]);
+			else offset += 8L * sequences.getNumNGrams();
+		}
 		
-		header.putInt(max_token_sequence_length);
-		header.putInt(min_token_occurence);
-		header.putInt(sequence_pruning_interval);
-		header.putInt(num_output_renormalization_samples);
+		Stage prev_stage = status_stage;
+		status_stage = Stage.SAVING;
+		setStatusPercent(0);
+		long start_time = System.nanoTime();
 		
-		fout.write(header.array());
+		try (ModelFileWriter writer = new ModelFileWriter(file, offset, this)) {
+			writer.writeBytes(MODEL_SIGNATURE);
+			writer.writeInt(MODEL_VERSION);
+			
+			writer.writeInt(num_token_sequences);
+			writer.writeInt(num_lines_analyzed);
+			
+			writer.writeDouble(gen_labels_mul);
+			writer.writeDouble(gen_labels_off);
+			
+			writer.writeInt(max_token_sequence_length);
+			writer.writeInt(min_token_occurence);
+			writer.writeInt(sequence_pruning_interval);
+			writer.writeInt(num_output_renormalization_samples);
+			
+			writer.writeInt(all_tokens.getNumTokens());
+			writer.writeInt(all_tokens.getNumNodes());
+			writer.writeInt(all_tokens.getEdgeCapacity());
+			
+			writer.writeInt(sequences.getNumNGrams());
+			writer.writeInt(sequences.getEdgeCapacity());
+			
+			writer.writeInt(NUM_SECTIONS);
+			for (long section_offset : section_offsets) writer.writeLong(section_offset);
+			
+			writer.padTo(HEADER_SIZE);
+			
+			all_tokens.writeSections(writer);
+			sequences.writeSections(writer);
+			
+			writer.writeDoubles(sequence_scores);
+			writer.writeDoubles(sequence_weights);
+			
+			assert writer.getPosition() == offset : writer.getPosition() + " bytes written, expected " + offset;
+			writer.commit();
+			Metrics.MODEL_SAVE_SECONDS.recordSince(start_time);
+		}
+		finally {
+			status_stage = prev_stage;
+		}
+	}
+	
+	// Precomputes the normalized mean score and weight of every token sequence for use by getLabel().
+	// Must be called whenever the sequence table changes.
+	private void computeSequenceWeights() {
+		int num_ngrams = sequences.getNumNGrams();
+		double[] scores = new double[num_ngrams];
+		double[] weights = new double[num_ngrams];
 		
-		all_tokens.writeToByteStream(fout);
-		root.writeToByteStream(fout);
+		for (int sequence = 1; sequence < num_ngrams; sequence++) {
+			scores[sequence] = getNormalizedMeanScore(sequence);
+			weights[sequence] = getSequenceWeight(sequence, scores[sequence]);
+		}
 		
-		fout.close();
+		sequence_scores = DoubleBuffer.wrap(scores);
+		sequence_weights = DoubleBuffer.wrap(weights);
 	}
 	
-	// Returns a TokenSequence's Mean Score adjusted to account for bias in the training data.
-	private double getNormalizedMeanScore(TokenSequence tokenSeq) {
+	// Returns the weight of a token sequence's contribution to a label, given its normalized mean score.
+	// Sequences with polarized scores and little deviation have the most weight.
+	private double getSequenceWeight(int sequence, double token_score) {
+		return
+			Math.pow(Math.abs(token_score), POLARITY_BIAS_EXP) /
+			Math.pow(Math.sqrt(Math.pow(sequences.getScoreStdDev(sequence), 2) + 0.02), DEVIATION_BIAS_EXP); // Approximates reciprical w/o allowing for division by zero.
+	}
+	
+	// Returns a token sequence's Mean Score adjusted to account for bias in the training data.
+	private double getNormalizedMeanScore(int sequence) {
 		double neutral = getAllScoreMean();
-		double score = tokenSeq.getScoreMean();
+		double score = sequences.getScoreMean(sequence);
 		
 		int sgn = neutral >= 0 ? 1 : -1;
 		double exp = 1 / (1 - Math.log(Math.abs(neutral) + 1)/Math.log(2.0));
@@ -632,6 +1273,8 @@ public class Model {
 				return "phrases";
 			case Stage.RENORMALIZING:
 				return "renormalizing";
+			case Stage.SAVING:
+				return "saving";
 			case Stage.COMPLETE:
 				return "complete";
 			default:
@@ -640,10 +1283,173 @@ public class Model {
 		}
 	}
 	
+	// Adds the passed lines and their scores to the token sequence table. Lines are given either as text or, if lines is null, as tokens.
+	// If workers is non-null, the lines are divided between num_training_threads threads.
+	private void analyzeLines(LineBatch lines, int[][] line_tokens, double[] scores, int num_lines, ExecutorService workers) throws IOException {
+		if (workers == null) {
+			countSequences(sequences, lines, line_tokens, scores, 0, num_lines);
+		}
+		else {
+			ArrayList<Callable<NGramTable>> tasks = new ArrayList<Callable<NGramTable>>();
+			for (int i = 0; i < num_training_threads; i++) {
+				int start = (int) ((long) num_lines * i / num_training_threads);
+				int end = (int) ((long) num_lines * (i + 1) / num_training_threads);
+				
+				tasks.add(() -> {
+					NGramTable partial_sequences = new NGramTable();
+					countSequences(partial_sequences, lines, line_tokens, scores, start, end);
+					return partial_sequences;
+				});
+			}
+			
+			// Scores are multiples of 0.5, so sums are exact and do not depend on the order they are merged in.
+			for (NGramTable partial_sequences : runInParallel(workers, tasks)) {
+				sequences.merge(partial_sequences);
+			}
+		}
+		
+		num_token_sequences = sequences.getNumSequences();
+	}
+	
+	// Adds every token sequence in lines[start] through lines[end-1] (or line_tokens, if lines is null) to the passed table.
+	private void countSequences(NGramTable table, LineBatch lines, int[][] line_tokens, double[] scores, int start, int end) {
+		long num_tokens = 0;
+		int[] line_buffer = new int[0];
+		for (int line_index = start; line_index < end; line_index++) {
+			int[] tokens;
+			int num_line_tokens;
+			if (lines != null) {
+				// Lines of a batch are tokenized into a buffer which is reused.
+				String decoded_line = lines.getDecodedLine(line_index);
+				int max_num_tokens = (decoded_line != null ? decoded_line.length() : lines.getEnd(line_index) - lines.getStart(line_index)) / 2 + 1;
+				if (line_buffer.length < max_num_tokens) line_buffer = new int[max_num_tokens * 2];
+				
+				tokens = line_buffer;
+				
+				long start_time = System.nanoTime();
+				num_line_tokens = all_tokens.tokenize(lines, line_index, line_buffer);
+				Metrics.TOKENIZE_SECONDS.recordSince(start_time);
+			}
+			else {
+				tokens = line_tokens[line_index];
+				num_line_tokens = tokens.length;
+			}
+			
+			table.addStatement(tokens, 0, num_line_tokens, scores[line_index], max_token_sequence_length);
+			num_tokens += num_line_tokens;
+		}
+		
+		Metrics.TRAINING_TOKENS.add(num_tokens);
+	}
+	
+	// Labels lines[0] through lines[num_lines-1] (or line_tokens, if lines is null) and records the results, dividing them between the workers if non-null.
+	private void testLines(
+		ConcurrentAccumulator<ModelTestResults> partial_results, String[] lines, int[][] line_tokens, double[] scores, int num_lines, ExecutorService workers
+	) throws IOException {
+		checkInterrupted();
+		if (workers == null) {
+			testLines(partial_results.get(), lines, line_tokens, scores, 0, num_lines);
+			return;
+		}
+		
+		ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < num_training_threads; i++) {
+			int start = (int) ((long) num_lines * i / num_training_threads);
+			int end = (int) ((long) num_lines * (i + 1) / num_training_threads);
+			
+			tasks.add(() -> {
+				testLines(partial_results.get(), lines, line_tokens, scores, start, end);
+				return null;
+			});
+		}
+		
+		runInParallel(workers, tasks);
+	}
+	
+	private void testLines(ModelTestResults results, String[] lines, int[][] line_tokens, double[] scores, int start, int end) {
+		for (int line_index = start; line_index < end; line_index++) {
+			double result;
+			if (lines != null) {
+				result = getUncachedLabel(lines[line_index]);
+			}
+			else {
+				int[] tokens = line_tokens[line_index];
+				result = getLabel(tokens, 0, tokens.length);
+			}
+			
+			results.addResult(result, scores[line_index]);
+		}
+	}
+	
+	// Runs all passed tasks on the passed executor and returns their results in order.
+	// Exceptions thrown by a task are rethrown on the calling thread.
+	protected static <T> List<T> runInParallel(ExecutorService workers, List<Callable<T>> tasks) throws IOException {
+		try {
+			ArrayList<T> results = new ArrayList<T>();
+			for (Future<T> future : workers.invokeAll(tasks)) {
+				results.add(awaitResult(future));
+			}
+			
+			return results;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for worker threads.");
+		}
+	}
+	
+	// Waits for the passed task to complete and returns its result.
+	// Exceptions thrown by the task are rethrown on the calling thread.
+	protected static <T> T awaitResult(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for worker threads.");
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+	
+	// Returns the token of each word in the passed corpus, or -1 for words which are not tokens.
+	private int[] getWordTokens(CompiledCorpus corpus) {
+		int[] word_tokens = new int[corpus.getNumWords()];
+		for (int word = 0; word < word_tokens.length; word++) word_tokens[word] = all_tokens.getTokenId(corpus.getWord(word));
+		
+		return word_tokens;
+	}
+	
 	private void pruneSequenceTrie(int min_num_occurences) {
-		root.calculateSequenceCounts(min_num_occurences);
-		root.pruneEmptySequences();
-		num_token_sequences = root.getSequenceCount();
+		long start_time = System.nanoTime();
+		
+		sequences.prune(min_num_occurences);
+		num_token_sequences = sequences.getNumSequences();
+		
+		Metrics.TRAINING_PRUNE_SECONDS.recordSince(start_time);
+	}
+	
+	// Maps a read-only section of a model file into memory.
+	protected static ByteBuffer mapSection(FileChannel channel, long offset, long size) throws IOException, IllegalArgumentException {
+		if (size > Integer.MAX_VALUE) throw new IOException("Model file section of " + size + " bytes is too large to map.");
+		if (offset < 0 || offset + size > channel.size()) throw new IllegalArgumentException("File is not a valid .ekmd file. A section lies outside of the file.");
+		
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+	}
+	
+	// Rounds the length of a section up to the next multiple of 8 bytes.
+	protected static long padToSection(long size) {
+		return (size + 7) & ~7L;
+	}
+	
+	// Throws if the calling thread has been interrupted, such as when a training job is cancelled.
+	protected static void checkInterrupted() throws InterruptedIOException {
+		if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Training was interrupted.");
 	}
 	
 	protected void setStatusPercent(double percent) {
@@ -0,0 +1,184 @@
+package com.evelynsalie;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Streams a model file to disk through a single reusable direct buffer.
+// The file is written to a temporary file beside its destination, which is only renamed into place by commit().
+// Until then, nothing with the destination's name (or its .ekmd extension) exists, so readers never see a partial model.
+public class ModelFileWriter implements Closeable {
+	private static final int BUFFER_SIZE = 1 << 20;
+	
+	private final File file;
+	private final File temp_file;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	
+	// Used to report progress. May be null.
+	private final Model model;
+	private final long expected_size;
+	
+	private long num_bytes_flushed;
+	private boolean committed;
+	
+	/**
+	* @param file The file to eventually write to.
+	* @param expected_size The number of bytes that will be written, used to report progress.
+	* @param model The model whose status percent is updated as the file is written, or null.
+	* @throws IOException When the temporary file cannot be created.
+	*/
+	public ModelFileWriter(File file, long expected_size, Model model) throws IOException {
+		this.file = file;
+		this.temp_file = File.createTempFile("." + file.getName() + "-", ".tmp", file.getAbsoluteFile().getParentFile());
+		this.channel = FileChannel.open(temp_file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		
+		this.model = model;
+		this.expected_size = expected_size;
+		
+		this.num_bytes_flushed = 0;
+		this.committed = false;
+	}
+	
+	// Returns the number of bytes written so far.
+	public long getPosition() {
+		return num_bytes_flushed + buffer.position();
+	}
+	
+	public void writeByte(int value) throws IOException {
+		ensureRemaining(1);
+		buffer.put((byte) value);
+	}
+	
+	public void writeInt(int value) throws IOException {
+		ensureRemaining(4);
+		buffer.putInt(value);
+	}
+	
+	public void writeLong(long value) throws IOException {
+		ensureRemaining(8);
+		buffer.putLong(value);
+	}
+	
+	public void writeDouble(double value) throws IOException {
+		ensureRemaining(8);
+		buffer.putDouble(value);
+	}
+	
+	// Writes each character as a single byte. Only suitable for ASCII.
+	public void writeBytes(String value) throws IOException {
+		for (int i = 0; i < value.length(); i++) writeByte(value.charAt(i));
+	}
+	
+	// Writes the first length elements of the passed array.
+	public void writeChars(char[] values, int length) throws IOException {
+		for (int i = 0; i < length; ) {
+			int n = Math.min(length - i, buffer.remaining() / 2);
+			if (n == 0) {
+				flush();
+				continue;
+			}
+			
+			buffer.asCharBuffer().put(values, i, n);
+			buffer.position(buffer.position() + n * 2);
+			i += n;
+		}
+	}
+	
+	public void writeInts(int[] values, int length) throws IOException {
+		for (int i = 0; i < length; ) {
+			int n = Math.min(length - i, buffer.remaining() / 4);
+			if (n == 0) {
+				flush();
+				continue;
+			}
+			
+			buffer.asIntBuffer().put(values, i, n);
+			buffer.position(buffer.position() + n * 4);
+			i += n;
+		}
+	}
+	
+	public void writeLongs(long[] values, int length) throws IOException {
+		for (int i = 0; i < length; ) {
+			int n = Math.min(length - i, buffer.remaining() / 8);
+			if (n == 0) {
+				flush();
+				continue;
+			}
+			
+			buffer.asLongBuffer().put(values, i, n);
+			buffer.position(buffer.position() + n * 8);
+			i += n;
+		}
+	}
+	
+	public void writeDoubles(double[] values, int length) throws IOException {
+		for (int i = 0; i < length; ) {
+			int n = Math.min(length - i, buffer.remaining() / 8);
+			if (n == 0) {
+				flush();
+				continue;
+			}
+			
+			buffer.asDoubleBuffer().put(values, i, n);
+			buffer.position(buffer.position() + n * 8);
+			i += n;
+		}
+	}
+	
+	// Writes every element of the passed buffer, from index 0 to its limit.
+	public void writeDoubles(DoubleBuffer values) throws IOException {
+		if (values.hasArray()) {
+			writeDoubles(values.array(), values.limit());
+		}
+		else {
+			for (int i = 0; i < values.limit(); i++) writeDouble(values.get(i));
+		}
+	}
+	
+	// Writes zeros until the position is a multiple of the passed alignment.
+	public void padTo(int alignment) throws IOException {
+		while (getPosition() % alignment != 0) writeByte(0);
+	}
+	
+	/**
+	* Flushes all written data to disk and atomically renames the temporary file to its destination.
+	* @throws IOException When the data cannot be written or the file cannot be moved.
+	*/
+	public void commit() throws IOException {
+		flush();
+		channel.force(false);
+		channel.close();
+		
+		Files.move(temp_file.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		committed = true;
+	}
+	
+	// Discards the temporary file unless commit() succeeded.
+	public void close() throws IOException {
+		if (committed) return;
+		
+		channel.close();
+		Files.deleteIfExists(temp_file.toPath());
+	}
+	
+	private void ensureRemaining(int num_bytes) throws IOException {
+		if (buffer.remaining() < num_bytes) flush();
+	}
+	
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) num_bytes_flushed += channel.write(buffer);
+		buffer.clear();
+		
+		if (model != null && expected_size > 0) model.setStatusPercent((double) num_bytes_flushed / expected_size);
+	}
+}
\ No newline at end of file
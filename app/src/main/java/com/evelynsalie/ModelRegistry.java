@@ -0,0 +1,218 @@
+package com.evelynsalie;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+* A thread-safe cache of the models in a directory, keyed by name.
+* Each name maps to a published model, which is complete and is never modified afterwards, so any number of threads may label text with it at once.
+* Models are changed by building a new model and publishing it in place of the previous one. Threads which obtained the previous model may finish using it.
+* Obtaining a model which is already loaded takes no locks.
+* Concurrent requests for a model which is not yet loaded wait on a single load.
+* When the estimated size of all loaded models exceeds the memory budget, the least recently used models are evicted, never including the model just loaded or published.
+* Models which are still training are reserved, and are never evicted. They are not returned until they are published.
+*/
+public class ModelRegistry {
+	private final File models_dir;
+	private final long memory_budget;
+	
+	private final ConcurrentHashMap<String, Entry> entries;
+	
+	// Entries record the value of System.nanoTime() at their last access, so smaller stamps are less recently used.
+	// Stamps are only rewritten once they are this old, so that threads labeling with the same model rarely write to the same entry.
+	private static final long ACCESS_RESOLUTION_NANOS = 1000000;
+	
+	// Entries are immutable except for their access stamps. A model is replaced by replacing its entry.
+	private static class Entry {
+		final CompletableFuture<Model> model;
+		final boolean reserved;
+		
+		// Estimated size of the model in bytes, set once it has loaded.
+		volatile long size;
+		volatile long last_access;
+		
+		Entry(CompletableFuture<Model> model, boolean reserved) {
+			this.model = model;
+			this.reserved = reserved;
+			this.last_access = System.nanoTime();
+		}
+		
+		void touch() {
+			long now = System.nanoTime();
+			if (now - last_access >= ACCESS_RESOLUTION_NANOS) last_access = now;
+		}
+	}
+	
+	/**
+	* @param models_dir The directory that model files are loaded from. A model named "name" is stored in "name.ekmd".
+	* @param memory_budget The number of bytes that published models may occupy before the least recently used are evicted.
+	*/
+	public ModelRegistry(File models_dir, long memory_budget) {
+		this.models_dir = models_dir;
+		this.memory_budget = memory_budget;
+		
+		this.entries = new ConcurrentHashMap<String, Entry>();
+	}
+	
+	/**
+	* Returns the published model by the passed name, loading it from disk if it is not in memory.
+	* @return The model, or null if it is neither in memory nor on disk, or is still being trained.
+	* @throws IOException When an IO error occurs while loading the model, or the thread is interrupted while waiting for another thread to load it.
+	* @throws IllegalArgumentException When the model's file is not a valid .ekmd file.
+	*/
+	public Model get(String name) throws IOException, IllegalArgumentException {
+		Entry entry = entries.get(name);
+		
+		if (entry == null) {
+			File file = getFile(name);
+			if (!file.exists()) return null;
+			
+			// Only the thread whose entry is inserted loads the model. All others wait on its future.
+			Entry new_entry = new Entry(new CompletableFuture<Model>(), false);
+			entry = entries.putIfAbsent(name, new_entry);
+			
+			if (entry == null) {
+				entry = new_entry;
+				
+				try {
+					Model model = new Model(file);
+					entry.size = model.getMemoryFootprint();
+					
+					// Loading may take long enough for other models to be used since the entry was created.
+					entry.last_access = System.nanoTime();
+					entry.model.complete(model);
+				}
+				catch (IOException | RuntimeException e) {
+					entries.remove(name, entry);
+					entry.model.completeExceptionally(e);
+					throw e;
+				}
+				
+				evictIfNeeded(entry);
+			}
+		}
+		
+		if (entry.reserved) return null;
+		
+		entry.touch();
+		return Model.awaitResult(entry.model);
+	}
+	
+	/**
+	* Returns the published model by the passed name if it is in memory, without loading it. Never blocks.
+	* @return The model, or null if it is not in memory, is still loading or is still being trained.
+	*/
+	public Model getIfLoaded(String name) {
+		Entry entry = entries.get(name);
+		if (entry == null || entry.reserved || !entry.model.isDone() || entry.model.isCompletedExceptionally()) return null;
+		
+		entry.touch();
+		return entry.model.join();
+	}
+	
+	/**
+	* Reserves the passed name for a model which is being trained. Until publish() is called, the model is never evicted,
+	* and the name is neither loaded from disk nor returned by get().
+	* @param model The model being trained, or null if it is only built once training ends, in which case it is passed to publish() instead.
+	* @return False if a model by this name is already in memory or reserved, in which case nothing is changed.
+	*/
+	public boolean reserve(String name, Model model) {
+		return entries.putIfAbsent(name, new Entry(CompletableFuture.completedFuture(model), true)) == null;
+	}
+	
+	/**
+	* Publishes a reserved model once it is complete, typically once it has been saved. It is returned by get() and may be evicted from then on.
+	* Does nothing if the named model is not reserved.
+	*/
+	public void publish(String name) {
+		Entry entry = entries.get(name);
+		if (entry == null || !entry.reserved) return;
+		
+		Entry published_entry = new Entry(entry.model, false);
+		published_entry.size = entry.model.join().getMemoryFootprint();
+		
+		if (entries.replace(name, entry, published_entry)) evictIfNeeded(published_entry);
+	}
+	
+	/**
+	* Publishes the passed model under a name reserved without one, once it is complete. Does nothing if the name is not reserved.
+	*/
+	public void publish(String name, Model model) {
+		Entry entry = entries.get(name);
+		if (entry == null || !entry.reserved) return;
+		
+		Entry published_entry = new Entry(CompletableFuture.completedFuture(model), false);
+		published_entry.size = model.getMemoryFootprint();
+		
+		if (entries.replace(name, entry, published_entry)) evictIfNeeded(published_entry);
+	}
+	
+	/**
+	* Publishes the passed model in place of the named model, such as an updated copy of it, whether or not the named model was in memory.
+	* Threads which already obtained the previous model may continue to use it. The passed model must be complete and must not be modified afterwards.
+	* @return False if the named model is reserved, in which case nothing is changed.
+	*/
+	public boolean replace(String name, Model model) {
+		Entry new_entry = new Entry(CompletableFuture.completedFuture(model), false);
+		new_entry.size = model.getMemoryFootprint();
+		
+		Entry entry = entries.compute(name, (key, previous_entry) -> previous_entry != null && previous_entry.reserved ? previous_entry : new_entry);
+		if (entry != new_entry) return false;
+		
+		evictIfNeeded(new_entry);
+		return true;
+	}
+	
+	/**
+	* Removes the named model from memory, for instance because its file was deleted.
+	* Threads which already obtained the model may continue to use it.
+	*/
+	public void invalidate(String name) {
+		entries.remove(name);
+	}
+	
+	/**
+	* Removes the named model from memory unless it is reserved, such as before its file is deleted.
+	* Threads which already obtained the model may continue to use it.
+	* @return False if the named model is reserved, in which case nothing is changed.
+	*/
+	public boolean invalidateUnlessReserved(String name) {
+		return entries.compute(name, (key, entry) -> entry != null && entry.reserved ? entry : null) == null;
+	}
+	
+	// Returns the file a model by the passed name is saved to.
+	public File getFile(String name) {
+		return new File(models_dir, name + ".ekmd");
+	}
+	
+	// Evicts the least recently used published models, other than the passed entry, until the rest fit in the memory budget.
+	// The passed entry, which was just loaded or published, is kept even if it alone exceeds the budget.
+	// The scan is linear in the number of loaded models, which is expected to be small.
+	private void evictIfNeeded(Entry kept_entry) {
+		while (true) {
+			long total_size = 0;
+			String lru_name = null;
+			Entry lru_entry = null;
+			
+			for (Map.Entry<String, Entry> pair : entries.entrySet()) {
+				Entry entry = pair.getValue();
+				if (entry.reserved || !entry.model.isDone()) continue;
+				
+				total_size += entry.size;
+				if (entry != kept_entry && (lru_entry == null || entry.last_access - lru_entry.last_access < 0)) {
+					lru_name = pair.getKey();
+					lru_entry = entry;
+				}
+			}
+			
+			if (total_size <= memory_budget || lru_entry == null) return;
+			
+			if (entries.remove(lru_name, lru_entry)) {
+				System.out.println(String.format("Evicted model '%s' (%d bytes).", lru_name, lru_entry.size));
+			}
+		}
+	}
+}
\ No newline at end of file
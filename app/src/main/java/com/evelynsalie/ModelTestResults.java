@@ -3,7 +3,10 @@ package com.evelynsalie;
 import java.lang.IllegalArgumentException;
 
 public class ModelTestResults {
-	private final int num_buckets;
+	// The accuracy parameter of the sketches of test results, which estimate their quantiles to within about 1.65%.
+	public static final int DEFAULT_SKETCH_SIZE = 200;
+	
+	private final int sketch_size;
 	
 	private StatisticsTracker generateds;
 	private StatisticsTracker actuals;
@@ -14,12 +17,12 @@ public class ModelTestResults {
 	private int num_true_positive_labels;
 	private int num_true_negative_labels;
 	
-	public ModelTestResults(int num_buckets) {
-		this.num_buckets = num_buckets;
+	public ModelTestResults(int sketch_size) {
+		this.sketch_size = sketch_size;
 		
-		this.generateds = new StatisticsTracker(num_buckets, -2, 2);
-		this.actuals = new StatisticsTracker(num_buckets, -2, 2);
-		this.errors = new StatisticsTracker(num_buckets, 0, 4);
+		this.generateds = new StatisticsTracker(sketch_size, -2, 2);
+		this.actuals = new StatisticsTracker(sketch_size, -2, 2);
+		this.errors = new StatisticsTracker(sketch_size, 0, 4);
 		
 		this.num_false_positive_labels = 0;
 		this.num_false_negative_labels = 0;
@@ -51,7 +54,7 @@ public class ModelTestResults {
 	
 	// Combines the passed result set with this one, overwritting the values on this.
 	protected void integrateNewResults(ModelTestResults other) {
-		if (this.num_buckets != other.num_buckets) {
+		if (this.sketch_size != other.sketch_size) {
 			throw new IllegalArgumentException();
 		}
 		
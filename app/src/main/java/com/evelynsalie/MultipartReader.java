@@ -0,0 +1,273 @@
+package com.evelynsalie;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+* Incrementally reads the parts of a multipart/form-data body.
+* The body is scanned for boundaries through a fixed-size buffer, so memory use does not depend on the size of the body.
+* Each part's content is exposed as an InputStream which ends at the next boundary.
+*/
+public class MultipartReader {
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	// Headers of a single part larger than this are rejected.
+	private static final int MAX_HEADER_SIZE = 1 << 14;
+	
+	private final InputStream input;
+	
+	// CRLF, two hyphens and the boundary. Precedes every part, and the end of the body.
+	private final byte[] delimiter;
+	
+	// Bytes read from input but not yet consumed occupy buffer[start] through buffer[end-1].
+	private final byte[] buffer;
+	private int start;
+	private int end;
+	private boolean input_exhausted;
+	
+	// True once the delimiter ending the current part has been reached.
+	private boolean at_delimiter;
+	private boolean finished;
+	
+	private String part_headers;
+	private InputStream part_stream;
+	
+	/**
+	* @param input The body to read.
+	* @param boundary The boundary parameter of the body's Content-Type, without the leading hyphens.
+	*/
+	public MultipartReader(InputStream input, String boundary) {
+		this.input = input;
+		this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+		if (delimiter.length * 2 > BUFFER_SIZE) throw new IllegalArgumentException("Boundary is too long.");
+		
+		// The first boundary is not preceded by a line break. Pretend it is, so that the preamble is read as a part to be skipped.
+		this.buffer = new byte[BUFFER_SIZE];
+		this.buffer[0] = '\r';
+		this.buffer[1] = '\n';
+		this.start = 0;
+		this.end = 2;
+		this.input_exhausted = false;
+		
+		this.at_delimiter = false;
+		this.finished = false;
+		
+		this.part_headers = null;
+		this.part_stream = new PartStream();
+	}
+	
+	/**
+	* Extracts the boundary parameter from a multipart Content-Type header.
+	* @return The boundary, or null if the header has none.
+	*/
+	public static String getBoundary(String content_type) {
+		int boundary_start = content_type.indexOf("boundary=");
+		if (boundary_start == -1) return null;
+		boundary_start += 9;
+		
+		int boundary_end = content_type.indexOf(";", boundary_start);
+		if (boundary_end == -1) boundary_end = content_type.length();
+		
+		String boundary = content_type.substring(boundary_start, boundary_end).trim();
+		if (boundary.length() >= 2 && boundary.startsWith("\"") && boundary.endsWith("\"")) boundary = boundary.substring(1, boundary.length() - 1);
+		
+		return boundary.isEmpty() ? null : boundary;
+	}
+	
+	/**
+	* Skips the remainder of the current part, if any, and advances to the next one.
+	* @return False if there are no more parts.
+	* @throws IOException When an IO error occurs, or the body is malformed.
+	*/
+	public boolean nextPart() throws IOException {
+		if (finished) return false;
+		
+		// Skip to the end of the current part (or preamble), then past the delimiter.
+		part_stream.skip(Long.MAX_VALUE);
+		start += delimiter.length;
+		at_delimiter = false;
+		
+		// Two hyphens follow the last delimiter.
+		if (!fill(2)) throw new IOException("Unexpected end of multipart body.");
+		if (buffer[start] == '-' && buffer[start + 1] == '-') {
+			finished = true;
+			part_stream = null;
+			return false;
+		}
+		
+		// Otherwise, the rest of the delimiter's line is ignored, followed by headers and a blank line.
+		StringBuilder headers = new StringBuilder();
+		skipLine(null);
+		while (skipLine(headers) > 0) {
+			headers.append('\n');
+			if (headers.length() > MAX_HEADER_SIZE) throw new IOException("Multipart headers are too large.");
+		}
+		
+		part_headers = headers.toString();
+		part_stream = new PartStream();
+		return true;
+	}
+	
+	/**
+	* Returns the value of the name parameter of the current part's Content-Disposition header, or null if it has none.
+	*/
+	public String getName() {
+		if (part_headers == null) return null;
+		
+		for (String header : part_headers.split("\n")) {
+			if (!header.regionMatches(true, 0, "Content-Disposition:", 0, 20)) continue;
+			
+			// Only a parameter named exactly "name" matches, not one which ends with it, such as "filename".
+			for (int position = findParameterEnd(header, 20); position != -1; position = findParameterEnd(header, position)) {
+				position++;
+				while (position < header.length() && Character.isWhitespace(header.charAt(position))) position++;
+				if (!header.regionMatches(true, position, "name=", 0, 5)) continue;
+				
+				int value_start = position + 5;
+				if (value_start < header.length() && header.charAt(value_start) == '"') {
+					int value_end = header.indexOf('"', value_start + 1);
+					return value_end == -1 ? null : header.substring(value_start + 1, value_end);
+				}
+				
+				int value_end = findParameterEnd(header, value_start);
+				return header.substring(value_start, value_end == -1 ? header.length() : value_end).trim();
+			}
+			
+			return null;
+		}
+		
+		return null;
+	}
+	
+	// Returns the index of the semicolon which ends the header parameter containing the passed index, or -1 if it is the last.
+	// Semicolons within quoted values are skipped.
+	private static int findParameterEnd(String header, int start) {
+		boolean in_quotes = false;
+		for (int i = start; i < header.length(); i++) {
+			char c = header.charAt(i);
+			if (c == '"') in_quotes = !in_quotes;
+			else if (c == ';' && !in_quotes) return i;
+		}
+		
+		return -1;
+	}
+	
+	/**
+	* Returns the content of the current part, which ends where the next boundary begins.
+	* The stream is invalidated by the next call to nextPart(). Closing it has no effect.
+	*/
+	public InputStream getPartStream() {
+		return part_stream;
+	}
+	
+	// Reads input until at least num_bytes bytes are buffered or the input ends.
+	// Returns false if fewer are available.
+	private boolean fill(int num_bytes) throws IOException {
+		while (end - start < num_bytes) {
+			if (input_exhausted) return false;
+			
+			if (start > 0) {
+				System.arraycopy(buffer, start, buffer, 0, end - start);
+				end -= start;
+				start = 0;
+			}
+			
+			int num_read = input.read(buffer, end, buffer.length - end);
+			if (num_read == -1) input_exhausted = true;
+			else end += num_read;
+		}
+		
+		return true;
+	}
+	
+	// Consumes a line ending in CRLF, appending it (without the line break) to the passed builder if it is not null.
+	// Returns the length of the line.
+	private int skipLine(StringBuilder line) throws IOException {
+		int length = 0;
+		while (true) {
+			if (!fill(2)) throw new IOException("Unexpected end of multipart headers.");
+			
+			if (buffer[start] == '\r' && buffer[start + 1] == '\n') {
+				start += 2;
+				return length;
+			}
+			
+			if (line != null) line.append((char) (buffer[start] & 0xFF));
+			start++;
+			length++;
+			
+			if (length > MAX_HEADER_SIZE) throw new IOException("Multipart headers are too large.");
+		}
+	}
+	
+	// Returns the number of bytes at the start of the buffer which can be returned before the delimiter,
+	// reading more input if none can be. Returns 0 once the delimiter is reached.
+	private int numBytesBeforeDelimiter() throws IOException {
+		while (!at_delimiter) {
+			// Search for the delimiter. Bytes past the last possible match could begin a delimiter split across reads, so they are held back.
+			int last_start = end - delimiter.length;
+			for (int i = start; i <= last_start; i++) {
+				if (buffer[i] == delimiter[0] && matchesDelimiter(i)) {
+					if (i == start) at_delimiter = true;
+					return i - start;
+				}
+			}
+			
+			int num_safe = Math.max(last_start + 1 - start, 0);
+			if (num_safe > 0) return num_safe;
+			
+			if (!fill(delimiter.length)) {
+				throw new IOException("Unexpected end of multipart body.");
+			}
+		}
+		
+		return 0;
+	}
+	
+	private boolean matchesDelimiter(int offset) {
+		for (int i = 1; i < delimiter.length; i++) {
+			if (buffer[offset + i] != delimiter[i]) return false;
+		}
+		
+		return true;
+	}
+	
+	// Reads the content of the current part from the shared buffer.
+	private class PartStream extends InputStream {
+		@Override
+		public int read() throws IOException {
+			if (part_stream != this || numBytesBeforeDelimiter() == 0) return -1;
+			return buffer[start++] & 0xFF;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) return 0;
+			if (part_stream != this) return -1;
+			
+			int n = Math.min(numBytesBeforeDelimiter(), len);
+			if (n == 0) return -1;
+			
+			System.arraycopy(buffer, start, b, off, n);
+			start += n;
+			return n;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException {
+			if (part_stream != this) return 0;
+			
+			long num_skipped = 0;
+			while (num_skipped < n) {
+				int num_available = (int) Math.min(numBytesBeforeDelimiter(), n - num_skipped);
+				if (num_available == 0) break;
+				
+				start += num_available;
+				num_skipped += num_available;
+			}
+			
+			return num_skipped;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,404 @@
+package com.evelynsalie;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Stores statistics on every tracked sequence of tokens (n-gram) as a prefix tree.
+// Every n-gram is identified by an int. The root (id 0) is the empty sequence and tracks stats on every ingested line.
+// An n-gram is keyed by the n-gram one token shorter (its parent) and the id of its last token.
+// Both ids are packed into a single long, which is looked up in an open-addressed hash table.
+// Per-n-gram data is stored in parallel primitive arrays.
+public class NGramTable {
+	public static final int ROOT = 0;
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int PRUNE_HISTOGRAM_SIZE = 1 << 16;
+	
+	// Marks an unused slot in edge_keys.
+	protected static final long NO_EDGE = -1;
+	
+	// Bytes of heap per n-gram: three int and two double columns, plus two slots (a long and an int each) of the key table.
+	protected static final int BYTES_PER_NGRAM = 3 * 4 + 2 * 8 + 2 * (8 + 4);
+	
+	// The parent of each n-gram and the token which extends the parent into the n-gram.
+	private int[] parents;
+	private int[] tokens;
+	
+	// Number of times each n-gram has been added to the table.
+	private int[] occurences;
+	
+	// Sum of the scores of all statements that each n-gram appears in
+	// (n-gram will be counted multiple times for statements in which it appears multiple times!)
+	private double[] score_sums;
+	
+	// Sum of the squares of the scores of all statements that each n-gram appears in.
+	// Used for calculating the standard deviation of this data.
+	private double[] score_sqr_sums;
+	
+	private int num_ngrams;
+	
+	// Open-addressed (linear probing) table of (parent, token) keys. The length of both arrays is always a power of two.
+	private long[] edge_keys;
+	private int[] edge_children;
+	
+	public NGramTable() {
+		allocate(INITIAL_CAPACITY);
+		
+		num_ngrams = 1;
+		parents[ROOT] = -1;
+		tokens[ROOT] = -1;
+	}
+	
+	// Reads a table saved in a legacy ("EkoModel") model file, which stores the prefix tree in pre-order.
+	// Token indices on disk are the ids assigned to tokens by TokenDictionary when it is read.
+	public NGramTable(DataInputStream din) throws IOException {
+		allocate(INITIAL_CAPACITY);
+		
+		num_ngrams = 0;
+		readNGram(din, -1);
+	}
+	
+	// Used by subclasses which store their n-grams elsewhere.
+	protected NGramTable(int num_ngrams) {
+		this.num_ngrams = num_ngrams;
+	}
+	
+	// Returns the number of n-grams in the table, excluding the root.
+	public int getNumSequences() {
+		return num_ngrams - 1;
+	}
+	
+	// Returns the n-gram formed by extending the passed n-gram with the passed token, or -1 if it is not tracked.
+	public int getChild(int ngram, int token) {
+		long key = edgeKey(ngram, token);
+		int mask = edge_keys.length - 1;
+		for (int slot = hashSlot(key, mask); ; slot = (slot + 1) & mask) {
+			if (edge_keys[slot] == key) return edge_children[slot];
+			if (edge_keys[slot] == NO_EDGE) return -1;
+		}
+	}
+	
+	// Gets the n-gram formed by extending the passed n-gram with the passed token.
+	// If it does not exist, create it.
+	public int getOrCreateChild(int ngram, int token) {
+		long key = edgeKey(ngram, token);
+		int mask = edge_keys.length - 1;
+		int slot = hashSlot(key, mask);
+		for (; edge_keys[slot] != NO_EDGE; slot = (slot + 1) & mask) {
+			if (edge_keys[slot] == key) return edge_children[slot];
+		}
+		
+		int child = num_ngrams++;
+		if (child == parents.length) resize(child * 2);
+		
+		parents[child] = ngram;
+		tokens[child] = token;
+		occurences[child] = 0;
+		score_sums[child] = 0;
+		score_sqr_sums[child] = 0;
+		
+		edge_keys[slot] = key;
+		edge_children[slot] = child;
+		
+		// Keep the table at most half full. Every n-gram but the root has exactly one key.
+		if (num_ngrams * 2 > edge_keys.length) rebuildEdges(edge_keys.length * 2);
+		
+		return child;
+	}
+	
+	// Called with the score of a sentence whenever the passed n-gram is encountered.
+	public void addScore(int ngram, double new_score) {
+		occurences[ngram]++;
+		score_sums[ngram] += new_score;
+		score_sqr_sums[ngram] += new_score*new_score;
+	}
+	
+	// Adds the statistics of several occurences of the passed n-gram at once.
+	protected void addScores(int ngram, int num_occurences, double score_sum, double score_sqr_sum) {
+		occurences[ngram] += num_occurences;
+		score_sums[ngram] += score_sum;
+		score_sqr_sums[ngram] += score_sqr_sum;
+	}
+	
+	// Called with the tokens of a statement and its score. Adds the score to every n-gram of up to max_length tokens
+	// within tokens[start] through tokens[end-1], and to the root.
+	public void addStatement(int[] tokens, int start, int end, double score, int max_length) {
+		addScore(ROOT, score);
+		
+		for (int i = start; i < end; i++) {
+			int ngram = ROOT;
+			
+			for (int j = i; j < end && j - i < max_length; j++) {
+				ngram = getOrCreateChild(ngram, tokens[j]);
+				addScore(ngram, score);
+			}
+		}
+	}
+	
+	// Adds the n-grams and statistics of another table, which may be memory-mapped, to this one.
+	// Merging into an empty table copies the other table with the same n-gram ids.
+	protected void merge(NGramTable other) {
+		// Maps n-grams in the other table to n-grams in this one. Parents always have lower ids than their children.
+		int[] ids = new int[other.getNumNGrams()];
+		for (int ngram = 0; ngram < ids.length; ngram++) {
+			ids[ngram] = ngram == ROOT ? ROOT : getOrCreateChild(ids[other.getParent(ngram)], other.getToken(ngram));
+			
+			occurences[ids[ngram]] += other.getNumOccurences(ngram);
+			score_sums[ids[ngram]] += other.getCumulativeScore(ngram);
+			score_sqr_sums[ids[ngram]] += other.getCumulativeSqrScore(ngram);
+		}
+	}
+	
+	// Removes the statistics of another table, whose statistics must have previously been added to this one, from this one.
+	// N-grams of the other table which are not in this one are ignored. N-grams are not removed, even if their occurences fall to zero.
+	protected void subtract(NGramTable other) {
+		// Maps n-grams in the other table to n-grams in this one, or -1.
+		int[] ids = new int[other.num_ngrams];
+		for (int ngram = 0; ngram < other.num_ngrams; ngram++) {
+			if (ngram == ROOT) ids[ngram] = ROOT;
+			else if (ids[other.parents[ngram]] == -1) ids[ngram] = -1;
+			else ids[ngram] = getChild(ids[other.parents[ngram]], other.tokens[ngram]);
+			
+			if (ids[ngram] == -1) continue;
+			
+			occurences[ids[ngram]] -= other.occurences[ngram];
+			score_sums[ids[ngram]] -= other.score_sums[ngram];
+			score_sqr_sums[ids[ngram]] -= other.score_sqr_sums[ngram];
+		}
+	}
+	
+	public int getNumOccurences(int ngram) {
+		return occurences[ngram];
+	}
+	
+	public double getCumulativeScore(int ngram) {
+		return score_sums[ngram];
+	}
+	
+	public double getCumulativeSqrScore(int ngram) {
+		return score_sqr_sums[ngram];
+	}
+	
+	// Returns the mean of all values passed to addScore() for the passed n-gram.
+	public double getScoreMean(int ngram) {
+		return getCumulativeScore(ngram) / getNumOccurences(ngram);
+	}
+	
+	// Returns the standard deviation of all values passed to addScore() for the passed n-gram.
+	public double getScoreStdDev(int ngram) {
+		double mean = getScoreMean(ngram);
+		return Math.sqrt(getCumulativeSqrScore(ngram) / getNumOccurences(ngram) - mean*mean);
+	}
+	
+	// Returns the n-gram one token shorter than the passed n-gram, or -1 for the root.
+	public int getParent(int ngram) {
+		return parents[ngram];
+	}
+	
+	// Returns the last token of the passed n-gram, or -1 for the root.
+	public int getToken(int ngram) {
+		return tokens[ngram];
+	}
+	
+	public String getString(int ngram, TokenDictionary token_dict) {
+		if (ngram == ROOT) return "";
+		return getString(getParent(ngram), token_dict) + ' ' + token_dict.getString(getToken(ngram));
+	}
+	
+	// Removes all n-grams with less than the passed number of occurences, along with their extensions.
+	// Surviving n-grams are renumbered, preserving their relative order.
+	protected void prune(int min_num_occurences) {
+		int[] new_ids = new int[num_ngrams];
+		int new_num_ngrams = 1;
+		
+		// Parents always have lower ids than their children, so they are renumbered first.
+		for (int ngram = 1; ngram < num_ngrams; ngram++) {
+			int parent = new_ids[parents[ngram]];
+			
+			if (parent == -1 || occurences[ngram] < min_num_occurences) {
+				new_ids[ngram] = -1;
+				continue;
+			}
+			
+			new_ids[ngram] = new_num_ngrams;
+			parents[new_num_ngrams] = parent;
+			tokens[new_num_ngrams] = tokens[ngram];
+			occurences[new_num_ngrams] = occurences[ngram];
+			score_sums[new_num_ngrams] = score_sums[ngram];
+			score_sqr_sums[new_num_ngrams] = score_sqr_sums[ngram];
+			new_num_ngrams++;
+		}
+		
+		num_ngrams = new_num_ngrams;
+		if (parents.length > num_ngrams * 4) resize(num_ngrams * 2);
+		
+		rebuildEdges(Math.max(Integer.highestOneBit(num_ngrams) * 4, 16));
+	}
+	
+	// Returns the smallest minimum number of occurences which, passed to prune(), leaves at most max_num_sequences n-grams besides the root.
+	// An n-gram never has more occurences than its parent, so exactly the n-grams with at least that many occurences survive.
+	protected int getPruneThreshold(int max_num_sequences) {
+		// Occurence counts are tallied up to PRUNE_HISTOGRAM_SIZE - 1. Larger counts share the last entry.
+		int[] histogram = new int[PRUNE_HISTOGRAM_SIZE];
+		for (int ngram = 1; ngram < num_ngrams; ngram++) {
+			histogram[Math.min(getNumOccurences(ngram), PRUNE_HISTOGRAM_SIZE - 1)]++;
+		}
+		
+		long num_retained = 0;
+		for (int threshold = PRUNE_HISTOGRAM_SIZE - 1; threshold > 0; threshold--) {
+			num_retained += histogram[threshold];
+			if (num_retained > max_num_sequences) return threshold + 1;
+		}
+		
+		return 1;
+	}
+	
+	// Returns the id of every n-gram, starting with the root, in lexicographic order of their token sequences.
+	// Every n-gram comes before its extensions, and the extensions of an n-gram are ordered by their last token.
+	protected int[] getLexicographicOrder() {
+		// Groups the children of each n-gram, then sorts each group by token. Each entry packs a child's token above its id.
+		int[] child_starts = new int[num_ngrams + 1];
+		for (int ngram = 1; ngram < num_ngrams; ngram++) child_starts[getParent(ngram) + 1]++;
+		for (int ngram = 0; ngram < num_ngrams; ngram++) child_starts[ngram + 1] += child_starts[ngram];
+		
+		long[] children = new long[num_ngrams];
+		int[] num_children = new int[num_ngrams];
+		for (int ngram = 1; ngram < num_ngrams; ngram++) {
+			int parent = getParent(ngram);
+			children[child_starts[parent] + num_children[parent]++] = ((long) getToken(ngram) << 32) | ngram;
+		}
+		
+		for (int ngram = 0; ngram < num_ngrams; ngram++) Arrays.sort(children, child_starts[ngram], child_starts[ngram + 1]);
+		
+		// Visits n-grams depth-first, pushing children in reverse so that they are popped in order.
+		int[] order = new int[num_ngrams];
+		int[] stack = new int[num_ngrams];
+		int stack_size = 0;
+		stack[stack_size++] = ROOT;
+		
+		for (int i = 0; stack_size > 0; i++) {
+			int ngram = stack[--stack_size];
+			order[i] = ngram;
+			
+			for (int child = child_starts[ngram + 1] - 1; child >= child_starts[ngram]; child--) {
+				stack[stack_size++] = (int) children[child];
+			}
+		}
+		
+		return order;
+	}
+	
+	// Returns the length in bytes of each section this table occupies in a version 2 model file:
+	// parents, tokens, occurences, score sums, squared score sums, edge keys and edge children.
+	protected long[] getSectionSizes() {
+		return new long[] {
+			4L * num_ngrams, 4L * num_ngrams, 4L * num_ngrams, 8L * num_ngrams, 8L * num_ngrams,
+			8L * getEdgeCapacity(), 4L * getEdgeCapacity()
+		};
+	}
+	
+	// Writes every section listed by getSectionSizes(), each padded to a multiple of 8 bytes.
+	protected void writeSections(ModelFileWriter writer) throws IOException {
+		writer.writeInts(parents, num_ngrams);
+		writer.padTo(8);
+		
+		writer.writeInts(tokens, num_ngrams);
+		writer.padTo(8);
+		
+		writer.writeInts(occurences, num_ngrams);
+		writer.padTo(8);
+		
+		writer.writeDoubles(score_sums, num_ngrams);
+		writer.writeDoubles(score_sqr_sums, num_ngrams);
+		
+		writer.writeLongs(edge_keys, edge_keys.length);
+		writer.writeInts(edge_children, edge_children.length);
+		writer.padTo(8);
+	}
+	
+	// Returns the number of slots in the key table.
+	protected int getEdgeCapacity() {
+		return edge_keys.length;
+	}
+	
+	// Returns the number of n-grams in the table, including the root. All n-gram ids are less than this value.
+	protected int getNumNGrams() {
+		return num_ngrams;
+	}
+	
+	// Reads an n-gram and all of its descendants.
+	private void readNGram(DataInputStream din, int parent) throws IOException {
+		int token = din.readInt();
+		din.readInt(); // Remaining sequence length.
+		int num_occurences = din.readInt();
+		din.readInt(); // Number of n-grams in this subtree.
+		double score_sum = din.readDouble();
+		double score_sqr_sum = din.readDouble();
+		int num_children = din.readInt();
+		
+		int ngram;
+		if (parent == -1) {
+			ngram = ROOT;
+			num_ngrams = 1;
+			parents[ROOT] = -1;
+			tokens[ROOT] = -1;
+		}
+		else {
+			ngram = getOrCreateChild(parent, token);
+		}
+		
+		occurences[ngram] = num_occurences;
+		score_sums[ngram] = score_sum;
+		score_sqr_sums[ngram] = score_sqr_sum;
+		
+		for (int i = 0; i < num_children; i++) {
+			readNGram(din, ngram);
+		}
+	}
+	
+	private void allocate(int capacity) {
+		parents = new int[capacity];
+		tokens = new int[capacity];
+		occurences = new int[capacity];
+		score_sums = new double[capacity];
+		score_sqr_sums = new double[capacity];
+		
+		edge_keys = new long[capacity * 2];
+		edge_children = new int[capacity * 2];
+		Arrays.fill(edge_keys, NO_EDGE);
+	}
+	
+	private void resize(int capacity) {
+		parents = Arrays.copyOf(parents, capacity);
+		tokens = Arrays.copyOf(tokens, capacity);
+		occurences = Arrays.copyOf(occurences, capacity);
+		score_sums = Arrays.copyOf(score_sums, capacity);
+		score_sqr_sums = Arrays.copyOf(score_sqr_sums, capacity);
+	}
+	
+	// Discards the key table and reinserts a key for every n-gram other than the root.
+	private void rebuildEdges(int capacity) {
+		edge_keys = new long[capacity];
+		edge_children = new int[capacity];
+		Arrays.fill(edge_keys, NO_EDGE);
+		
+		int mask = capacity - 1;
+		for (int ngram = 1; ngram < num_ngrams; ngram++) {
+			long key = edgeKey(parents[ngram], tokens[ngram]);
+			
+			int slot = hashSlot(key, mask);
+			while (edge_keys[slot] != NO_EDGE) slot = (slot + 1) & mask;
+			
+			edge_keys[slot] = key;
+			edge_children[slot] = ngram;
+		}
+	}
+	
+	protected static long edgeKey(int ngram, int token) {
+		return ((long) ngram << 32) | (token & 0xFFFFFFFFL);
+	}
+	
+	protected static int hashSlot(long key, int mask) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,261 @@
+package com.evelynsalie;
+
+import java.util.Arrays;
+
+/**
+* A KLL sketch of a stream of numbers, which estimates the rank of any value and the value at any rank in bounded memory.
+* Values are held in a stack of levels, each weighing twice as much as the one below it. Whenever the sketch is full,
+* the lowest full level is sorted and every other value in it, starting from a random one of the first two, is promoted to the level above.
+* With accuracy parameter k, the sketch holds fewer than 3k values plus a few per level, and estimated ranks are within about 1.65% of the count
+* at k = 200 (0.33% at k = 1000) with 99% confidence. Until the first level first fills, every value is held and estimates are exact.
+* Sketches with the same k can be merged into one, which has the same guarantees as a sketch of both streams.
+* Sketches are not thread-safe. Threads should each fill their own sketch, and merge them once done.
+*/
+public class QuantileSketch {
+	// The smallest capacity of any level, and the ratio between the capacities of each level and the one above it.
+	private static final int MIN_LEVEL_CAPACITY = 8;
+	private static final double LEVEL_CAPACITY_RATIO = 2.0 / 3.0;
+	
+	private final int k;
+	
+	// Values at level h each stand for 2^h values of the stream. Every level except the first is kept sorted.
+	private double[][] levels;
+	private int[] level_sizes;
+	private int num_levels;
+	private int num_retained;
+	
+	// The sum of the capacities of every level, which only changes when a level is added. The sketch is full once it holds this many values.
+	private int total_capacity;
+	
+	private long count;
+	
+	// Chooses which half of each compacted level is promoted. Seeded identically in every sketch, so results are reproducible.
+	private long random_state;
+	
+	// Every retained value in ascending order, and the total weight of the values up to and including each one. Rebuilt when first needed after a change.
+	private double[] sorted_values;
+	private long[] cumulative_weights;
+	
+	/**
+	* @param k The accuracy parameter of the sketch, which is at least 8. Larger values are more accurate and occupy proportionately more memory.
+	*/
+	public QuantileSketch(int k) {
+		if (k < MIN_LEVEL_CAPACITY) throw new IllegalArgumentException("k must be at least " + MIN_LEVEL_CAPACITY + ".");
+		
+		this.k = k;
+		this.levels = new double[][] {new double[k]};
+		this.level_sizes = new int[1];
+		this.num_levels = 1;
+		this.num_retained = 0;
+		this.total_capacity = getLevelCapacity(0);
+		
+		this.count = 0;
+		this.random_state = 0x9E3779B97F4A7C15L;
+	}
+	
+	public int getK() {
+		return k;
+	}
+	
+	/**
+	* Returns the number of values added to this sketch, including those added to sketches merged into it.
+	*/
+	public long getCount() {
+		return count;
+	}
+	
+	public void add(double value) {
+		if (level_sizes[0] == levels[0].length) levels[0] = Arrays.copyOf(levels[0], levels[0].length * 2);
+		levels[0][level_sizes[0]++] = value;
+		
+		num_retained++;
+		count++;
+		sorted_values = null;
+		
+		if (num_retained >= total_capacity) compress();
+	}
+	
+	/**
+	* Adds every value of the passed sketch to this one. The passed sketch is not modified.
+	* @throws IllegalArgumentException If the sketches have different accuracy parameters.
+	*/
+	public void merge(QuantileSketch other) {
+		if (other.k != k) throw new IllegalArgumentException("Cannot merge sketches with different accuracy parameters.");
+		
+		while (num_levels < other.num_levels) addLevel();
+		
+		for (int h = 0; h < other.num_levels; h++) {
+			if (h == 0) {
+				for (int i = 0; i < other.level_sizes[0]; i++) {
+					if (level_sizes[0] == levels[0].length) levels[0] = Arrays.copyOf(levels[0], levels[0].length * 2);
+					levels[0][level_sizes[0]++] = other.levels[0][i];
+				}
+			}
+			else {
+				mergeIntoLevel(h, other.levels[h], other.level_sizes[h]);
+			}
+			
+			num_retained += other.level_sizes[h];
+		}
+		
+		count += other.count;
+		sorted_values = null;
+		
+		if (num_retained >= total_capacity) compress();
+	}
+	
+	/**
+	* Returns the smallest retained value whose estimated rank, the fraction of values less than or equal to it, is at least the passed fraction.
+	* @param fraction The rank to find, from 0 to 1.
+	* @throws IllegalStateException If no values have been added.
+	*/
+	public double getQuantile(double fraction) {
+		if (count == 0) throw new IllegalStateException();
+		if (fraction < 0 || fraction > 1) throw new IllegalArgumentException("fraction must be between 0 and 1.");
+		
+		buildSortedView();
+		
+		double target_weight = fraction * count;
+		int low = 0;
+		int high = sorted_values.length - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (cumulative_weights[mid] >= target_weight) high = mid;
+			else low = mid + 1;
+		}
+		
+		return sorted_values[low];
+	}
+	
+	/**
+	* Returns the estimated number of values less than the passed value.
+	*/
+	public long getRank(double value) {
+		if (count == 0) return 0;
+		
+		buildSortedView();
+		
+		// The index of the first retained value which is not less than the passed value.
+		int low = 0;
+		int high = sorted_values.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted_values[mid] < value) low = mid + 1;
+			else high = mid;
+		}
+		
+		return low == 0 ? 0 : cumulative_weights[low - 1];
+	}
+	
+	// The capacity of each level shrinks geometrically with its distance below the top level.
+	private int getLevelCapacity(int level) {
+		int depth = num_levels - 1 - level;
+		return Math.max((int) Math.ceil(k * Math.pow(LEVEL_CAPACITY_RATIO, depth)), MIN_LEVEL_CAPACITY);
+	}
+	
+	// Compacts the lowest full level until the sketch is no longer full. Some level is always full when the sketch is.
+	private void compress() {
+		while (num_retained >= total_capacity) {
+			int level = 0;
+			while (level_sizes[level] < getLevelCapacity(level)) level++;
+			
+			if (level == num_levels - 1) addLevel();
+			compactLevel(level);
+		}
+	}
+	
+	// Promotes every other value of the passed level to the level above, halving their number and doubling their weight.
+	// If the level holds an odd number of values, its smallest stays behind.
+	private void compactLevel(int level) {
+		double[] values = levels[level];
+		int size = level_sizes[level];
+		if (level == 0) Arrays.sort(values, 0, size);
+		
+		int start = size % 2;
+		int offset = nextRandomBit();
+		
+		int num_promoted = (size - start) / 2;
+		double[] promoted = new double[num_promoted];
+		for (int i = 0; i < num_promoted; i++) promoted[i] = values[start + 2 * i + offset];
+		
+		level_sizes[level] = start;
+		num_retained -= size - start;
+		
+		mergeIntoLevel(level + 1, promoted, num_promoted);
+		num_retained += num_promoted;
+		sorted_values = null;
+	}
+	
+	// Merges the passed sorted values into the passed sorted level.
+	private void mergeIntoLevel(int level, double[] values, int num_values) {
+		double[] existing = levels[level];
+		int num_existing = level_sizes[level];
+		
+		double[] merged = new double[Math.max(existing.length, num_existing + num_values)];
+		int i = 0;
+		int j = 0;
+		for (int m = 0; m < num_existing + num_values; m++) {
+			if (j == num_values || (i < num_existing && existing[i] <= values[j])) merged[m] = existing[i++];
+			else merged[m] = values[j++];
+		}
+		
+		levels[level] = merged;
+		level_sizes[level] = num_existing + num_values;
+	}
+	
+	private void addLevel() {
+		levels = Arrays.copyOf(levels, num_levels + 1);
+		level_sizes = Arrays.copyOf(level_sizes, num_levels + 1);
+		
+		levels[num_levels] = new double[MIN_LEVEL_CAPACITY];
+		num_levels++;
+		
+		total_capacity = 0;
+		for (int h = 0; h < num_levels; h++) total_capacity += getLevelCapacity(h);
+	}
+	
+	// Returns 0 or 1 with equal probability, from an xorshift generator.
+	private int nextRandomBit() {
+		random_state ^= random_state << 13;
+		random_state ^= random_state >>> 7;
+		random_state ^= random_state << 17;
+		return (int) (random_state >>> 63);
+	}
+	
+	// Merges every level into a single sorted list of values, tracking the cumulative weight of each.
+	private void buildSortedView() {
+		if (sorted_values != null) return;
+		
+		double[] values = Arrays.copyOf(levels[0], level_sizes[0]);
+		Arrays.sort(values);
+		long[] weights = new long[values.length];
+		Arrays.fill(weights, 1);
+		
+		for (int h = 1; h < num_levels; h++) {
+			int num_values = values.length + level_sizes[h];
+			double[] merged_values = new double[num_values];
+			long[] merged_weights = new long[num_values];
+			
+			int i = 0;
+			int j = 0;
+			for (int m = 0; m < num_values; m++) {
+				if (j == level_sizes[h] || (i < values.length && values[i] <= levels[h][j])) {
+					merged_values[m] = values[i];
+					merged_weights[m] = weights[i++];
+				}
+				else {
+					merged_values[m] = levels[h][j++];
+					merged_weights[m] = 1L << h;
+				}
+			}
+			
+			values = merged_values;
+			weights = merged_weights;
+		}
+		
+		for (int i = 1; i < weights.length; i++) weights[i] += weights[i - 1];
+		
+		sorted_values = values;
+		cumulative_weights = weights;
+	}
+}
\ No newline at end of file
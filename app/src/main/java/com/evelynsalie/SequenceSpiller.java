@@ -0,0 +1,283 @@
+package com.evelynsalie;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+* Counts token sequences exactly when their table does not fit in memory.
+* Whenever the table fills its budget, it is written to disk as a run, sorted in lexicographic order of its token sequences, and training continues with an empty table.
+* Once every line is counted, the runs are merged, summing the statistics of each sequence, into a table holding only the sequences which occur often enough.
+* The result is identical to counting every sequence in a single table and pruning it once at the end, so the size of the training data is bounded by disk rather than heap.
+* Runs are deleted once merged, or when the spiller is closed.
+*/
+public class SequenceSpiller implements Closeable {
+	// Each record holds the length of a sequence, its tokens, its number of occurences, and the sum and squared sum of its scores.
+	private static final String RUN_PREFIX = "sequences-";
+	private static final String RUN_SUFFIX = ".ekrun";
+	
+	// The number of runs merged at once. When there are more, the oldest are first merged into larger runs.
+	private static final int MAX_RUNS_PER_MERGE = 64;
+	private static final int RUN_BUFFER_SIZE = 1 << 16;
+	
+	private final File directory;
+	private final int max_token_sequence_length;
+	
+	// Unmerged runs, oldest first.
+	private final ArrayList<File> runs;
+	
+	/**
+	* @param directory The directory to write runs to, which is created if it does not exist.
+	* @param max_token_sequence_length The maximum length of the token sequences in spilled tables.
+	*/
+	public SequenceSpiller(File directory, int max_token_sequence_length) {
+		this.directory = directory;
+		this.max_token_sequence_length = max_token_sequence_length;
+		this.runs = new ArrayList<File>();
+	}
+	
+	/**
+	* Returns the number of runs written and not yet merged.
+	*/
+	public int getNumRuns() {
+		return runs.size();
+	}
+	
+	/**
+	* Writes every sequence of the passed table, including the root, to a new run. The table is not modified.
+	* @throws IOException When an IO error occurs while writing the run.
+	*/
+	public void spill(NGramTable table) throws IOException {
+		long start_time = System.nanoTime();
+		directory.mkdirs();
+		
+		File run = File.createTempFile(RUN_PREFIX, RUN_SUFFIX, directory);
+		runs.add(run);
+		
+		try (DataOutputStream dout = openRunOutput(run)) {
+			// A pre-order traversal visits every n-gram after its parent, so each path is built on its parent's.
+			int[] order = table.getLexicographicOrder();
+			int[] lengths = new int[order.length];
+			int[] path = new int[max_token_sequence_length];
+			
+			for (int i = 0; i < order.length; i++) {
+				int ngram = order[i];
+				
+				int length = 0;
+				if (ngram != NGramTable.ROOT) {
+					length = lengths[table.getParent(ngram)] + 1;
+					path[length - 1] = table.getToken(ngram);
+				}
+				
+				lengths[ngram] = length;
+				writeRecord(dout, path, length, table.getNumOccurences(ngram), table.getCumulativeScore(ngram), table.getCumulativeSqrScore(ngram));
+			}
+		}
+		
+		Metrics.TRAINING_SPILL_SECONDS.recordSince(start_time);
+	}
+	
+	/**
+	* Merges every run into a new table, summing the statistics of each sequence, and deletes the runs.
+	* Sequences with fewer than min_num_occurences occurences in total are left out, along with their extensions. The root is always kept.
+	* @throws IOException When an IO error occurs while reading or writing runs.
+	*/
+	public NGramTable merge(int min_num_occurences) throws IOException {
+		// Merging too many runs at once would hold too many files open.
+		while (runs.size() > MAX_RUNS_PER_MERGE) {
+			ArrayList<File> oldest_runs = new ArrayList<File>(runs.subList(0, MAX_RUNS_PER_MERGE));
+			
+			File merged_run = File.createTempFile(RUN_PREFIX, RUN_SUFFIX, directory);
+			runs.add(merged_run);
+			
+			try (DataOutputStream dout = openRunOutput(merged_run)) {
+				mergeRuns(oldest_runs, (tokens, length, num_occurences, score_sum, score_sqr_sum) -> {
+					writeRecord(dout, tokens, length, num_occurences, score_sum, score_sqr_sum);
+				});
+			}
+			
+			for (File run : oldest_runs) {
+				runs.remove(run);
+				run.delete();
+			}
+		}
+		
+		NGramTable table = new NGramTable();
+		
+		// Records arrive in lexicographic order, so the parent of a sequence is always the latest sequence one token shorter. Holds -1 if that sequence was left out.
+		int[] latest_ngrams = new int[max_token_sequence_length + 1];
+		Arrays.fill(latest_ngrams, -1);
+		latest_ngrams[0] = NGramTable.ROOT;
+		
+		mergeRuns(runs, (tokens, length, num_occurences, score_sum, score_sqr_sum) -> {
+			int ngram = NGramTable.ROOT;
+			if (length > 0) {
+				int parent = latest_ngrams[length - 1];
+				if (parent == -1 || num_occurences < min_num_occurences) {
+					latest_ngrams[length] = -1;
+					return;
+				}
+				
+				ngram = table.getOrCreateChild(parent, tokens[length - 1]);
+			}
+			
+			latest_ngrams[length] = ngram;
+			
+			table.addScores(ngram, num_occurences, score_sum, score_sqr_sum);
+		});
+		
+		close();
+		return table;
+	}
+	
+	/**
+	* Deletes every run which has not been merged.
+	*/
+	@Override
+	public void close() {
+		for (File run : runs) run.delete();
+		runs.clear();
+	}
+	
+	/**
+	* Deletes every run in the passed directory, such as those left behind when training was interrupted by the process exiting.
+	* Must not be called while any spiller is writing to the directory.
+	*/
+	public static void deleteRuns(File directory) {
+		File[] files = directory.listFiles();
+		if (files == null) return;
+		
+		for (File file : files) {
+			if (file.getName().startsWith(RUN_PREFIX) && file.getName().endsWith(RUN_SUFFIX)) file.delete();
+		}
+	}
+	
+	// Receives the sequences of a merge in lexicographic order, each with its statistics summed across all runs.
+	private interface RecordSink {
+		void accept(int[] tokens, int length, int num_occurences, double score_sum, double score_sqr_sum) throws IOException;
+	}
+	
+	// Merges the passed runs, passing each distinct sequence to the sink once.
+	private void mergeRuns(List<File> merged_runs, RecordSink sink) throws IOException {
+		PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(Math.max(merged_runs.size(), 1), SequenceSpiller::compare);
+		ArrayList<RunReader> readers = new ArrayList<RunReader>();
+		
+		try {
+			for (File run : merged_runs) {
+				RunReader reader = new RunReader(run, max_token_sequence_length);
+				readers.add(reader);
+				if (reader.next()) queue.add(reader);
+			}
+			
+			int[] tokens = new int[max_token_sequence_length];
+			long num_records = 0;
+			while (!queue.isEmpty()) {
+				if (num_records++ % Model.TRAINING_BATCH_SIZE == 0) Model.checkInterrupted();
+				
+				RunReader first = queue.poll();
+				int length = first.length;
+				System.arraycopy(first.tokens, 0, tokens, 0, length);
+				
+				long num_occurences = first.num_occurences;
+				double score_sum = first.score_sum;
+				double score_sqr_sum = first.score_sqr_sum;
+				if (first.next()) queue.add(first);
+				
+				// Sums the records of the same sequence in other runs, each of which holds it at most once.
+				while (!queue.isEmpty() && compare(queue.peek(), tokens, length) == 0) {
+					RunReader other = queue.poll();
+					num_occurences += other.num_occurences;
+					score_sum += other.score_sum;
+					score_sqr_sum += other.score_sqr_sum;
+					if (other.next()) queue.add(other);
+				}
+				
+				sink.accept(tokens, length, (int) Math.min(num_occurences, Integer.MAX_VALUE), score_sum, score_sqr_sum);
+			}
+		}
+		finally {
+			for (RunReader reader : readers) reader.close();
+		}
+	}
+	
+	private static DataOutputStream openRunOutput(File run) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), RUN_BUFFER_SIZE));
+	}
+	
+	private static void writeRecord(DataOutputStream dout, int[] tokens, int length, int num_occurences, double score_sum, double score_sqr_sum) throws IOException {
+		dout.writeByte(length);
+		for (int i = 0; i < length; i++) dout.writeInt(tokens[i]);
+		
+		dout.writeInt(num_occurences);
+		dout.writeDouble(score_sum);
+		dout.writeDouble(score_sqr_sum);
+	}
+	
+	// Orders sequences lexicographically by token, with every sequence before its extensions.
+	private static int compare(RunReader a, RunReader b) {
+		return compare(a, b.tokens, b.length);
+	}
+	
+	private static int compare(RunReader a, int[] tokens, int length) {
+		int common_length = Math.min(a.length, length);
+		for (int i = 0; i < common_length; i++) {
+			if (a.tokens[i] != tokens[i]) return Integer.compare(a.tokens[i], tokens[i]);
+		}
+		
+		return Integer.compare(a.length, length);
+	}
+	
+	// Reads the records of a run one at a time.
+	private static class RunReader implements Closeable {
+		private final DataInputStream din;
+		
+		// The current record.
+		final int[] tokens;
+		int length;
+		int num_occurences;
+		double score_sum;
+		double score_sqr_sum;
+		
+		RunReader(File run, int max_token_sequence_length) throws IOException {
+			this.din = new DataInputStream(new BufferedInputStream(new FileInputStream(run), RUN_BUFFER_SIZE));
+			this.tokens = new int[max_token_sequence_length];
+		}
+		
+		// Reads the next record, returning false at the end of the run.
+		boolean next() throws IOException {
+			int next_length = din.read();
+			if (next_length == -1) return false;
+			if (next_length > tokens.length) throw new IOException("Run holds a sequence longer than " + tokens.length + " tokens.");
+			
+			try {
+				length = next_length;
+				for (int i = 0; i < length; i++) tokens[i] = din.readInt();
+				
+				num_occurences = din.readInt();
+				score_sum = din.readDouble();
+				score_sqr_sum = din.readDouble();
+			}
+			catch (EOFException e) {
+				throw new IOException("Run is truncated.");
+			}
+			
+			return true;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			din.close();
+		}
+	}
+}
\ No newline at end of file
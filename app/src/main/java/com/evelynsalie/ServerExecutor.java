@@ -0,0 +1,95 @@
+package com.evelynsalie;
+
+import com.sun.net.httpserver.HttpServer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+* Chooses the threads on which a flak server handles requests.
+* The flak API does not expose the executor of its server, so it is found by reflection: the app and the objects it references
+* are searched for a setExecutor() method of the backend, or for the com.sun.net.httpserver.HttpServer underlying the JDK backend.
+*/
+public class ServerExecutor {
+	// The number of references followed from the app while searching for its server.
+	private static final int MAX_SEARCH_DEPTH = 3;
+	
+	/**
+	* Makes the server of the passed app handle requests on the passed executor. Must be called before the app is started.
+	* @return Whether the server was found. If not, the server is unchanged and handles requests on the backend's default executor.
+	*/
+	public static boolean install(flak.App app, Executor executor) {
+		Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		ArrayDeque<Object> current = new ArrayDeque<Object>();
+		current.add(app);
+		
+		for (int depth = 0; depth <= MAX_SEARCH_DEPTH && !current.isEmpty(); depth++) {
+			ArrayDeque<Object> next = new ArrayDeque<Object>();
+			for (Object object : current) {
+				if (!visited.add(object)) continue;
+				if (trySetExecutor(object, executor)) return true;
+				
+				for (Class<?> type = object.getClass(); type != null && !isJdkClass(type); type = type.getSuperclass()) {
+					for (Field field : type.getDeclaredFields()) {
+						if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) continue;
+						
+						Object value;
+						try {
+							field.setAccessible(true);
+							value = field.get(object);
+						}
+						catch (ReflectiveOperationException | RuntimeException e) {
+							continue;
+						}
+						
+						// Only the server itself is taken from the JDK's classes, so that the search does not wander through collections and strings.
+						if (value != null && (value instanceof HttpServer || !isJdkClass(value.getClass()))) next.add(value);
+					}
+				}
+			}
+			
+			current = next;
+		}
+		
+		return false;
+	}
+	
+	// Sets the executor of the passed object if it is a JDK server or has a setExecutor() method accepting the executor. Returns whether it was set.
+	private static boolean trySetExecutor(Object object, Executor executor) {
+		if (object instanceof HttpServer) {
+			try {
+				((HttpServer) object).setExecutor(executor);
+				return true;
+			}
+			catch (IllegalStateException e) {
+				// Already started.
+				return false;
+			}
+		}
+		
+		for (Method method : object.getClass().getMethods()) {
+			if (!method.getName().equals("setExecutor") || method.getParameterCount() != 1) continue;
+			if (!method.getParameterTypes()[0].isInstance(executor)) continue;
+			
+			try {
+				method.invoke(object, executor);
+				return true;
+			}
+			catch (ReflectiveOperationException | RuntimeException e) {
+				continue;
+			}
+		}
+		
+		return false;
+	}
+	
+	private static boolean isJdkClass(Class<?> type) {
+		String name = type.getName();
+		return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("jdk.") || name.startsWith("sun.") || name.startsWith("com.sun.");
+	}
+}
\ No newline at end of file
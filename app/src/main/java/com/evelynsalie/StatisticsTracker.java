@@ -1,9 +1,11 @@
 package com.evelynsalie;
 
 // A simple utility class for tracking the statistics of a stream of numbers.
+// Quantiles are estimated by a QuantileSketch, so trackers use bounded memory however many values they receive,
+// and trackers filled by separate threads can be combined by integrateNewValues() once each is complete.
 public class StatisticsTracker {
-	private final int num_buckets;
-	private int[] values_buckets;
+	// Null if quantiles are not tracked.
+	private final QuantileSketch values_sketch;
 	private final double min_possible_value;
 	private final double max_possible_value;
 	
@@ -15,21 +17,21 @@ public class StatisticsTracker {
 	private double values_sqr_sum;
 	
 	/**
-	* @param num_buckets The number of buckets to use in a histogram of the values. If 0, buckets will not be used and some functions will throw an error when called.
-	* @param min_possible_value The minimum value that can be received in by this object. Used when calculating bucket size and values.
-	* @param max_possible_value The maximum value that can be received in by this object. Used when calculating bucket size and values.
+	* @param sketch_size The accuracy parameter of the sketch used to estimate quantiles, at least 8. Percentile ranks are within about 1.65% at 200 and 0.33% at 1000.
+	* If 0, quantiles will not be tracked and some functions will throw an error when called.
+	* @param min_possible_value The minimum value that can be received in by this object.
+	* @param max_possible_value The maximum value that can be received in by this object. Also bounds the histogram printed by printHistogram().
 	*/
-	public StatisticsTracker(int num_buckets, double min_possible_value, double max_possible_value) {
+	public StatisticsTracker(int sketch_size, double min_possible_value, double max_possible_value) {
 		if (max_possible_value < min_possible_value) {
 			throw new IllegalArgumentException("min_possible_value must be less than or equal to max_possible_value.");
 		}
 		
-		if (num_buckets < 0) {
-			throw new IllegalArgumentException("num_buckets must be non-negative.");
+		if (sketch_size < 0) {
+			throw new IllegalArgumentException("sketch_size must be non-negative.");
 		}
 		
-		this.num_buckets = num_buckets;
-		if (num_buckets > 0) this.values_buckets = new int[num_buckets];
+		this.values_sketch = sketch_size > 0 ? new QuantileSketch(sketch_size) : null;
 		this.min_possible_value = min_possible_value;
 		this.max_possible_value = max_possible_value;
 		
@@ -66,18 +68,13 @@ public class StatisticsTracker {
 		assert !Double.isNaN(values_sum);
 		assert !Double.isNaN(values_sqr_sum);
 		
-		if (num_buckets > 0) {
-			// Get bucket index. Will evaluate to num_buckets if value == max_possible_value.
-			// The min() prevents this from causing an invalid access.
-			int bucket_index = (int) ((value - min_possible_value) / (max_possible_value - min_possible_value) * num_buckets);
-			values_buckets[Math.min(bucket_index, num_buckets-1)]++;
-		}
+		if (values_sketch != null) values_sketch.add(value);
 	}
 	
-	// Combines the passed result set with this one, overwritting the values on this.
+	// Combines the passed result set with this one, overwritting the values on this. The passed tracker is not modified.
 	protected void integrateNewValues(StatisticsTracker other) {
-		if (other.num_buckets != this.num_buckets) {
-			throw new IllegalArgumentException("Cannot integrate results from a statistics tracker with a different number of buckets.");
+		if ((other.values_sketch == null) != (this.values_sketch == null) || (values_sketch != null && other.values_sketch.getK() != values_sketch.getK())) {
+			throw new IllegalArgumentException("Cannot integrate results from a statistics tracker with a different sketch size.");
 		}
 		
 		if (other.min_possible_value != this.min_possible_value || other.max_possible_value != this.max_possible_value) {
@@ -94,11 +91,7 @@ public class StatisticsTracker {
 		assert !Double.isNaN(values_sum);
 		assert !Double.isNaN(values_sqr_sum);
 		
-		if (num_buckets > 0) {
-			for (int i = 0; i < num_buckets; i++) {
-				this.values_buckets[i] += other.values_buckets[i];
-			}
-		}
+		if (values_sketch != null) values_sketch.merge(other.values_sketch);
 	}
 	
 	/**
@@ -142,59 +135,39 @@ public class StatisticsTracker {
 	
 	/**
 	* Get an approximation of the values at the given percentiles.
-	* The returned values are not necessarily actual numbers that were previously passed
-	* to addValue(), they are based on the counts of items in the buckets.
-	* Faster than calling getPercentile() repeatedly.
+	* Each returned value is one that was passed to addValue(), whose rank is within the sketch's error of the requested percentile.
 	* @param percents A sorted, ascending list of percent values, ranging from 0 to 100, to be retrieved.
-	* @throws IllegalStateException if buckets are not in use, or no value has been passed to this function.
+	* @throws IllegalStateException if quantiles are not tracked, or no value has been passed to this function.
 	*/
 	public double[] getPercentiles(double[] percents) {
 		if (num_values == 0) throw new IllegalStateException();
-		if (num_buckets == 0) throw new IllegalStateException();
-		if (percents[0] < 0 || percents[0] > 100) throw new IllegalArgumentException();
+		if (values_sketch == null) throw new IllegalStateException();
 		
 		double[] percentiles = new double[percents.length];
-		
-		int sum = 0;
-		int next_i = 0;
-		for (int i = 0; i < num_buckets; i++) {
-			sum += values_buckets[i];
-			if (sum >= num_values * percents[next_i]) {
-				percentiles[next_i] = lerp(min_possible_value, max_possible_value, (i + 0.5) / num_buckets);
-				
-				next_i++;
-				if (i == percents.length) return percentiles;
-				if (percents[next_i] < 0 || percents[next_i] > 100) throw new IllegalArgumentException();
-				if (percents[next_i] < percents[next_i-1]) throw new IllegalArgumentException();
-			}
+		for (int i = 0; i < percents.length; i++) {
+			if (i > 0 && percents[i] < percents[i-1]) throw new IllegalArgumentException();
+			percentiles[i] = getPercentile(percents[i]);
 		}
 		
-		assert false;
-		return new double[0];
+		return percentiles;
 	}
 	
 	/**
 	* Get an approximation of the value at the given percentile.
-	* The returned value is not necessarily an actual value that was previously passed
-	* to addValue(), it is based on the counts of items in the buckets.
+	* The returned value is one that was passed to addValue(), whose rank is within the sketch's error of the requested percentile.
+	* The 0th and 100th percentiles are the exact minimum and maximum.
 	* @param percents The percentile, ranging from 0 to 100, to be retrieved.
-	* @throws IllegalStateException if buckets are not in use, or no value has been passed to this function.
+	* @throws IllegalStateException if quantiles are not tracked, or no value has been passed to this function.
 	*/
 	public double getPercentile(double percent) {
 		if (num_values == 0) throw new IllegalStateException();
-		if (num_buckets == 0) throw new IllegalStateException();
+		if (values_sketch == null) throw new IllegalStateException();
 		if (percent < 0 || percent > 100) throw new IllegalArgumentException();
 		
-		int sum = 0;
-		for (int i = 0; i < num_buckets; i++) {
-			sum += values_buckets[i];
-			if (sum >= num_values * percent / 100) {
-				return lerp(min_possible_value, max_possible_value, (i + 0.5) / num_buckets);
-			}
-		}
+		if (percent == 0) return min;
+		if (percent == 100) return max;
 		
-		assert false;
-		return Float.NaN;
+		return values_sketch.getQuantile(percent / 100);
 	}
 	
 	/**
@@ -219,21 +192,22 @@ public class StatisticsTracker {
 	}
 	
 	/**
-	* Prints out a sideways ASCII histogram with each bar representing a group of buckets.
-	* @param num_bars The number of bars to draw and, consequently, the level of detail in the histogram. Must evenly divide num_buckets.
+	* Prints out a sideways ASCII histogram with each bar representing a range of values.
+	* Each bar covers an equal share of the range of possible values, and its length is estimated by the sketch.
+	* @param num_bars The number of bars to draw and, consequently, the level of detail in the histogram.
 	*/
 	public void printHistogram(int num_bars) {
 		if (num_values == 0) throw new IllegalStateException();
-		if (num_buckets == 0) throw new IllegalStateException();
-		if (num_buckets % num_bars != 0) throw new IllegalArgumentException("num_bars must evenly divide num_buckets.");
+		if (values_sketch == null) throw new IllegalStateException();
+		if (num_bars <= 0) throw new IllegalArgumentException("num_bars must be positive.");
 		
-		int buckets_per_bar = num_buckets / num_bars;
 		int counts_per_dash = num_values / 10 / num_bars; // Causes each bar to have, on average, 10 dashes.
 		
 		for (int i = 0; i < num_bars; i++) {
-			// Sum multiple buckets together.
-			int total_counts = 0;
-			for (int j = 0; j < buckets_per_bar; j++) total_counts += values_buckets[i * buckets_per_bar + j];
+			// Count the values between the bar's bounds. The last bar includes the maximum possible value.
+			long lower_rank = values_sketch.getRank(lerp(min_possible_value, max_possible_value, (double) i / num_bars));
+			long upper_rank = i == num_bars - 1 ? num_values : values_sketch.getRank(lerp(min_possible_value, max_possible_value, (double) (i + 1) / num_bars));
+			long total_counts = upper_rank - lower_rank;
 			
 			// Print labels
 			if (i == 0) System.out.print(String.format("%+5.2f ", min_possible_value));
@@ -242,7 +216,7 @@ public class StatisticsTracker {
 			else System.out.print("      ");
 			
 			// Print dashes
-			int num_dashes = total_counts / counts_per_dash; // Note rounding down.
+			long num_dashes = total_counts / counts_per_dash; // Note rounding down.
 			for (int j = 0; j < num_dashes; j++) System.out.print("-");
 			
 			System.out.print("\n");
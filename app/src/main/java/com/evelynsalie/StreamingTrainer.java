@@ -0,0 +1,277 @@
+package com.evelynsalie;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.lang.IllegalArgumentException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+* Trains a model in a single sequential pass over labeled lines, so that it can learn from a pipe or a feed as well as a file.
+* Since nothing is read twice, tokens and token sequences cannot be counted first and pruned afterwards.
+* Instead, every word and sequence is counted approximately by a count-min sketch of fixed size, and only begins to be tracked exactly
+* once its estimated number of occurences reaches the minimum. A newly tracked sequence starts with the occurences and scores estimated by the sketch.
+* Output renormalization uses a uniform random sample of the lines, kept as they are read.
+*
+* The resulting model approximates one built by {@link Model#buildFromFile}. Estimates never fall short of the true counts,
+* but collisions in the sketch can overestimate them, and a sequence is only counted once all of its words are tokens.
+*/
+public class StreamingTrainer {
+	private static final int NUM_RATINGS = 5;
+	
+	// The sketch of words is smaller than that of sequences, since there are far fewer distinct words.
+	private static final int WORD_SKETCH_WIDTH = 1 << 16;
+	private static final int SKETCH_DEPTH = 4;
+	
+	private final int max_token_sequence_length;
+	private final int min_token_occurence;
+	private final int sequence_pruning_interval;
+	private final int num_output_renormalization_samples;
+	private final int sketch_width;
+	
+	/**
+	* Create a trainer for models with the passed parameters.
+	* @param max_token_sequence_length The maximum length of sequences of tokens whose scores are tracked.
+	* @param min_token_occurence The estimated number of times that a token or token sequence must appear before it is tracked.
+	* @param sequence_pruning_interval Saved with the model, but otherwise unused.
+	* @param num_output_renormalization_samples The number of lines to sample and label, after training, to use for renormalizing the model's output.
+	* @param sketch_width The number of counters in each row of the sequence sketch, which must be a power of two, and at least 2. Each counter occupies 20 bytes in each of 4 rows.
+	*/
+	public StreamingTrainer(
+		int max_token_sequence_length, int min_token_occurence,
+		int sequence_pruning_interval, int num_output_renormalization_samples,
+		int sketch_width
+	) {
+		if (sketch_width < 2 || Integer.bitCount(sketch_width) != 1) throw new IllegalArgumentException("sketch_width must be a power of two, and at least 2.");
+		
+		this.max_token_sequence_length = max_token_sequence_length;
+		this.min_token_occurence = Math.max(min_token_occurence, 1);
+		this.sequence_pruning_interval = sequence_pruning_interval;
+		this.num_output_renormalization_samples = num_output_renormalization_samples;
+		this.sketch_width = sketch_width;
+	}
+	
+	/**
+	* Trains a model on every labeled line of the passed stream, which holds UTF-8 text in the format of a dataset (.ekdt).
+	* Lines which are not labeled with a rating from 1 to 5 are skipped.
+	* @param input The stream to read. It is read to the end, but not closed.
+	* @param has_header If true, the first line holds the number of lines, as in a dataset file, and is skipped.
+	* @throws IOException When an IO error occurs while reading the stream.
+	*/
+	public Model train(InputStream input, boolean has_header) throws IOException {
+		BufferedReader data_scanner = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+		if (has_header) data_scanner.readLine();
+		
+		TokenDictionary all_tokens = new TokenDictionary();
+		NGramTable sequences = new NGramTable();
+		RatingSketch word_sketch = new RatingSketch(WORD_SKETCH_WIDTH);
+		RatingSketch sequence_sketch = new RatingSketch(sketch_width);
+		
+		String[] samples = new String[num_output_renormalization_samples];
+		Random random = new Random(0);
+		
+		int[] tokens = new int[0];
+		long[] token_hashes = new long[0];
+		
+		int num_lines_analyzed = 0;
+		int num_lines_skipped = 0;
+		String data;
+		while ((data = data_scanner.readLine()) != null) {
+			if (num_lines_analyzed % Model.TRAINING_BATCH_SIZE == 0) Model.checkInterrupted();
+			
+			// Obtain raw text of the line and its rating.
+			int rating = LabeledDataReader.parseRating(data);
+			if (rating == -1) {
+				num_lines_skipped++;
+				continue;
+			}
+			
+			String text = LabeledDataReader.parseText(data);
+			double score = getScore(rating - 1);
+			
+			if (tokens.length < text.length() / 2 + 1) {
+				tokens = new int[text.length() + 1];
+				token_hashes = new long[text.length() + 1];
+			}
+			
+			// Count every word, and retain those which have become tokens.
+			int num_tokens = 0;
+			for (String word : text.split(" ")) {
+				if (word.isEmpty()) continue;
+				
+				long word_hash = hashWord(word);
+				int token = all_tokens.getTokenId(word);
+				if (token != -1) {
+					all_tokens.addOccurence(token);
+				}
+				else {
+					int num_occurences = word_sketch.add(word_hash, rating - 1);
+					if (num_occurences >= min_token_occurence) token = all_tokens.learnToken(word, num_occurences);
+				}
+				
+				if (token != -1) {
+					tokens[num_tokens] = token;
+					token_hashes[num_tokens] = word_hash;
+					num_tokens++;
+				}
+			}
+			
+			// Count every sequence of tokens. A sequence is tracked once it is estimated to be common enough and the sequence one token shorter is tracked.
+			sequences.addScore(NGramTable.ROOT, score);
+			for (int i = 0; i < num_tokens; i++) {
+				int ngram = NGramTable.ROOT;
+				long sequence_hash = 0;
+				
+				for (int j = i; j < num_tokens && j - i < max_token_sequence_length; j++) {
+					sequence_hash = mix((sequence_hash ^ token_hashes[j]) * 0x9E3779B97F4A7C15L);
+					
+					int child = ngram == -1 ? -1 : sequences.getChild(ngram, tokens[j]);
+					if (child == -1) {
+						int num_occurences = sequence_sketch.add(sequence_hash, rating - 1);
+						if (ngram != -1 && num_occurences >= min_token_occurence) {
+							child = sequences.getOrCreateChild(ngram, tokens[j]);
+							addEstimatedScores(sequences, child, sequence_sketch, sequence_hash);
+						}
+					}
+					else {
+						sequences.addScore(child, score);
+					}
+					
+					ngram = child;
+				}
+			}
+			
+			// Reservoir sampling keeps each line with equal probability.
+			if (num_lines_analyzed < samples.length) {
+				samples[num_lines_analyzed] = text;
+			}
+			else {
+				int sample = random.nextInt(num_lines_analyzed + 1);
+				if (sample < samples.length) samples[sample] = text;
+			}
+			
+			num_lines_analyzed++;
+			if (num_lines_analyzed % 100000 == 0) {
+				System.out.println(String.format(
+					"%d Lines Analyzed. %d tokens and %d token sequences tracked so far.",
+					num_lines_analyzed, all_tokens.getNumTokens(), sequences.getNumSequences()
+				));
+			}
+		}
+		
+		if (num_lines_analyzed == 0) throw new IOException("The stream holds no labeled lines.");
+		if (num_lines_skipped > 0) System.out.println(String.format("%d unlabeled lines skipped.", num_lines_skipped));
+		
+		// Compacts the table. Every tracked sequence already meets the minimum.
+		sequences.prune(min_token_occurence);
+		
+		Model model = new Model(
+			all_tokens, sequences, num_lines_analyzed,
+			max_token_sequence_length, min_token_occurence, sequence_pruning_interval, num_output_renormalization_samples
+		);
+		
+		System.out.println(String.format(
+			"Analysis complete. %d tokens and %d token sequences retained from %d lines.",
+			all_tokens.getNumTokens(), model.getNumTokenSequences(), num_lines_analyzed
+		));
+		
+		// Renormalize the outputs, if enough lines were read.
+		if (num_lines_analyzed >= samples.length) {
+			StatisticsTracker generated_labels = new StatisticsTracker(0, -1, 1);
+			for (String sample : samples) generated_labels.addValue(model.getUncachedLabel(sample));
+			
+			model.renormalizeOutput(generated_labels);
+		}
+		
+		return model;
+	}
+	
+	// Adds the occurences and scores of a sequence estimated by the passed sketch to a newly tracked sequence.
+	private static void addEstimatedScores(NGramTable sequences, int ngram, RatingSketch sketch, long sequence_hash) {
+		int num_occurences = 0;
+		double score_sum = 0;
+		double score_sqr_sum = 0;
+		for (int rating = 0; rating < NUM_RATINGS; rating++) {
+			int count = sketch.getEstimate(sequence_hash, rating);
+			double score = getScore(rating);
+			
+			num_occurences += count;
+			score_sum += count * score;
+			score_sqr_sum += count * score * score;
+		}
+		
+		sequences.addScores(ngram, num_occurences, score_sum, score_sqr_sum);
+	}
+	
+	// Maps a rating index (the rating minus one) onto the range -1 to 1, as LabeledDataReader does.
+	private static double getScore(int rating) {
+		return (rating + 1) / 2.0 - 1.5;
+	}
+	
+	// 64-bit FNV-1a hash of a word, mixed.
+	private static long hashWord(String word) {
+		long hash = 0xCBF29CE484222325L;
+		for (int i = 0; i < word.length(); i++) {
+			hash ^= word.charAt(i);
+			hash *= 0x100000001B3L;
+		}
+		
+		return mix(hash);
+	}
+	
+	// The finalizer of MurmurHash3, which spreads every bit of the input over the output.
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+	
+	// A count-min sketch holding a separate count for each rating.
+	// Uses conservative updates, which only increment the counters that hold the current estimate.
+	private static class RatingSketch {
+		private final int[][] counters;
+		private final int shift;
+		
+		RatingSketch(int width) {
+			this.counters = new int[SKETCH_DEPTH][width * NUM_RATINGS];
+			this.shift = 64 - Integer.numberOfTrailingZeros(width);
+		}
+		
+		// Counts one occurence of the passed key with the passed rating, and returns the estimated number of occurences of the key with any rating.
+		int add(long key, int rating) {
+			int estimate = getEstimate(key, rating);
+			for (int row = 0; row < SKETCH_DEPTH; row++) {
+				int counter = getCounter(key, row) + rating;
+				if (counters[row][counter] == estimate) counters[row][counter]++;
+			}
+			
+			int total = estimate + 1;
+			for (int other_rating = 0; other_rating < NUM_RATINGS; other_rating++) {
+				if (other_rating != rating) total += getEstimate(key, other_rating);
+			}
+			
+			return total;
+		}
+		
+		// Returns the estimated number of occurences of the passed key with the passed rating, which is never less than the true number.
+		int getEstimate(long key, int rating) {
+			int estimate = Integer.MAX_VALUE;
+			for (int row = 0; row < SKETCH_DEPTH; row++) {
+				estimate = Math.min(estimate, counters[row][getCounter(key, row) + rating]);
+			}
+			
+			return estimate;
+		}
+		
+		// Returns the index of the first of the key's counters in the passed row.
+		private int getCounter(long key, int row) {
+			int slot = (int) (mix(key + row * 0x632BE59BD9B4E019L) >>> shift);
+			return slot * NUM_RATINGS;
+		}
+	}
+}
\ No newline at end of file
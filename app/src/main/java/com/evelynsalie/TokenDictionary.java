@@ -1,192 +1,595 @@
 package com.evelynsalie;
 
-import java.io.BufferedReader;
 import java.io.DataInputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStreamReader;
 import java.io.IOException;
-import java.lang.Math;
-import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 // The TokenDictionary class stores all indivisible tokens (words) in the training data as a prefix tree.
-public class TokenDictionary implements Iterable<Token> {
-	// The root of the prefix tree.
-	private Token root;
+// Every node of the tree is identified by an int. The root is node 0.
+// Nodes which are full words are tokens, and the node's id doubles as the token id.
+// Per-node data is stored in parallel primitive arrays, and the edges of the tree are stored
+// in a single open-addressed hash table keyed on (parent node, character) pairs.
+public class TokenDictionary {
+	protected static final int ROOT = 0;
+	private static final int INITIAL_NODE_CAPACITY = 1024;
+	
+	// Marks an unused slot in edge_keys.
+	protected static final long NO_EDGE = -1;
+	
+	// The character leading from each node's parent to the node, and the parent itself.
+	private char[] node_keys;
+	private int[] node_parents;
+	
+	// Number of times each node was encountered as a full word in the training data.
+	private int[] node_occurences;
+	
+	private int num_nodes;
 	private int num_tokens;
 	
+	// Open-addressed (linear probing) table of edges. Each key packs a parent node and a character.
+	// The length of both arrays is always a power of two.
+	private long[] edge_keys;
+	private int[] edge_children;
+	
 	public TokenDictionary() {
-		this.root = new Token('\0', null);
+		allocate(INITIAL_NODE_CAPACITY);
+		
+		this.num_nodes = 1;
 		this.num_tokens = 0;
+		
+		node_keys[ROOT] = '\0';
+		node_parents[ROOT] = -1;
 	}
 	
+	// Reads a dictionary saved in a legacy ("EkoModel") model file, which stores the prefix tree in pre-order.
+	// Node ids are assigned in the order the nodes are read, which reproduces the indices they were saved with.
 	public TokenDictionary(DataInputStream din) throws IOException {
 		this.num_tokens = din.readInt();
+		this.num_nodes = 0;
 		
-		this.root = new Token(din, null);
+		allocate(INITIAL_NODE_CAPACITY);
+		readNode(din, -1);
 	}
 	
-	public Iterator<Token> iterator() {
-		return new TokenIterator(root);
+	// Used by subclasses which store their nodes elsewhere.
+	protected TokenDictionary(int num_tokens, int num_nodes) {
+		this.num_tokens = num_tokens;
+		this.num_nodes = num_nodes;
 	}
 	
 	public int getNumTokens() {
 		return num_tokens;
 	}
 	
-	public Token getTokenOrNull(String line) {
-		Token node = root;
-		for (int i = 0; i < line.length(); i++) {
-			node = node.getChildOrNull(line.charAt(i));
+	// Returns the number of nodes in the prefix tree, including the root and nodes which are not full words.
+	// All node ids are less than this value.
+	public int getNumNodes() {
+		return num_nodes;
+	}
+	
+	// Returns the id of the token matching the passed word, or -1 if it is not a known token.
+	public int getTokenId(String word) {
+		int node = ROOT;
+		for (int i = 0; i < word.length(); i++) {
+			node = getChild(node, word.charAt(i));
 			
-			if (node == null) return null;
+			if (node == -1) return -1;
 		}
 		
-		return node;
+		return isRealWord(node) ? node : -1;
+	}
+	
+	public boolean isRealWord(int node) {
+		return node != ROOT && getNumOccurences(node) > 0;
+	}
+	
+	public int getNumOccurences(int node) {
+		return node_occurences[node];
+	}
+	
+	// Returns the character leading from the passed node's parent to the node.
+	protected char getKey(int node) {
+		return node_keys[node];
+	}
+	
+	protected int getParent(int node) {
+		return node_parents[node];
+	}
+	
+	public String getString(int node) {
+		StringBuilder ret = new StringBuilder();
+		for (; node > ROOT; node = getParent(node)) ret.append(getKey(node));
+		
+		return ret.reverse().toString();
 	}
 	
 	// Learns all tokens in the passed string.
 	// In the future, these can be recognized and belong to a token sequence.
 	public void learnTokens(String line) {
-		//System.out.println(line + ": ");
-		
-		Token node = root;
-		boolean is_new = false;
+		int node = ROOT;
 		for (int i = 0; i < line.length(); i++) {
-			Character c = line.charAt(i);
+			char c = line.charAt(i);
 			
 			if (c != ' ') {
-				is_new = is_new || !node.hasChild(c);
-				node = node.getOrCreateChild(c);
+				node = getOrCreateChild(node, c);
 			}
 			else {
-				if (is_new) {
-					num_tokens++;
-					//System.out.print(node.getString() + ", ");
-				}
-				
-				if (node != root) node.addOccurence();
-				
-				is_new = false;
-				node = root;
+				addOccurence(node);
+				node = ROOT;
 			}
 		}
 		
 		// Counts the last token in a string that does not end with whitespace.
-		if (is_new) {
-			num_tokens++;
-			//System.out.print(node.getString() + ", ");
+		addOccurence(node);
+	}
+	
+	// Learns all tokens in the passed ASCII text, found at text[start] through text[end-1], like learnTokens(String).
+	protected void learnTokens(byte[] text, int start, int end) {
+		int node = ROOT;
+		for (int i = start; i < end; i++) {
+			byte c = text[i];
+			
+			if (c != ' ') {
+				node = getOrCreateChild(node, (char) c);
+			}
+			else {
+				addOccurence(node);
+				node = ROOT;
+			}
+		}
+		
+		addOccurence(node);
+	}
+	
+	// Learns all tokens in the passed line of a batch.
+	protected void learnTokens(LineBatch batch, int line) {
+		String decoded_line = batch.getDecodedLine(line);
+		if (decoded_line != null) learnTokens(decoded_line);
+		else learnTokens(batch.getText(), batch.getStart(line), batch.getEnd(line));
+	}
+	
+	// Learns all tokens in the passed string, like learnTokens(String), and writes the id of each word into the passed array in order.
+	// The array must hold at least line.length() / 2 + 1 ids. Returns the number of words found.
+	protected int learnTokens(String line, int[] tokens) {
+		int num_tokens_found = 0;
+		
+		int node = ROOT;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			
+			if (c != ' ') {
+				node = getOrCreateChild(node, c);
+			}
+			else if (node != ROOT) {
+				addOccurence(node);
+				tokens[num_tokens_found++] = node;
+				node = ROOT;
+			}
+		}
+		
+		if (node != ROOT) {
+			addOccurence(node);
+			tokens[num_tokens_found++] = node;
 		}
 		
-		if (node != root) node.addOccurence();
+		return num_tokens_found;
 	}
 	
-	// Converts a string consisting of words into a list of tokens.
-	// Unrecognized sequences of characters are converted to null.
-	public ArrayList<Token> tokenize(String line) {
-		Token node = root;
-		ArrayList<Token> tokens = new ArrayList<Token>();
+	// Learns a single word as though it had been encountered the passed number of times. Returns its token id.
+	protected int learnToken(String word, int num_occurences) {
+		int node = ROOT;
+		for (int i = 0; i < word.length(); i++) node = getOrCreateChild(node, word.charAt(i));
+		
+		if (node != ROOT && num_occurences > 0) {
+			if (node_occurences[node] == 0) num_tokens++;
+			node_occurences[node] += num_occurences;
+		}
+		
+		return node;
+	}
+	
+	// Converts a string consisting of words into a list of token ids.
+	// Unrecognized sequences of characters are skipped.
+	public int[] tokenize(String line) {
+		int[] tokens = new int[line.length() / 2 + 1];
+		return Arrays.copyOf(tokens, tokenize(line, tokens));
+	}
+	
+	// Converts a string consisting of words into token ids like tokenize(String), writing them into the passed array.
+	// The array must hold at least line.length() / 2 + 1 ids. Returns the number of tokens found.
+	protected int tokenize(String line, int[] tokens) {
+		int num_tokens_found = 0;
+		
+		int node = ROOT;
 		for (int i = 0; i < line.length(); i++) {
-			Character c = line.charAt(i);
+			char c = line.charAt(i);
 			
 			if (c != ' ') {
-				node = node.getChildOrNull(c);
+				node = getChild(node, c);
 				
 				// Skip to the next space if no token corresponds to this word.
-				if (node == null) {
+				if (node == -1) {
 					while (i < line.length() && line.charAt(i) != ' ') i++;
-					node = root;
+					node = ROOT;
 				}
 			}
-			else if (node != root) {
-				if (node.getNumOccurences() > 0) tokens.add(node);
-				node = root;
+			else if (node != ROOT) {
+				if (getNumOccurences(node) > 0) tokens[num_tokens_found++] = node;
+				node = ROOT;
 			}
 		}
 		
 		// Counts the last token in a string that does not end with whitespace.
-		if (node != root && node.getNumOccurences() > 0) tokens.add(node);
+		if (node != ROOT && getNumOccurences(node) > 0) tokens[num_tokens_found++] = node;
 		
-		return tokens;
+		return num_tokens_found;
 	}
 	
-	// Divides total_num_lines lines into folds and learns tokens from all but one of them.
-	// Parameters are copied from the caller.
-	protected void buildFromFile(File file, int total_num_lines, int num_folds, int omit_fold_index, Model model) throws FileNotFoundException, IOException {
-		BufferedReader data_scanner = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+	// Converts the passed ASCII text, found at text[start] through text[end-1], into token ids like tokenize(String), writing them into the passed array.
+	// The array must hold at least (end - start) / 2 + 1 ids. Returns the number of tokens found.
+	protected int tokenize(byte[] text, int start, int end, int[] tokens) {
+		int num_tokens_found = 0;
 		
-		System.out.println(total_num_lines + ", " + num_folds + ", " + omit_fold_index);
-		int total_training_lines = total_num_lines;
-		int lines_per_fold = total_num_lines;
-		if (omit_fold_index != -1) {
-			lines_per_fold /= num_folds;
-			total_training_lines -= lines_per_fold;
+		int node = ROOT;
+		for (int i = start; i < end; i++) {
+			byte c = text[i];
+			
+			if (c != ' ') {
+				node = getChild(node, (char) c);
+				
+				// Skip to the next space if no token corresponds to this word.
+				if (node == -1) {
+					while (i < end && text[i] != ' ') i++;
+					node = ROOT;
+				}
+			}
+			else if (node != ROOT) {
+				if (getNumOccurences(node) > 0) tokens[num_tokens_found++] = node;
+				node = ROOT;
+			}
 		}
 		
-		model.setStatusPercent(0);
+		if (node != ROOT && getNumOccurences(node) > 0) tokens[num_tokens_found++] = node;
+		
+		return num_tokens_found;
+	}
+	
+	// Converts the passed line of a batch into token ids, writing them into the passed array.
+	// The array must hold at least (batch.getEnd(line) - batch.getStart(line)) / 2 + 1 ids, or half the length of a decoded line plus one. Returns the number of tokens found.
+	protected int tokenize(LineBatch batch, int line, int[] tokens) {
+		String decoded_line = batch.getDecodedLine(line);
+		if (decoded_line != null) return tokenize(decoded_line, tokens);
+		
+		return tokenize(batch.getText(), batch.getStart(line), batch.getEnd(line), tokens);
+	}
+	
+	// Sanitizes and tokenizes the passed raw text in a single pass, writing token ids into the passed array.
+	// Equivalent to tokenize(Model.sanitize(raw)), except that letters are lowercased one at a time.
+	// The array must hold at least raw.length() / 2 + 1 ids. Returns the number of tokens found.
+	protected int tokenizeRaw(String raw, int[] tokens) {
+		int num_tokens_found = 0;
+		
+		// Becomes -1 once the current word is known not to be a token.
+		int node = ROOT;
+		for (int i = 0; i < raw.length(); i++) {
+			char c = Character.toLowerCase(raw.charAt(i));
+			
+			if (Model.isWordChar(c)) {
+				if (node != -1) node = getChild(node, c);
+			}
+			else {
+				if (node > ROOT && getNumOccurences(node) > 0) tokens[num_tokens_found++] = node;
+				node = ROOT;
+			}
+		}
+		
+		// Counts the last token in a string that does not end with a separator.
+		if (node > ROOT && getNumOccurences(node) > 0) tokens[num_tokens_found++] = node;
 		
-		int num_lines = Integer.parseInt(data_scanner.readLine());
+		return num_tokens_found;
+	}
+	
+	// Learns tokens from every line returned by the passed reader.
+	// If workers is non-null, each batch of lines is divided between num_workers threads, each learning into its own dictionary.
+	protected void buildFromFile(LabeledDataReader reader, Model model, ExecutorService workers, int num_workers) throws IOException {
+		int total_training_lines = reader.getNumSelectedLines();
+		model.setStatusPercent(0);
 		
-		for (int fold_index = 0; fold_index < num_folds; fold_index++) {
-			// Skip one fold.
-			if (fold_index == omit_fold_index) {
-				for (int line_index = 0; line_index < lines_per_fold; line_index++) data_scanner.readLine();
-				continue;
+		LineBatch batch_lines = new LineBatch(Model.TRAINING_BATCH_SIZE);
+		int num_lines_ingested = 0;
+		while (true) {
+			batch_lines.clear();
+			while (batch_lines.getSize() < batch_lines.getCapacity() && reader.next()) {
+				batch_lines.add(reader);
 			}
 			
-			for (int line_index = 0; line_index < lines_per_fold; line_index++) {
-				String line = data_scanner.readLine();
-				if (line == null) break;
-				
-				// Obtain raw text of the line and its score.
-				line = line.substring(line.indexOf(" ") + 1);
-				
-				// Generate tokens.
-				learnTokens(line);
+			int batch_size = batch_lines.getSize();
+			if (batch_size == 0) break;
+			
+			Model.checkInterrupted();
+			if (workers == null) {
+				for (int i = 0; i < batch_size; i++) learnTokens(batch_lines, i);
+			}
+			else {
+				int num_lines = batch_size;
+				ArrayList<Callable<TokenDictionary>> tasks = new ArrayList<Callable<TokenDictionary>>();
+				for (int i = 0; i < num_workers; i++) {
+					int start = (int) ((long) num_lines * i / num_workers);
+					int end = (int) ((long) num_lines * (i + 1) / num_workers);
+					
+					tasks.add(() -> {
+						TokenDictionary partial_dict = new TokenDictionary();
+						for (int j = start; j < end; j++) partial_dict.learnTokens(batch_lines, j);
+						return partial_dict;
+					});
+				}
 				
-				int num_lines_ingested = fold_index*num_folds + line_index + 1;
-				if (num_lines_ingested % 1000 == 0) {
-					model.setStatusPercent((double) num_lines_ingested / total_training_lines);
-					if (num_lines_ingested % 100000 == 0) {
-						System.out.println(String.format("%d Lines Learned. %d unique tokens encountered so far.", num_lines_ingested, getNumTokens()));
-					}
+				for (TokenDictionary partial_dict : Model.runInParallel(workers, tasks)) {
+					merge(partial_dict);
 				}
 			}
+			
+			num_lines_ingested += batch_size;
+			model.setStatusPercent((double) num_lines_ingested / total_training_lines);
+			
+			if (num_lines_ingested / 100000 != (num_lines_ingested - batch_size) / 100000) {
+				System.out.println(String.format("%d Lines Learned. %d unique tokens encountered so far.", num_lines_ingested, getNumTokens()));
+			}
 		}
 		
-		data_scanner.close();
 		model.setStatusPercent(1);
 	}
 	
-	// Removes all tokens with less than the specified minimum number of occurences.
-	protected void prune(int min_num_occurences) {
-		root.calculateTokenCounts(min_num_occurences);
-		root.pruneEmptyTokens();
-		num_tokens = root.getTokenCount();
+	// Learns tokens from every line returned by the passed reader over a compiled corpus.
+	// The occurences of each word are counted by id, then every word which occurs is learned at once, in order of first appearance.
+	protected void buildFromCorpus(CompiledCorpus corpus, CompiledCorpus.Reader reader, Model model) throws IOException {
+		model.setStatusPercent(0);
+		
+		int[] word_occurences = new int[corpus.getNumWords()];
+		int[] line_words = new int[0];
+		int num_lines_ingested = 0;
+		while (reader.next()) {
+			if (num_lines_ingested % Model.TRAINING_BATCH_SIZE == 0) Model.checkInterrupted();
+			
+			if (line_words.length < reader.getNumWords()) line_words = new int[reader.getNumWords() * 2];
+			reader.getWords(line_words);
+			for (int i = 0; i < reader.getNumWords(); i++) word_occurences[line_words[i]]++;
+			
+			num_lines_ingested++;
+		}
+		
+		for (int word = 0; word < word_occurences.length; word++) {
+			if (word_occurences[word] > 0) learnToken(corpus.getWord(word), word_occurences[word]);
+		}
+		
+		model.setStatusPercent(1);
+	}
+	
+	// Adds the tokens and occurence counts of another dictionary, which may be memory-mapped, to this one.
+	// Merging into an empty dictionary copies the other dictionary with the same node ids, so token ids remain valid.
+	protected void merge(TokenDictionary other) {
+		// Maps nodes in the other dictionary to nodes in this one. Parents always have lower ids than their children.
+		int[] ids = new int[other.getNumNodes()];
+		ids[ROOT] = ROOT;
+		for (int node = 1; node < ids.length; node++) {
+			ids[node] = getOrCreateChild(ids[other.getParent(node)], other.getKey(node));
+			
+			int num_occurences = other.getNumOccurences(node);
+			if (num_occurences > 0) {
+				if (node_occurences[ids[node]] == 0) num_tokens++;
+				node_occurences[ids[node]] += num_occurences;
+			}
+		}
 	}
 	
-	// Assigns all tokens a contiguous index, starting at 1.
-	protected void index() {
-		int i = root.index(0);
-		System.out.println("Done Indexing: " + (i-1) + " Nodes.");
+	// Removes all tokens with less than the specified minimum number of occurences,
+	// along with every node which no longer leads to a token.
+	// Surviving nodes are renumbered, preserving their relative order.
+	// Returns the new id of each previous token, or -1 for tokens which were removed.
+	protected int[] prune(int min_num_occurences) {
+		boolean[] keep = new boolean[num_nodes];
+		keep[ROOT] = true;
+		
+		num_tokens = 0;
+		for (int node = num_nodes - 1; node > ROOT; node--) {
+			if (node_occurences[node] >= min_num_occurences && node_occurences[node] > 0) {
+				keep[node] = true;
+				num_tokens++;
+			}
+			else {
+				// Allows num_occurences to be used later to determine
+				// whether a given node is terminal.
+				node_occurences[node] = 0;
+			}
+			
+			// Parents always have lower ids than their children, so they are visited after them.
+			if (keep[node]) keep[node_parents[node]] = true;
+		}
+		
+		int[] new_ids = new int[num_nodes];
+		int new_num_nodes = 0;
+		for (int node = 0; node < num_nodes; node++) {
+			new_ids[node] = -1;
+			if (!keep[node]) continue;
+			
+			new_ids[node] = new_num_nodes;
+			node_keys[new_num_nodes] = node_keys[node];
+			node_parents[new_num_nodes] = node == ROOT ? -1 : new_ids[node_parents[node]];
+			node_occurences[new_num_nodes] = node_occurences[node];
+			new_num_nodes++;
+		}
+		
+		num_nodes = new_num_nodes;
+		node_keys = Arrays.copyOf(node_keys, num_nodes);
+		node_parents = Arrays.copyOf(node_parents, num_nodes);
+		node_occurences = Arrays.copyOf(node_occurences, num_nodes);
+		
+		rebuildEdges(Math.max(Integer.highestOneBit(num_nodes) * 4, 16));
+		
+		// Nodes which remain only as prefixes of other tokens are no longer tokens.
+		for (int node = 0; node < new_ids.length; node++) {
+			if (new_ids[node] != -1 && node_occurences[new_ids[node]] == 0) new_ids[node] = -1;
+		}
+		
+		return new_ids;
+	}
+	
+	// Prunes the dictionary as a model trained on all but one of the passed folds would, for whichever fold leaves the fewest occurences.
+	// held_out_occurences[i][node] is the number of occurences of the node within the i-th fold, which must already be included in this dictionary.
+	// Every surviving token meets the passed minimum when any single fold is held out. Returns the new id of each previous token, or -1.
+	protected int[] pruneHeldOut(int[][] held_out_occurences, int min_num_occurences) {
+		for (int node = 1; node < num_nodes; node++) {
+			int max_held_out = 0;
+			for (int[] fold_occurences : held_out_occurences) {
+				if (node < fold_occurences.length) max_held_out = Math.max(max_held_out, fold_occurences[node]);
+			}
+			
+			node_occurences[node] -= max_held_out;
+		}
+		
+		return prune(min_num_occurences);
 	}
 	
-	// Returns the token with the given index, as assigned by a prior call to index()
-	protected Token getByIndex(int index) {
-		return root.getByIndex(index, 0);
+	// Returns the length in bytes of each section this dictionary occupies in a version 2 model file:
+	// node keys, node parents, node occurences, edge keys and edge children.
+	protected long[] getSectionSizes() {
+		return new long[] {
+			2L * num_nodes, 4L * num_nodes, 4L * num_nodes,
+			8L * getEdgeCapacity(), 4L * getEdgeCapacity()
+		};
 	}
 	
-	protected void writeToByteStream(FileOutputStream fout) throws IOException {
-		ByteBuffer header = ByteBuffer.allocate(4);
-		header.putInt(num_tokens);
+	// Writes every section listed by getSectionSizes(), each padded to a multiple of 8 bytes.
+	protected void writeSections(ModelFileWriter writer) throws IOException {
+		writer.writeChars(node_keys, num_nodes);
+		writer.padTo(8);
 		
-		fout.write(header.array());
-		index();
-		root.writeToByteStream(fout);
+		writer.writeInts(node_parents, num_nodes);
+		writer.padTo(8);
+		
+		writer.writeInts(node_occurences, num_nodes);
+		writer.padTo(8);
+		
+		writer.writeLongs(edge_keys, edge_keys.length);
+		writer.writeInts(edge_children, edge_children.length);
+		writer.padTo(8);
+	}
+	
+	// Returns the number of slots in the edge table.
+	protected int getEdgeCapacity() {
+		return edge_keys.length;
+	}
+	
+	// Returns the child of the passed node reached through the passed character, or -1 if it does not exist.
+	protected int getChild(int node, char c) {
+		long key = edgeKey(node, c);
+		int mask = edge_keys.length - 1;
+		for (int slot = hashSlot(key, mask); ; slot = (slot + 1) & mask) {
+			if (edge_keys[slot] == key) return edge_children[slot];
+			if (edge_keys[slot] == NO_EDGE) return -1;
+		}
+	}
+	
+	// Gets the child of the passed node, which represents a character sequence of one additional character.
+	// If the child does not exist, create it.
+	protected int getOrCreateChild(int node, char c) {
+		long key = edgeKey(node, c);
+		int mask = edge_keys.length - 1;
+		int slot = hashSlot(key, mask);
+		for (; edge_keys[slot] != NO_EDGE; slot = (slot + 1) & mask) {
+			if (edge_keys[slot] == key) return edge_children[slot];
+		}
+		
+		int child = num_nodes++;
+		if (child == node_keys.length) {
+			node_keys = Arrays.copyOf(node_keys, child * 2);
+			node_parents = Arrays.copyOf(node_parents, child * 2);
+			node_occurences = Arrays.copyOf(node_occurences, child * 2);
+		}
+		
+		node_keys[child] = c;
+		node_parents[child] = node;
+		node_occurences[child] = 0;
+		
+		edge_keys[slot] = key;
+		edge_children[slot] = child;
+		
+		// Keep the table at most half full. Every node but the root has exactly one edge.
+		if (num_nodes * 2 > edge_keys.length) rebuildEdges(edge_keys.length * 2);
+		
+		return child;
+	}
+	
+	protected void addOccurence(int node) {
+		if (node == ROOT) return;
+		
+		if (node_occurences[node] == 0) num_tokens++;
+		node_occurences[node]++;
+	}
+	
+	// Reads a node and all of its descendants, assigning ids in pre-order.
+	private void readNode(DataInputStream din, int parent) throws IOException {
+		char key = din.readChar();
+		din.readInt(); // Index, equal to the id assigned here.
+		int num_occurences = din.readInt();
+		din.readInt(); // Number of descendants.
+		din.readInt(); // Number of full words among the descendants.
+		int num_children = din.readInt();
+		
+		int node;
+		if (parent == -1) {
+			node = ROOT;
+			num_nodes = 1;
+			node_keys[ROOT] = key;
+			node_parents[ROOT] = -1;
+		}
+		else {
+			node = getOrCreateChild(parent, key);
+		}
+		
+		node_occurences[node] = num_occurences;
+		
+		for (int i = 0; i < num_children; i++) {
+			readNode(din, node);
+		}
+	}
+	
+	private void allocate(int node_capacity) {
+		node_keys = new char[node_capacity];
+		node_parents = new int[node_capacity];
+		node_occurences = new int[node_capacity];
+		
+		edge_keys = new long[node_capacity * 2];
+		edge_children = new int[node_capacity * 2];
+		Arrays.fill(edge_keys, NO_EDGE);
+	}
+	
+	// Discards the edge table and reinserts an edge for every node other than the root.
+	private void rebuildEdges(int capacity) {
+		edge_keys = new long[capacity];
+		edge_children = new int[capacity];
+		Arrays.fill(edge_keys, NO_EDGE);
+		
+		int mask = capacity - 1;
+		for (int node = 1; node < num_nodes; node++) {
+			long key = edgeKey(node_parents[node], node_keys[node]);
+			
+			int slot = hashSlot(key, mask);
+			while (edge_keys[slot] != NO_EDGE) slot = (slot + 1) & mask;
+			
+			edge_keys[slot] = key;
+			edge_children[slot] = node;
+		}
+	}
+	
+	protected static long edgeKey(int node, char c) {
+		return ((long) node << 16) | c;
+	}
+	
+	protected static int hashSlot(long key, int mask) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,157 @@
+package com.evelynsalie;
+
+import java.io.File;
+
+/**
+* A request to train a model from a dataset and save it, tracked by a TrainingScheduler.
+* Models trained from a stream have no dataset file, and their model only exists once training ends.
+*/
+public class TrainingJob {
+	public enum State {
+		QUEUED, RUNNING, SAVED, FAILED, CANCELLED
+	};
+	
+	private final long id;
+	private final String model_name;
+	private final Model model;
+	private final File dataset_file;
+	private final int num_lines;
+	
+	// Estimated number of bytes of heap used while training. Used for admission control.
+	private final long estimated_memory;
+	
+	private volatile State state;
+	
+	// The thread training the model, set once the job starts.
+	private volatile Thread thread;
+	private volatile boolean cancel_requested;
+	
+	/**
+	* @param id An identifier unique among all jobs of a scheduler.
+	* @param model_name The name of the model. It is saved under this name once trained.
+	* @param model The untrained model.
+	* @param dataset_file The labeled data to train on.
+	* @param num_lines The number of lines to train on.
+	*/
+	public TrainingJob(long id, String model_name, Model model, File dataset_file, int num_lines) {
+		this.id = id;
+		this.model_name = model_name;
+		this.model = model;
+		this.dataset_file = dataset_file;
+		this.num_lines = num_lines;
+		this.estimated_memory = model.estimateTrainingMemory(dataset_file, num_lines);
+		
+		this.state = State.QUEUED;
+		this.thread = null;
+		this.cancel_requested = false;
+	}
+	
+	/**
+	* Creates a job for a model trained from a stream by the caller, rather than by a scheduler's threads.
+	* @param id An identifier unique among all jobs of a scheduler.
+	* @param model_name The name of the model. It is saved under this name once trained.
+	*/
+	public TrainingJob(long id, String model_name) {
+		this.id = id;
+		this.model_name = model_name;
+		this.model = null;
+		this.dataset_file = null;
+		this.num_lines = 0;
+		this.estimated_memory = 0;
+		
+		this.state = State.QUEUED;
+		this.thread = null;
+		this.cancel_requested = false;
+	}
+	
+	public long getId() {
+		return id;
+	}
+	
+	public String getModelName() {
+		return model_name;
+	}
+	
+	// Returns the untrained model, or null if the job trains from a stream.
+	public Model getModel() {
+		return model;
+	}
+	
+	// Returns the dataset trained on, or null if the job trains from a stream.
+	public File getDatasetFile() {
+		return dataset_file;
+	}
+	
+	public int getNumLines() {
+		return num_lines;
+	}
+	
+	public long getEstimatedMemory() {
+		return estimated_memory;
+	}
+	
+	public State getState() {
+		return state;
+	}
+	
+	// Returns true if the job has not yet succeeded, failed or been cancelled.
+	public boolean isActive() {
+		return state == State.QUEUED || state == State.RUNNING;
+	}
+	
+	protected void setState(State state) {
+		this.state = state;
+	}
+	
+	public boolean isCancelRequested() {
+		return cancel_requested;
+	}
+	
+	// Asks the job to stop, interrupting its thread if it has started.
+	// Training checks for interrupts regularly. A job which has not started yet never will.
+	protected void requestCancel() {
+		cancel_requested = true;
+		
+		Thread training_thread = thread;
+		if (training_thread != null) training_thread.interrupt();
+	}
+	
+	// Called by the training thread before it checks isCancelRequested(), so that a concurrent requestCancel() either is seen by it or interrupts it.
+	protected void setThread(Thread thread) {
+		this.thread = thread;
+	}
+	
+	/**
+	* Gets a JSON string in the same format as {@link Model#getStatusJSON()}.
+	* Queued, failed and cancelled jobs have the stages "queued", "failed" and "cancelled" respectively.
+	* Running jobs which train from a stream have the stage "streaming", since the length of the stream is unknown.
+	*/
+	public String getStatusJSON() {
+		switch (state) {
+			case State.QUEUED:
+				return "{\"stage\":\"queued\"}";
+			case State.RUNNING:
+				if (model == null) return "{\"stage\":\"streaming\",\"progress\":0.00}";
+				
+				// Models report themselves complete once trained, but the job is not complete until the model is saved.
+				String model_status = model.getStatusJSON();
+				return model_status.equals(Model.getCompleteStatusJSON()) ? "{\"stage\":\"saving\",\"progress\":0.00}" : model_status;
+			case State.SAVED:
+				return Model.getCompleteStatusJSON();
+			case State.FAILED:
+				return "{\"stage\":\"failed\"}";
+			case State.CANCELLED:
+				return "{\"stage\":\"cancelled\"}";
+			default:
+				assert false;
+				return null;
+		}
+	}
+	
+	public String getJSON() {
+		return String.format(
+			"{\"id\":%d,\"model\":\"%s\",\"dataset\":\"%s\",\"num_lines\":%d,\"state\":\"%s\",\"estimated_memory\":%d,\"status\":%s}",
+			id, model_name, dataset_file == null ? "" : dataset_file.getName(), num_lines, state.name().toLowerCase(), estimated_memory, getStatusJSON()
+		);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,245 @@
+package com.evelynsalie;
+
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+* Trains and saves models in the background.
+* At most max_running_jobs jobs run at once, and a job only starts if the estimated memory of all running jobs, including it, fits in the memory budget.
+* Jobs start in the order they are submitted. A job which would exceed the budget on its own runs once no others are running.
+* Models are reserved in the registry while their job is active, and published once saved, so they are never used to label text before they are complete.
+*/
+public class TrainingScheduler {
+	// The number of finished jobs remembered for listing and progress reports.
+	private static final int MAX_FINISHED_JOBS = 100;
+	
+	private final ModelRegistry registry;
+	private final ExecutorService executor;
+	
+	private final int max_running_jobs;
+	private final int max_queued_jobs;
+	private final long memory_budget;
+	
+	private final AtomicLong next_id;
+	
+	// All of the following are guarded by this scheduler's lock.
+	private final ArrayDeque<TrainingJob> queue;
+	private final LinkedHashMap<Long, TrainingJob> jobs;
+	private int num_running_jobs;
+	private long running_memory;
+	
+	/**
+	* @param registry The registry that models are reserved in while they are trained.
+	* @param max_running_jobs The maximum number of jobs which may train at once.
+	* @param max_queued_jobs The maximum number of jobs which may wait to be started. Further submissions are rejected.
+	* @param memory_budget The number of bytes that running jobs are estimated to use at most, together.
+	*/
+	public TrainingScheduler(ModelRegistry registry, int max_running_jobs, int max_queued_jobs, long memory_budget) {
+		if (max_running_jobs < 1) throw new IllegalArgumentException("max_running_jobs must be positive.");
+		if (max_queued_jobs < 0) throw new IllegalArgumentException("max_queued_jobs must be non-negative.");
+		
+		this.registry = registry;
+		this.executor = Executors.newFixedThreadPool(max_running_jobs);
+		
+		this.max_running_jobs = max_running_jobs;
+		this.max_queued_jobs = max_queued_jobs;
+		this.memory_budget = memory_budget;
+		
+		this.next_id = new AtomicLong(1);
+		
+		this.queue = new ArrayDeque<TrainingJob>();
+		this.jobs = new LinkedHashMap<Long, TrainingJob>();
+		this.num_running_jobs = 0;
+		this.running_memory = 0;
+	}
+	
+	/**
+	* Queues a model to be trained and saved under the passed name.
+	* @return The job, or null if the queue is full or a model by this name is already loaded or being trained.
+	*/
+	public synchronized TrainingJob submit(String model_name, Model model, File dataset_file, int num_lines) {
+		if (queue.size() >= max_queued_jobs) return null;
+		if (!registry.reserve(model_name, model)) return null;
+		
+		TrainingJob job = new TrainingJob(next_id.getAndIncrement(), model_name, model, dataset_file, num_lines);
+		jobs.put(job.getId(), job);
+		queue.add(job);
+		
+		dispatch();
+		return job;
+	}
+	
+	/**
+	* Registers a model which the calling thread trains from a stream, so that it is listed and can be cancelled like any other job.
+	* The job runs at once, without counting towards the limits of the scheduler, since the stream cannot wait.
+	* Cancelling it interrupts the calling thread. The caller must pass the job to finishStream() once training stops, however it stops.
+	* @return The running job, or null if a model by this name is already loaded, being trained or saved.
+	*/
+	public synchronized TrainingJob startStream(String model_name) {
+		if (!registry.reserve(model_name, null)) return null;
+		
+		if (registry.getFile(model_name).exists()) {
+			registry.invalidate(model_name);
+			return null;
+		}
+		
+		TrainingJob job = new TrainingJob(next_id.getAndIncrement(), model_name);
+		job.setState(TrainingJob.State.RUNNING);
+		jobs.put(job.getId(), job);
+		
+		return job;
+	}
+	
+	/**
+	* Records the end of a job started by startStream(), publishing its model if training succeeded.
+	* @param model The trained model, which must already be saved, or null if training failed or was cancelled.
+	*/
+	public synchronized void finishStream(TrainingJob job, Model model) {
+		if (model != null) {
+			registry.publish(job.getModelName(), model);
+			job.setState(TrainingJob.State.SAVED);
+		}
+		else {
+			registry.invalidate(job.getModelName());
+			job.setState(job.isCancelRequested() ? TrainingJob.State.CANCELLED : TrainingJob.State.FAILED);
+		}
+		
+		forgetFinishedJobs();
+	}
+	
+	/**
+	* Cancels a queued or running job. Running jobs are interrupted and stop at their next check.
+	* @return False if no such job exists or it has already finished.
+	*/
+	public synchronized boolean cancel(long id) {
+		TrainingJob job = jobs.get(id);
+		if (job == null || !job.isActive()) return false;
+		
+		if (queue.remove(job)) {
+			job.setState(TrainingJob.State.CANCELLED);
+			registry.invalidate(job.getModelName());
+			return true;
+		}
+		
+		// The job is running, and is marked cancelled when its thread stops.
+		job.requestCancel();
+		return true;
+	}
+	
+	public synchronized TrainingJob getJob(long id) {
+		return jobs.get(id);
+	}
+	
+	/**
+	* Returns the most recently submitted job for the named model, or null if there is none.
+	*/
+	public synchronized TrainingJob getLatestJob(String model_name) {
+		TrainingJob latest = null;
+		for (TrainingJob job : jobs.values()) {
+			if (job.getModelName().equals(model_name)) latest = job;
+		}
+		
+		return latest;
+	}
+	
+	/**
+	* Returns every remembered job, in the order they were submitted.
+	*/
+	public synchronized List<TrainingJob> getJobs() {
+		return new ArrayList<TrainingJob>(jobs.values());
+	}
+	
+	// Returns true if a job with the passed memory estimate may start now.
+	private boolean canStart(long estimated_memory) {
+		if (num_running_jobs >= max_running_jobs) return false;
+		return num_running_jobs == 0 || running_memory + estimated_memory <= memory_budget;
+	}
+	
+	// Starts queued jobs, in order, until the next one does not fit.
+	private void dispatch() {
+		while (!queue.isEmpty() && canStart(queue.peek().getEstimatedMemory())) {
+			TrainingJob job = queue.poll();
+			
+			num_running_jobs++;
+			running_memory += job.getEstimatedMemory();
+			job.setState(TrainingJob.State.RUNNING);
+			executor.execute(() -> run(job));
+		}
+	}
+	
+	private void run(TrainingJob job) {
+		// Any failure not caught below, such as an Error thrown by the model, is recorded as such when the job finishes.
+		TrainingJob.State final_state = TrainingJob.State.FAILED;
+		job.setThread(Thread.currentThread());
+		try {
+			if (job.isCancelRequested()) throw new InterruptedIOException("Cancelled before starting.");
+			
+			Model model = job.getModel();
+			model.buildFromFile(job.getDatasetFile(), job.getNumLines(), 0, 0);
+			model.saveToFile(registry.getFile(job.getModelName()));
+			
+			System.out.println("Model Recorded.");
+			final_state = TrainingJob.State.SAVED;
+		}
+		catch (Throwable e) {
+			// Interrupting IO may raise exceptions other than InterruptedIOException, such as ClosedByInterruptException.
+			if (job.isCancelRequested()) {
+				System.out.println(String.format("Training of model '%s' cancelled.", job.getModelName()));
+				final_state = TrainingJob.State.CANCELLED;
+			}
+			else {
+				System.out.println(String.format("Training of model '%s' failed: %s", job.getModelName(), e));
+			}
+		}
+		finally {
+			job.setThread(null);
+			
+			// Do not leave the pool's thread interrupted for the next job.
+			Thread.interrupted();
+			
+			finish(job, final_state);
+		}
+	}
+	
+	// Publishes or discards the model of a job which has stopped running, and frees its place for the next queued job.
+	private synchronized void finish(TrainingJob job, TrainingJob.State final_state) {
+		if (final_state == TrainingJob.State.SAVED) {
+			registry.publish(job.getModelName());
+		}
+		else {
+			registry.invalidate(job.getModelName());
+		}
+		
+		job.setState(final_state);
+		
+		num_running_jobs--;
+		running_memory -= job.getEstimatedMemory();
+		
+		forgetFinishedJobs();
+		dispatch();
+	}
+	
+	// Forgets the oldest finished jobs once there are too many.
+	private void forgetFinishedJobs() {
+		int num_finished_jobs = 0;
+		for (TrainingJob job : jobs.values()) {
+			if (!job.isActive()) num_finished_jobs++;
+		}
+		
+		Iterator<TrainingJob> it = jobs.values().iterator();
+		while (num_finished_jobs > MAX_FINISHED_JOBS && it.hasNext()) {
+			if (!it.next().isActive()) {
+				it.remove();
+				num_finished_jobs--;
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,99 @@
+package com.evelynsalie;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchLabelerTest {
+	// Enough lines for several chunks, the last of them partial.
+	private static final int NUM_LINES = 3000;
+	
+	private static Model trainedModel() throws IOException {
+		Model model = new Model(3, 2, 1000, 500);
+		model.buildFromFile(TestDatasets.write(4000, 1), 4000, 0, 0);
+		return model;
+	}
+	
+	// Returns the text of each line of a random dataset.
+	private static String[] statements() {
+		String[] lines = TestDatasets.lines(NUM_LINES, 2);
+		for (int i = 0; i < lines.length; i++) lines[i] = LabeledDataReader.parseText(lines[i]);
+		
+		return lines;
+	}
+	
+	private static String label(BatchLabeler labeler, String[] statements, BatchLabeler.Format format) throws IOException {
+		StringWriter output = new StringWriter();
+		long num_lines = labeler.label(new BufferedReader(new StringReader(String.join("\n", statements))), output, format);
+		assertEquals(statements.length, num_lines);
+		
+		return output.toString();
+	}
+	
+	@Test void writesLabelsInInputOrder() throws IOException {
+		Model model = trainedModel();
+		String[] statements = statements();
+		ExecutorService workers = Executors.newFixedThreadPool(4);
+		
+		try {
+			BatchLabeler labeler = new BatchLabeler(model, workers, 3);
+			
+			String[] ndjson = label(labeler, statements, BatchLabeler.Format.NDJSON).split("\n");
+			String[] csv = label(labeler, statements, BatchLabeler.Format.CSV).split("\n");
+			
+			assertEquals(NUM_LINES, ndjson.length);
+			assertEquals(NUM_LINES + 1, csv.length);
+			assertEquals("line,label", csv[0]);
+			
+			for (int i = 0; i < NUM_LINES; i++) {
+				String label = String.format("%.4f", model.getLabel(statements[i]));
+				assertEquals("{\"line\":" + i + ",\"label\":" + label + "}", ndjson[i]);
+				assertEquals(i + "," + label, csv[i + 1]);
+			}
+		}
+		finally {
+			workers.shutdown();
+		}
+	}
+	
+	@Test void summarizesEveryStatement() throws IOException {
+		Model model = trainedModel();
+		String[] statements = statements();
+		ExecutorService workers = Executors.newFixedThreadPool(4);
+		
+		try {
+			LabelSummary summary = new BatchLabeler(model, workers, 2).summarize(List.of(statements).iterator(), 200);
+			
+			double[] labels = new double[NUM_LINES];
+			for (int i = 0; i < NUM_LINES; i++) labels[i] = model.getLabel(statements[i]);
+			Arrays.sort(labels);
+			
+			assertEquals(NUM_LINES, summary.getStats().getCount());
+			assertEquals(labels[0], summary.getStats().getMin());
+			assertEquals(labels[NUM_LINES - 1], summary.getStats().getMax());
+			
+			// Examples are the same as those of a summary filled in order, even when labels are tied.
+			LabelSummary in_order = new LabelSummary(200);
+			for (int i = 0; i < NUM_LINES; i++) in_order.addLabel(i, statements[i], model.getLabel(statements[i]));
+			
+			assertArrayEquals(in_order.getPositiveExamples(), summary.getPositiveExamples());
+			assertArrayEquals(in_order.getNegativeExamples(), summary.getNegativeExamples());
+			assertEquals(labels[NUM_LINES - 1], summary.getPositiveLabels()[0]);
+			assertEquals(labels[0], summary.getNegativeLabels()[0]);
+		}
+		finally {
+			workers.shutdown();
+		}
+	}
+	
+	@Test void requiresAChunkInFlight() {
+		assertThrows(IllegalArgumentException.class, () -> new BatchLabeler(null, null, 0));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,78 @@
+package com.evelynsalie;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledCorpusTest {
+	// Returns every line the reader selects, rebuilt from its rating and the words of the corpus.
+	private static List<String> readAll(CompiledCorpus corpus, CompiledCorpus.Reader reader) {
+		List<String> lines = new ArrayList<String>();
+		while (reader.next()) {
+			int[] line_words = new int[reader.getNumWords()];
+			reader.getWords(line_words);
+			
+			StringBuilder line = new StringBuilder().append(reader.getRating());
+			for (int word : line_words) line.append(' ').append(corpus.getWord(word));
+			lines.add(line.toString());
+		}
+		
+		return lines;
+	}
+	
+	@Test void holdsEveryLineOfItsDataset() throws IOException {
+		String[] lines = TestDatasets.lines(3000, 1);
+		File dataset = TestDatasets.write(Files.createTempDirectory("dataset").toFile(), "corpus", lines);
+		File file = CompiledCorpus.getCompiledFile(dataset);
+		
+		assertFalse(CompiledCorpus.hasCompiledForm(dataset));
+		CompiledCorpus.compile(dataset, file);
+		assertTrue(CompiledCorpus.hasCompiledForm(dataset));
+		assertTrue(CompiledCorpus.isCompiledCorpus(file));
+		assertFalse(CompiledCorpus.isCompiledCorpus(dataset));
+		
+		long num_word_occurences = 0;
+		for (String line : lines) num_word_occurences += line.split(" ").length - 1;
+		
+		try (CompiledCorpus corpus = new CompiledCorpus(file)) {
+			assertEquals(lines.length, corpus.getNumLines());
+			assertEquals(num_word_occurences, corpus.getNumWordOccurences());
+			assertEquals(List.of(lines), readAll(corpus, corpus.read(lines.length, 0, 0, false)));
+			
+			// Folds are read the same way as from the dataset.
+			assertEquals(List.of(lines).subList(1000, 1500), readAll(corpus, corpus.read(3000, 6, 2, false)));
+			
+			List<String> omitted = new ArrayList<String>(List.of(lines).subList(0, 2500));
+			omitted.subList(1000, 1500).clear();
+			assertEquals(omitted, readAll(corpus, corpus.read(2500, 5, 2, true)));
+		}
+	}
+	
+	@Test void trainsTheSameModelAsItsDataset() throws IOException {
+		File dataset = TestDatasets.write(5000, 2);
+		File file = CompiledCorpus.getCompiledFile(dataset);
+		CompiledCorpus.compile(dataset, file);
+		
+		File from_dataset = new File(dataset.getParentFile(), "dataset.ekmd");
+		File from_corpus = new File(dataset.getParentFile(), "corpus.ekmd");
+		
+		Model model = new Model(3, 2, 1000, 500);
+		model.buildFromFile(dataset, 5000, 5, 1);
+		model.saveToFile(from_dataset);
+		
+		model = new Model(3, 2, 1000, 500);
+		model.buildFromFile(file, 5000, 5, 1);
+		model.saveToFile(from_corpus);
+		
+		assertEquals(-1, Files.mismatch(from_dataset.toPath(), from_corpus.toPath()));
+	}
+	
+	@Test void rejectsOtherFiles() throws IOException {
+		File dataset = TestDatasets.write(10, 3);
+		assertThrows(IllegalArgumentException.class, () -> new CompiledCorpus(dataset));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,67 @@
+package com.evelynsalie;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrossValidatorTest {
+	private static final int NUM_LINES = 5000;
+	private static final int NUM_FOLDS = 5;
+	
+	// Means are summed in a different order depending on which thread tests each line, so they may differ in their last bits.
+	private static final double DELTA = 1e-9;
+	
+	private static void assertSameResults(ModelTestResults expected, ModelTestResults actual) {
+		assertEquals(expected.getResultStats().getCount(), actual.getResultStats().getCount());
+		assertEquals(expected.getResultStats().getMean(), actual.getResultStats().getMean(), DELTA);
+		assertEquals(expected.getLabelStats().getMean(), actual.getLabelStats().getMean(), DELTA);
+		assertEquals(expected.getErrorStats().getMean(), actual.getErrorStats().getMean(), DELTA);
+	}
+	
+	@Test void testsEveryLineOnce() throws IOException {
+		String[] lines = TestDatasets.lines(NUM_LINES, 1);
+		File dataset = TestDatasets.write(Files.createTempDirectory("dataset").toFile(), "folds", lines);
+		
+		double score_sum = 0;
+		for (String line : lines) score_sum += LabeledDataReader.parseRating(line) / 2.0 - 1.5;
+		
+		ModelTestResults results = new CrossValidator(3, 2, 1000, 500, 4).crossValidate(dataset, NUM_LINES, NUM_FOLDS);
+		assertEquals(NUM_LINES, results.getResultStats().getCount());
+		assertEquals(score_sum / NUM_LINES, results.getLabelStats().getMean(), DELTA);
+	}
+	
+	@Test void compiledCorpusGivesTheSameResults() throws IOException {
+		File dataset = TestDatasets.write(NUM_LINES, 2);
+		File corpus = CompiledCorpus.getCompiledFile(dataset);
+		CompiledCorpus.compile(dataset, corpus);
+		
+		CrossValidator validator = new CrossValidator(3, 2, 1000, 500, 4);
+		assertSameResults(validator.crossValidate(dataset, NUM_LINES, NUM_FOLDS), validator.crossValidate(corpus, NUM_LINES, NUM_FOLDS));
+	}
+	
+	@Test void trainsOneFoldAtATimeOverBudget() throws IOException {
+		File dataset = TestDatasets.write(NUM_LINES, 3);
+		File spill_directory = Files.createTempDirectory("spill").toFile();
+		
+		ModelTestResults expected = new ModelTestResults(ModelTestResults.DEFAULT_SKETCH_SIZE);
+		for (int fold = 0; fold < NUM_FOLDS; fold++) {
+			Model model = new Model(3, 2, 1000, 500, 2, 1 << 16, spill_directory);
+			model.buildFromFile(dataset, NUM_LINES, NUM_FOLDS, fold);
+			expected.integrateNewResults(model.testOnLines(dataset, NUM_LINES, NUM_FOLDS, fold));
+		}
+		
+		ModelTestResults results = new CrossValidator(3, 2, 1000, 500, 2, 1 << 16, spill_directory).crossValidate(dataset, NUM_LINES, NUM_FOLDS);
+		assertSameResults(expected, results);
+		assertEquals(NUM_LINES, results.getResultStats().getCount());
+	}
+	
+	@Test void rejectsFoldsThatDoNotDivideTheLines() throws IOException {
+		File dataset = TestDatasets.write(100, 4);
+		CrossValidator validator = new CrossValidator(3, 2, 1000, 500, 1);
+		
+		assertThrows(IllegalArgumentException.class, () -> validator.crossValidate(dataset, 100, 3));
+		assertThrows(IllegalArgumentException.class, () -> validator.crossValidate(dataset, 100, 1));
+	}
+}
@@ -0,0 +1,72 @@
+package com.evelynsalie;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LabelCacheTest {
+	// Small keys all belong to the first shard, which holds four labels in a cache of 64, at most three of them protected.
+	private static LabelCache smallCache() {
+		return new LabelCache(64);
+	}
+	
+	@Test void evictsTheLeastRecentlyCachedLabel() {
+		LabelCache cache = smallCache();
+		for (long key = 1; key <= 5; key++) cache.put(key, key / 10.0);
+		
+		assertEquals(4, cache.getSize());
+		assertTrue(Double.isNaN(cache.get(1)));
+		for (long key = 2; key <= 5; key++) assertEquals(key / 10.0, cache.get(key));
+	}
+	
+	@Test void repeatedLabelsOutliveBurstsOfNewOnes() {
+		LabelCache cache = smallCache();
+		cache.put(1, 0.5);
+		cache.put(2, -0.5);
+		assertEquals(0.5, cache.get(1));
+		
+		for (long key = 3; key <= 20; key++) cache.put(key, 0);
+		
+		assertEquals(0.5, cache.get(1));
+		assertTrue(Double.isNaN(cache.get(2)));
+		assertEquals(4, cache.getSize());
+	}
+	
+	@Test void demotedLabelsAreEvictedAfterProbationaryOnes() {
+		LabelCache cache = smallCache();
+		for (long key = 1; key <= 4; key++) {
+			cache.put(key, key);
+			cache.get(key);
+		}
+		
+		// Protecting the fourth label demoted the first, which is evicted before the protected labels.
+		cache.put(5, 5);
+		assertTrue(Double.isNaN(cache.get(1)));
+		for (long key = 2; key <= 5; key++) assertEquals((double) key, cache.get(key));
+	}
+	
+	@Test void findsLabelsAfterEvictionsFromOneCluster() {
+		// Multiples of 8 share a home slot in the first shard's table, so every eviction removes a key from the middle of a cluster.
+		LabelCache cache = smallCache();
+		for (long key = 8; key <= 8 * 50; key += 8) {
+			cache.put(key, key);
+			for (long recent = Math.max(key - 24, 8); recent <= key; recent += 8) assertEquals((double) recent, cache.get(recent));
+		}
+		
+		assertEquals(4, cache.getSize());
+	}
+	
+	@Test void holdsAtMostItsCapacity() {
+		LabelCache cache = new LabelCache(1000);
+		Random random = new Random(1);
+		for (int i = 0; i < 20000; i++) cache.put(random.nextLong(), i);
+		
+		assertEquals(1008, cache.getSize());
+	}
+	
+	@Test void textsWithTheSameWordsShareAHash() {
+		assertEquals(LabelCache.hashWords("great food"), LabelCache.hashWords("Great  food!"));
+		assertNotEquals(LabelCache.hashWords("great food"), LabelCache.hashWords("greatfood"));
+		assertNotEquals(LabelCache.hashWords("great food"), LabelCache.hashWords("food great"));
+	}
+}
\ No newline at end of file
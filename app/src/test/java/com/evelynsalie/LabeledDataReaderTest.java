@@ -0,0 +1,81 @@
+package com.evelynsalie;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LabeledDataReaderTest {
+	// Returns every line the reader selects, as it appears in the dataset.
+	private static List<String> readAll(LabeledDataReader reader) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		while (reader.next()) lines.add(reader.getRating() + " " + reader.getText());
+		reader.close();
+		
+		return lines;
+	}
+	
+	// Returns the lines of the first total_num_lines which lie in the passed fold, if included is true, or in every other fold.
+	private static List<String> expectedLines(String[] lines, int total_num_lines, int num_folds, int fold_index, boolean included) {
+		int lines_per_fold = total_num_lines / num_folds;
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < lines_per_fold * num_folds; i++) {
+			if ((i / lines_per_fold == fold_index) == included) expected.add(lines[i]);
+		}
+		
+		return expected;
+	}
+	
+	@Test void readsEveryFoldAcrossIndexedLines() throws IOException {
+		// Folds of 1300 lines start on either side of each multiple of DatasetIndex.INTERVAL. Lines past the last fold are never read.
+		int num_folds = 5;
+		int total_num_lines = 1300 * num_folds;
+		String[] lines = TestDatasets.lines(total_num_lines + 7, 1);
+		File dataset = TestDatasets.write(Files.createTempDirectory("dataset").toFile(), "folds", lines);
+		
+		for (int fold = 0; fold < num_folds; fold++) {
+			LabeledDataReader reader = new LabeledDataReader(dataset, total_num_lines, num_folds, fold, false);
+			assertEquals(1300, reader.getNumSelectedLines());
+			assertEquals(expectedLines(lines, total_num_lines, num_folds, fold, true), readAll(reader));
+			
+			reader = new LabeledDataReader(dataset, total_num_lines, num_folds, fold, true);
+			assertEquals(1300 * (num_folds - 1), reader.getNumSelectedLines());
+			assertEquals(expectedLines(lines, total_num_lines, num_folds, fold, false), readAll(reader));
+		}
+		
+		assertEquals(List.of(lines).subList(0, total_num_lines), readAll(new LabeledDataReader(dataset, total_num_lines, 0, 0, false)));
+	}
+	
+	@Test void indexTracksItsDataset() throws IOException {
+		String[] lines = TestDatasets.lines(DatasetIndex.INTERVAL * 3, 2);
+		File dataset = TestDatasets.write(Files.createTempDirectory("dataset").toFile(), "index", lines);
+		
+		// Only reading the dataset builds its index.
+		assertNull(DatasetIndex.readIfCurrent(dataset));
+		assertFalse(DatasetIndex.getIndexFile(dataset).exists());
+		
+		DatasetIndex index = DatasetIndex.forDataset(dataset);
+		assertEquals(lines.length, index.getNumLines());
+		assertTrue(DatasetIndex.getIndexFile(dataset).exists());
+		assertEquals(lines.length, DatasetIndex.readIfCurrent(dataset).getNumLines());
+		
+		// Each indexed offset is the start of its line, counting the header.
+		String contents = Files.readString(dataset.toPath());
+		for (int line = 0; line < lines.length; line += DatasetIndex.INTERVAL) {
+			assertTrue(contents.startsWith(lines[line] + "\n", (int) index.getOffset(line)));
+			assertEquals(index.getOffset(line), index.getOffset(line + DatasetIndex.INTERVAL - 1));
+		}
+		
+		assertEquals(lines.length, DatasetIndex.forDataset(dataset).getNumLines());
+		
+		// Changing the dataset rebuilds its index.
+		String[] fewer_lines = TestDatasets.lines(DatasetIndex.INTERVAL + 1, 3);
+		TestDatasets.write(dataset.getParentFile(), "index", fewer_lines);
+		assertTrue(dataset.setLastModified(dataset.lastModified() + 2000));
+		assertNull(DatasetIndex.readIfCurrent(dataset));
+		assertEquals(fewer_lines.length, DatasetIndex.forDataset(dataset).getNumLines());
+	}
+}
\ No newline at end of file
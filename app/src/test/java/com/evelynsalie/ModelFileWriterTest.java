@@ -0,0 +1,64 @@
+package com.evelynsalie;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelFileWriterTest {
+	// More longs than fit in the writer's buffer at once.
+	private static final int NUM_VALUES = 300000;
+	
+	private static long[] values() {
+		long[] values = new long[NUM_VALUES];
+		for (int i = 0; i < NUM_VALUES; i++) values[i] = i * 0x9E3779B97F4A7C15L;
+		
+		return values;
+	}
+	
+	@Test void writesEveryValueOnCommit() throws IOException {
+		File directory = Files.createTempDirectory("writer").toFile();
+		File file = new File(directory, "values.ekmd");
+		long[] values = values();
+		
+		try (ModelFileWriter writer = new ModelFileWriter(file, 0, null)) {
+			writer.writeBytes("Values");
+			writer.writeByte(7);
+			writer.padTo(8);
+			writer.writeLongs(values, NUM_VALUES);
+			writer.writeDouble(0.25);
+			
+			assertEquals(16 + 8L * NUM_VALUES, writer.getPosition());
+			assertFalse(file.exists());
+			
+			writer.commit();
+		}
+		
+		assertArrayEquals(new File[] {file}, directory.listFiles());
+		
+		ByteBuffer contents = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		assertEquals(16 + 8L * NUM_VALUES, contents.capacity());
+		assertEquals('V', contents.get(0));
+		assertEquals(7, contents.get(6));
+		assertEquals(0, contents.get(7));
+		
+		contents.position(8);
+		for (long value : values) assertEquals(value, contents.getLong());
+		assertEquals(0.25, contents.getDouble());
+	}
+	
+	@Test void leavesTheDestinationUntouchedUnlessCommitted() throws IOException {
+		File directory = Files.createTempDirectory("writer").toFile();
+		File file = new File(directory, "values.ekmd");
+		Files.writeString(file.toPath(), "previous");
+		
+		try (ModelFileWriter writer = new ModelFileWriter(file, 0, null)) {
+			writer.writeLongs(values(), NUM_VALUES);
+		}
+		
+		assertArrayEquals(new File[] {file}, directory.listFiles());
+		assertEquals("previous", Files.readString(file.toPath()));
+	}
+}
@@ -0,0 +1,88 @@
+package com.evelynsalie;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelRegistryTest {
+	private static final String[] NAMES = {"first", "second", "third"};
+	
+	// Saves the same small model under each name in a new directory, and returns the directory.
+	private static File modelsDirectory() throws IOException {
+		File dataset = TestDatasets.write(2000, 1);
+		Model model = new Model(3, 2, 1000, 500);
+		model.buildFromFile(dataset, 2000, 0, 0);
+		
+		File directory = Files.createTempDirectory("models").toFile();
+		for (String name : NAMES) model.saveToFile(new File(directory, name + ".ekmd"));
+		
+		return directory;
+	}
+	
+	// Returns a registry with room for one and a half of the saved models.
+	private static ModelRegistry registry(File directory) throws IOException {
+		long size = new Model(new File(directory, NAMES[0] + ".ekmd")).getMemoryFootprint();
+		return new ModelRegistry(directory, size * 3 / 2);
+	}
+	
+	@Test void keepsTheMostRecentlyLoadedModel() throws IOException {
+		ModelRegistry registry = registry(modelsDirectory());
+		
+		for (int i = 0; i < NAMES.length; i++) {
+			Model model = registry.get(NAMES[i]);
+			assertNotNull(model);
+			assertSame(model, registry.getIfLoaded(NAMES[i]));
+			if (i > 0) assertNull(registry.getIfLoaded(NAMES[i - 1]));
+		}
+		
+		assertNull(registry.get("missing"));
+	}
+	
+	@Test void loadedModelOutlivesModelsUsedWhileItLoads() throws Exception {
+		ModelRegistry registry = registry(modelsDirectory());
+		assertNotNull(registry.get(NAMES[0]));
+		
+		// Another thread keeps using the first model for as long as the second takes to load.
+		AtomicBoolean loading = new AtomicBoolean(true);
+		Thread user = new Thread(() -> {
+			while (loading.get()) registry.getIfLoaded(NAMES[0]);
+		});
+		
+		user.start();
+		try {
+			assertNotNull(registry.get(NAMES[1]));
+		}
+		finally {
+			loading.set(false);
+			user.join();
+		}
+		
+		assertNotNull(registry.getIfLoaded(NAMES[1]));
+		assertNull(registry.getIfLoaded(NAMES[0]));
+	}
+	
+	@Test void reservedModelsAreHiddenAndNeverEvicted() throws IOException {
+		File directory = modelsDirectory();
+		ModelRegistry registry = registry(directory);
+		Model trained = new Model(new File(directory, NAMES[2] + ".ekmd"));
+		
+		assertTrue(registry.reserve(NAMES[2], trained));
+		assertFalse(registry.reserve(NAMES[2], trained));
+		assertNull(registry.get(NAMES[2]));
+		
+		assertNotNull(registry.get(NAMES[0]));
+		assertNotNull(registry.get(NAMES[1]));
+		assertNull(registry.getIfLoaded(NAMES[0]));
+		assertFalse(registry.invalidateUnlessReserved(NAMES[2]));
+		
+		registry.publish(NAMES[2]);
+		assertSame(trained, registry.get(NAMES[2]));
+		assertNull(registry.getIfLoaded(NAMES[1]));
+		
+		assertTrue(registry.invalidateUnlessReserved(NAMES[2]));
+		assertNull(registry.getIfLoaded(NAMES[2]));
+	}
+}
\ No newline at end of file
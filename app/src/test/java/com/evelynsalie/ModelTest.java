@@ -0,0 +1,117 @@
+package com.evelynsalie;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.function.IntFunction;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelTest {
+	private static final int NUM_LINES = 4000;
+	
+	private static Model train(File dataset) throws IOException {
+		Model model = new Model(3, 2, 1000, 500);
+		model.buildFromFile(dataset, NUM_LINES, 0, 0);
+		return model;
+	}
+	
+	// Trains the model on the dataset, saves it beside the dataset and returns the file.
+	private static File trainAndSave(Model model, File dataset, int num_lines, String name) throws IOException {
+		model.buildFromFile(dataset, num_lines, 0, 0);
+		
+		File file = new File(dataset.getParentFile(), name + ".ekmd");
+		model.saveToFile(file);
+		return file;
+	}
+	
+	// Asserts that models trained by each factory with one and with four threads are saved as the same bytes.
+	private static void assertSameWithThreads(File dataset, int num_lines, IntFunction<Model> factory) throws IOException {
+		File single = trainAndSave(factory.apply(1), dataset, num_lines, "single");
+		File multiple = trainAndSave(factory.apply(4), dataset, num_lines, "multiple");
+		assertEquals(-1, Files.mismatch(single.toPath(), multiple.toPath()));
+	}
+	
+	@Test void savedModelLoadsUnchanged() throws IOException {
+		File dataset = TestDatasets.write(NUM_LINES, 1);
+		Model model = train(dataset);
+		
+		File file = new File(dataset.getParentFile(), "model.ekmd");
+		model.saveToFile(file);
+		Model loaded = new Model(file);
+		
+		assertEquals(model.getNumTokens(), loaded.getNumTokens());
+		assertEquals(model.getNumTokenSequences(), loaded.getNumTokenSequences());
+		assertEquals(model.getAllScoreMean(), loaded.getAllScoreMean());
+		assertEquals(model.getAllScoreStdDev(), loaded.getAllScoreStdDev());
+		
+		for (String line : TestDatasets.lines(200, 2)) {
+			String text = LabeledDataReader.parseText(line);
+			assertArrayEquals(model.tokenize(text), loaded.tokenize(text));
+			assertEquals(model.getLabel(text), loaded.getLabel(text));
+		}
+		
+		// Memory-mapped tables are read-only.
+		assertThrows(UnsupportedOperationException.class, () -> loaded.saveToFile(new File(dataset.getParentFile(), "resaved.ekmd")));
+	}
+	
+	@Test void rejectsFilesWithOtherLayouts() throws IOException {
+		File dataset = TestDatasets.write(NUM_LINES, 3);
+		File file = new File(dataset.getParentFile(), "model.ekmd");
+		train(dataset).saveToFile(file);
+		
+		// The version is the big-endian int after the eight-byte signature, and the number of sections is the int at byte 72.
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		bytes[11] = 3;
+		Files.write(file.toPath(), bytes);
+		assertThrows(IllegalArgumentException.class, () -> new Model(file));
+		
+		bytes[11] = 2;
+		bytes[75] = 12;
+		Files.write(file.toPath(), bytes);
+		assertThrows(IllegalArgumentException.class, () -> new Model(file));
+		
+		Files.writeString(file.toPath(), "NotAModel");
+		assertThrows(IllegalArgumentException.class, () -> new Model(file));
+	}
+	
+	@Test void trainsTheSameModelWithAnyNumberOfThreads() throws IOException {
+		// Enough lines for several batches, and several pruning steps within each.
+		int num_lines = Model.TRAINING_BATCH_SIZE * 2 + 500;
+		File dataset = TestDatasets.write(num_lines, 4);
+		File spill_directory = Files.createTempDirectory("spill").toFile();
+		
+		assertSameWithThreads(dataset, num_lines, threads -> new Model(3, 2, 3000, 500, threads));
+		assertSameWithThreads(dataset, num_lines, threads -> new Model(3, 2, 0, 500, threads, 1 << 18));
+		assertSameWithThreads(dataset, num_lines, threads -> new Model(3, 2, 0, 500, threads, 1 << 18, spill_directory));
+	}
+	
+	@Test void updateAddsEveryLabeledLineOfTheDelta() throws IOException {
+		File dataset = TestDatasets.write(NUM_LINES, 4);
+		Model model = train(dataset);
+		double mean = model.getAllScoreMean();
+		
+		String[] new_lines = TestDatasets.lines(1000, 5);
+		String[] delta_lines = new String[new_lines.length + 1];
+		System.arraycopy(new_lines, 0, delta_lines, 0, new_lines.length);
+		delta_lines[new_lines.length] = "unlabeled";
+		
+		Model.Delta delta = Model.Delta.read(TestDatasets.write(dataset.getParentFile(), "delta", delta_lines));
+		assertEquals(new_lines.length, delta.getNumLines());
+		
+		Model updated = model.update(delta);
+		assertEquals(mean, model.getAllScoreMean());
+		
+		// The mean score of every line is exact, however the sequences are pruned.
+		double sum = 0;
+		for (String line : TestDatasets.lines(NUM_LINES, 4)) sum += LabeledDataReader.parseRating(line) / 2.0 - 1.5;
+		for (String line : new_lines) sum += LabeledDataReader.parseRating(line) / 2.0 - 1.5;
+		assertEquals(sum / (NUM_LINES + new_lines.length), updated.getAllScoreMean(), 1e-9);
+		assertTrue(updated.getNumTokens() >= model.getNumTokens());
+	}
+	
+	@Test void deltasNeedALabeledLine() throws IOException {
+		File delta = TestDatasets.write(Files.createTempDirectory("delta").toFile(), "delta", new String[] {"unlabeled"});
+		assertThrows(IOException.class, () -> Model.Delta.read(delta));
+	}
+}
\ No newline at end of file
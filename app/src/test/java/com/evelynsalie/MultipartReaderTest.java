@@ -0,0 +1,104 @@
+package com.evelynsalie;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultipartReaderTest {
+	private static final String BODY =
+		"preamble\r\n" +
+		"--xyz\r\n" +
+		"Content-Disposition: form-data; name=\"model\"\r\n" +
+		"\r\n" +
+		"yelp\r\n" +
+		"--xyz\r\n" +
+		"Content-Disposition: form-data; name=\"file\"; filename=\"reviews.txt\"\r\n" +
+		"Content-Type: text/plain\r\n" +
+		"\r\n" +
+		"great food\r\n" +
+		"--xy is not a boundary\r\n" +
+		"--xyz--\r\n";
+	
+	// Returns at most three bytes per read, so that boundaries are split across reads.
+	private static class TrickleInputStream extends ByteArrayInputStream {
+		TrickleInputStream(byte[] bytes) {
+			super(bytes);
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) {
+			return super.read(b, off, Math.min(len, 3));
+		}
+	}
+	
+	private static String readAll(InputStream input) throws IOException {
+		return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+	}
+	
+	@Test void readsEveryPart() throws IOException {
+		MultipartReader reader = new MultipartReader(new TrickleInputStream(BODY.getBytes(StandardCharsets.UTF_8)), "xyz");
+		
+		assertTrue(reader.nextPart());
+		assertEquals("model", reader.getName());
+		assertEquals("yelp", readAll(reader.getPartStream()));
+		
+		assertTrue(reader.nextPart());
+		assertEquals("file", reader.getName());
+		assertEquals("great food\r\n--xy is not a boundary", readAll(reader.getPartStream()));
+		
+		assertFalse(reader.nextPart());
+	}
+	
+	@Test void skipsUnreadParts() throws IOException {
+		MultipartReader reader = new MultipartReader(new ByteArrayInputStream(BODY.getBytes(StandardCharsets.UTF_8)), "xyz");
+		
+		assertTrue(reader.nextPart());
+		assertTrue(reader.nextPart());
+		assertEquals('g', reader.getPartStream().read());
+		assertFalse(reader.nextPart());
+	}
+	
+	@Test void rejectsTruncatedBodies() throws IOException {
+		MultipartReader reader = new MultipartReader(new ByteArrayInputStream("--xyz\r\n\r\nabc".getBytes(StandardCharsets.UTF_8)), "xyz");
+		
+		assertTrue(reader.nextPart());
+		assertThrows(IOException.class, () -> readAll(reader.getPartStream()));
+	}
+	
+	@Test void matchesOnlyTheNameParameter() throws IOException {
+		String body =
+			"--xyz\r\n" +
+			"Content-Disposition: form-data; filename=\"name=.txt\"; name=\"file\"\r\n" +
+			"\r\n" +
+			"a\r\n" +
+			"--xyz\r\n" +
+			"content-disposition: form-data;filename=\"a; name=b\";NAME=model\r\n" +
+			"\r\n" +
+			"b\r\n" +
+			"--xyz\r\n" +
+			"Content-Disposition: form-data; filename=\"reviews.txt\"\r\n" +
+			"\r\n" +
+			"c\r\n" +
+			"--xyz--\r\n";
+		MultipartReader reader = new MultipartReader(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), "xyz");
+		
+		assertTrue(reader.nextPart());
+		assertEquals("file", reader.getName());
+		
+		assertTrue(reader.nextPart());
+		assertEquals("model", reader.getName());
+		
+		assertTrue(reader.nextPart());
+		assertNull(reader.getName());
+		assertFalse(reader.nextPart());
+	}
+	
+	@Test void parsesBoundaryParameter() {
+		assertEquals("abc", MultipartReader.getBoundary("multipart/form-data; boundary=abc"));
+		assertEquals("a b", MultipartReader.getBoundary("multipart/form-data; boundary=\"a b\"; charset=utf-8"));
+		assertNull(MultipartReader.getBoundary("multipart/form-data"));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,99 @@
+package com.evelynsalie;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class NGramTableTest {
+	// Returns the n-gram of the passed tokens, or -1 if any prefix of it is not tracked.
+	private static int find(NGramTable table, int... tokens) {
+		int ngram = NGramTable.ROOT;
+		for (int token : tokens) {
+			ngram = table.getChild(ngram, token);
+			if (ngram == -1) return -1;
+		}
+		
+		return ngram;
+	}
+	
+	@Test void countsEveryNGramUpToMaxLength() {
+		NGramTable table = new NGramTable();
+		table.addStatement(new int[] {7, 1, 2, 1, 7}, 1, 4, 1.5, 2);
+		table.addStatement(new int[] {1}, 0, 1, -0.5, 2);
+		
+		assertEquals(2, table.getNumOccurences(NGramTable.ROOT));
+		assertEquals(4, table.getNumSequences());
+		
+		int one = find(table, 1);
+		assertEquals(3, table.getNumOccurences(one));
+		assertEquals(2.5, table.getCumulativeScore(one));
+		assertEquals(4.75, table.getCumulativeSqrScore(one));
+		assertEquals(1, table.getNumOccurences(find(table, 1, 2)));
+		assertEquals(1, table.getNumOccurences(find(table, 2, 1)));
+		
+		assertEquals(-1, find(table, 1, 2, 1));
+		assertEquals(-1, find(table, 7));
+		assertEquals(one, table.getParent(find(table, 1, 2)));
+		assertEquals(2, table.getToken(find(table, 1, 2)));
+	}
+	
+	@Test void findsEveryNGramAfterGrowing() {
+		NGramTable table = new NGramTable();
+		int[] tokens = new int[5000];
+		for (int i = 0; i < tokens.length; i++) tokens[i] = i * 31;
+		table.addStatement(tokens, 0, tokens.length, 1, 2);
+		
+		assertEquals(tokens.length * 2 - 1, table.getNumSequences());
+		for (int i = 0; i + 1 < tokens.length; i++) {
+			assertEquals(1, table.getNumOccurences(find(table, tokens[i], tokens[i + 1])));
+		}
+		
+		assertEquals(-1, find(table, tokens[1], tokens[0]));
+	}
+	
+	@Test void pruneRemovesRareNGramsAndTheirExtensions() {
+		NGramTable table = new NGramTable();
+		table.addStatement(new int[] {1, 2, 3}, 0, 3, 1, 3);
+		table.addStatement(new int[] {1, 2}, 0, 2, -1, 3);
+		table.addStatement(new int[] {3}, 0, 1, 2, 3);
+		
+		assertEquals(3, table.getPruneThreshold(0));
+		assertEquals(2, table.getPruneThreshold(4));
+		assertEquals(1, table.getPruneThreshold(100));
+		
+		table.prune(2);
+		
+		assertEquals(4, table.getNumSequences());
+		assertEquals(2, table.getNumOccurences(find(table, 1, 2)));
+		assertEquals(0, table.getCumulativeScore(find(table, 1, 2)));
+		assertEquals(2, table.getNumOccurences(find(table, 3)));
+		assertEquals(-1, find(table, 2, 3));
+		assertEquals(-1, find(table, 1, 2, 3));
+	}
+	
+	@Test void subtractUndoesMerge() {
+		NGramTable first = new NGramTable();
+		first.addStatement(new int[] {1, 2, 3}, 0, 3, 0.5, 3);
+		
+		NGramTable second = new NGramTable();
+		second.addStatement(new int[] {3, 2}, 0, 2, -1, 3);
+		second.addStatement(new int[] {2, 3}, 0, 2, 2, 3);
+		
+		NGramTable sum = new NGramTable();
+		sum.merge(first);
+		sum.merge(second);
+		
+		assertEquals(3, sum.getNumOccurences(NGramTable.ROOT));
+		assertEquals(2, sum.getNumOccurences(find(sum, 2, 3)));
+		assertEquals(2.5, sum.getCumulativeScore(find(sum, 2, 3)));
+		
+		sum.subtract(second);
+		
+		for (int[] ngram : new int[][] {{}, {1}, {2}, {3}, {1, 2}, {2, 3}, {1, 2, 3}}) {
+			assertEquals(first.getNumOccurences(find(first, ngram)), sum.getNumOccurences(find(sum, ngram)));
+			assertEquals(first.getCumulativeScore(find(first, ngram)), sum.getCumulativeScore(find(sum, ngram)));
+			assertEquals(first.getCumulativeSqrScore(find(first, ngram)), sum.getCumulativeSqrScore(find(sum, ngram)));
+		}
+		
+		assertEquals(0, sum.getNumOccurences(find(sum, 3, 2)));
+	}
+}
\ No newline at end of file
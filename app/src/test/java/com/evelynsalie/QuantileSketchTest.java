@@ -0,0 +1,97 @@
+package com.evelynsalie;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantileSketchTest {
+	// The rank error of a sketch with k = 200, as a fraction of the count, with 99% confidence.
+	private static final double MAX_RANK_ERROR = 0.0165;
+	
+	// Returns 0 through n-1 in a random order, so the value at rank r is r.
+	private static double[] shuffledValues(int n, long seed) {
+		double[] values = new double[n];
+		for (int i = 0; i < n; i++) values[i] = i;
+		
+		Random random = new Random(seed);
+		for (int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			double swap = values[i];
+			values[i] = values[j];
+			values[j] = swap;
+		}
+		
+		return values;
+	}
+	
+	// Asserts that every percentile from 1 to 99 of 0 through n-1 is estimated within the error bound, in both directions.
+	private static void assertWithinBound(QuantileSketch sketch, int n) {
+		for (int percent = 1; percent < 100; percent++) {
+			double fraction = percent / 100.0;
+			assertEquals(fraction * n, sketch.getQuantile(fraction), MAX_RANK_ERROR * n);
+			assertEquals(fraction * n, sketch.getRank(fraction * n), MAX_RANK_ERROR * n);
+		}
+	}
+	
+	@Test void answersExactlyUntilFull() {
+		QuantileSketch sketch = new QuantileSketch(200);
+		for (double value : shuffledValues(150, 1)) sketch.add(value);
+		
+		assertEquals(150, sketch.getCount());
+		for (int rank = 0; rank < 150; rank++) {
+			assertEquals(rank, sketch.getRank(rank));
+			assertEquals(rank, sketch.getQuantile((rank + 0.5) / 150.0));
+		}
+		
+		assertEquals(0.0, sketch.getQuantile(0));
+		assertEquals(149.0, sketch.getQuantile(1));
+		assertEquals(150, sketch.getRank(1000));
+	}
+	
+	@Test void estimatesRanksWithinBound() {
+		int n = 200000;
+		QuantileSketch sketch = new QuantileSketch(200);
+		for (double value : shuffledValues(n, 2)) sketch.add(value);
+		
+		assertEquals(n, sketch.getCount());
+		assertWithinBound(sketch, n);
+	}
+	
+	@Test void mergedSketchesMatchOneSketch() {
+		int n = 200000;
+		int num_sketches = 8;
+		double[] values = shuffledValues(n, 3);
+		
+		QuantileSketch single = new QuantileSketch(200);
+		QuantileSketch[] parts = new QuantileSketch[num_sketches];
+		for (int i = 0; i < num_sketches; i++) parts[i] = new QuantileSketch(200);
+		
+		for (int i = 0; i < n; i++) {
+			single.add(values[i]);
+			parts[i % num_sketches].add(values[i]);
+		}
+		
+		QuantileSketch merged = new QuantileSketch(200);
+		for (QuantileSketch part : parts) merged.merge(part);
+		
+		assertEquals(n, merged.getCount());
+		assertEquals(n / num_sketches, parts[0].getCount());
+		assertWithinBound(merged, n);
+		
+		for (int percent = 1; percent < 100; percent++) {
+			assertEquals(single.getQuantile(percent / 100.0), merged.getQuantile(percent / 100.0), 2 * MAX_RANK_ERROR * n);
+		}
+	}
+	
+	@Test void rejectsInvalidArguments() {
+		assertThrows(IllegalArgumentException.class, () -> new QuantileSketch(4));
+		
+		QuantileSketch sketch = new QuantileSketch(200);
+		assertThrows(IllegalStateException.class, () -> sketch.getQuantile(0.5));
+		assertEquals(0, sketch.getRank(1));
+		
+		sketch.add(1);
+		assertThrows(IllegalArgumentException.class, () -> sketch.getQuantile(1.5));
+		assertThrows(IllegalArgumentException.class, () -> sketch.merge(new QuantileSketch(100)));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+package com.evelynsalie;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SequenceSpillerTest {
+	private static final int MAX_LENGTH = 3;
+	
+	// Returns random statements of up to ten tokens from a small vocabulary, so that sequences repeat across runs.
+	private static int[][] statements(int num_statements, long seed) {
+		Random random = new Random(seed);
+		int[][] statements = new int[num_statements][];
+		for (int i = 0; i < num_statements; i++) {
+			statements[i] = new int[random.nextInt(10) + 1];
+			for (int j = 0; j < statements[i].length; j++) statements[i][j] = random.nextInt(40);
+		}
+		
+		return statements;
+	}
+	
+	// Scores are multiples of one half, as with every rating, so sums are exact in any order.
+	private static double score(int statement) {
+		return (statement % 5) / 2.0 - 1;
+	}
+	
+	// Asserts that both tables hold the same sequences with the same statistics.
+	private static void assertSameTable(NGramTable expected, NGramTable actual) {
+		assertEquals(expected.getNumSequences(), actual.getNumSequences());
+		
+		for (int ngram = 0; ngram < expected.getNumNGrams(); ngram++) {
+			int[] path = new int[MAX_LENGTH];
+			int length = 0;
+			for (int node = ngram; node != NGramTable.ROOT; node = expected.getParent(node)) path[length++] = expected.getToken(node);
+			
+			int match = NGramTable.ROOT;
+			for (int i = length - 1; i >= 0; i--) match = actual.getChild(match, path[i]);
+			
+			assertNotEquals(-1, match);
+			assertEquals(expected.getNumOccurences(ngram), actual.getNumOccurences(match));
+			assertEquals(expected.getCumulativeScore(ngram), actual.getCumulativeScore(match));
+			assertEquals(expected.getCumulativeSqrScore(ngram), actual.getCumulativeSqrScore(match));
+		}
+	}
+	
+	// Counts the statements in one table, and again in tables of run_size statements which are spilled and merged, and compares them.
+	private static void assertMergeMatchesOneTable(int num_statements, int run_size, int min_num_occurences, long seed) throws IOException {
+		int[][] statements = statements(num_statements, seed);
+		
+		NGramTable expected = new NGramTable();
+		for (int i = 0; i < num_statements; i++) expected.addStatement(statements[i], 0, statements[i].length, score(i), MAX_LENGTH);
+		expected.prune(min_num_occurences);
+		
+		File directory = Files.createTempDirectory("spill").toFile();
+		try (SequenceSpiller spiller = new SequenceSpiller(directory, MAX_LENGTH)) {
+			NGramTable run = new NGramTable();
+			for (int i = 0; i < num_statements; i++) {
+				run.addStatement(statements[i], 0, statements[i].length, score(i), MAX_LENGTH);
+				if ((i + 1) % run_size == 0 || i + 1 == num_statements) {
+					spiller.spill(run);
+					run = new NGramTable();
+				}
+			}
+			
+			assertEquals((num_statements + run_size - 1) / run_size, spiller.getNumRuns());
+			assertSameTable(expected, spiller.merge(min_num_occurences));
+			assertEquals(0, spiller.getNumRuns());
+		}
+		
+		assertEquals(0, directory.listFiles().length);
+	}
+	
+	@Test void mergedRunsMatchCountingInOneTable() throws IOException {
+		assertMergeMatchesOneTable(5000, 700, 3, 1);
+		assertMergeMatchesOneTable(5000, 5000, 1, 2);
+	}
+	
+	@Test void mergesManyRunsInSeveralPasses() throws IOException {
+		assertMergeMatchesOneTable(10000, 100, 2, 3);
+	}
+	
+	@Test void closeDeletesUnmergedRuns() throws IOException {
+		File directory = Files.createTempDirectory("spill").toFile();
+		NGramTable table = new NGramTable();
+		table.addStatement(new int[] {1, 2}, 0, 2, 1, MAX_LENGTH);
+		
+		SequenceSpiller spiller = new SequenceSpiller(directory, MAX_LENGTH);
+		spiller.spill(table);
+		spiller.spill(table);
+		assertEquals(2, directory.listFiles().length);
+		
+		spiller.close();
+		assertEquals(0, directory.listFiles().length);
+	}
+}
\ No newline at end of file
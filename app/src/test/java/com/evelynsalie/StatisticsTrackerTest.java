@@ -0,0 +1,63 @@
+package com.evelynsalie;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatisticsTrackerTest {
+	private static StatisticsTracker randomTracker(int num_values, long seed) {
+		StatisticsTracker tracker = new StatisticsTracker(200, -2, 2);
+		Random random = new Random(seed);
+		for (int i = 0; i < num_values; i++) tracker.addValue(random.nextDouble() * 4 - 2);
+		
+		return tracker;
+	}
+	
+	@Test void extremePercentilesAreMinAndMax() {
+		StatisticsTracker tracker = randomTracker(100000, 1);
+		
+		assertEquals(tracker.getMin(), tracker.getPercentile(0));
+		assertEquals(tracker.getMax(), tracker.getPercentile(100));
+		assertEquals(0, tracker.getQ2(), 0.02 * 4);
+	}
+	
+	@Test void getPercentilesMatchesEachPercentileInOrder() {
+		StatisticsTracker tracker = randomTracker(100000, 2);
+		
+		double[] percents = {0, 10, 25, 50, 75, 90, 100};
+		double[] percentiles = tracker.getPercentiles(percents);
+		
+		assertEquals(percents.length, percentiles.length);
+		for (int i = 0; i < percents.length; i++) {
+			assertEquals(tracker.getPercentile(percents[i]), percentiles[i]);
+			if (i > 0) assertTrue(percentiles[i] >= percentiles[i - 1]);
+		}
+	}
+	
+	@Test void getPercentilesRejectsInvalidRequests() {
+		StatisticsTracker tracker = randomTracker(1000, 3);
+		assertThrows(IllegalArgumentException.class, () -> tracker.getPercentiles(new double[] {50, 25}));
+		assertThrows(IllegalArgumentException.class, () -> tracker.getPercentiles(new double[] {50, 101}));
+		
+		assertThrows(IllegalStateException.class, () -> new StatisticsTracker(200, -2, 2).getPercentiles(new double[] {50}));
+		
+		StatisticsTracker untracked = new StatisticsTracker(0, -2, 2);
+		untracked.addValue(1);
+		assertThrows(IllegalStateException.class, () -> untracked.getPercentiles(new double[] {50}));
+	}
+	
+	@Test void integratedTrackersCombineTheirValues() {
+		StatisticsTracker first = randomTracker(50000, 4);
+		StatisticsTracker second = randomTracker(50000, 5);
+		double min = Math.min(first.getMin(), second.getMin());
+		double max = Math.max(first.getMax(), second.getMax());
+		
+		first.integrateNewValues(second);
+		
+		assertEquals(100000, first.getCount());
+		assertEquals(50000, second.getCount());
+		assertEquals(min, first.getPercentile(0));
+		assertEquals(max, first.getPercentile(100));
+		assertThrows(IllegalArgumentException.class, () -> first.integrateNewValues(new StatisticsTracker(100, -2, 2)));
+	}
+}
\ No newline at end of file
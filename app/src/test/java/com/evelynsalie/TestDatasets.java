@@ -0,0 +1,63 @@
+package com.evelynsalie;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+// Writes small synthetic datasets (.ekdt) for tests. Some words lean positive or negative, so that trained models have something to learn.
+final class TestDatasets {
+	private static final String[] POSITIVE_WORDS = {"great", "delicious", "friendly", "amazing", "fresh"};
+	private static final String[] NEGATIVE_WORDS = {"awful", "rude", "cold", "horrible", "bland"};
+	private static final int NUM_NEUTRAL_WORDS = 300;
+	
+	private TestDatasets() {}
+	
+	/**
+	* Returns the lines of a random dataset, each a rating from 1 to 5 followed by its text, without the header.
+	*/
+	static String[] lines(int num_lines, long seed) {
+		Random random = new Random(seed);
+		String[] lines = new String[num_lines];
+		for (int i = 0; i < num_lines; i++) {
+			int rating = random.nextInt(5) + 1;
+			StringBuilder line = new StringBuilder().append(rating);
+			
+			int num_words = random.nextInt(12) + 1;
+			for (int j = 0; j < num_words; j++) {
+				line.append(' ');
+				if (random.nextInt(4) == 0) {
+					String[] words = random.nextInt(5) < rating ? POSITIVE_WORDS : NEGATIVE_WORDS;
+					line.append(words[random.nextInt(words.length)]);
+				}
+				else {
+					line.append('w').append(random.nextInt(NUM_NEUTRAL_WORDS));
+				}
+			}
+			
+			lines[i] = line.toString();
+		}
+		
+		return lines;
+	}
+	
+	/**
+	* Writes the passed lines to a new dataset in the passed directory, preceded by the header holding their number.
+	*/
+	static File write(File directory, String name, String[] lines) throws IOException {
+		StringBuilder contents = new StringBuilder().append(lines.length).append('\n');
+		for (String line : lines) contents.append(line).append('\n');
+		
+		File dataset = new File(directory, name + ".ekdt");
+		Files.writeString(dataset.toPath(), contents, StandardCharsets.UTF_8);
+		return dataset;
+	}
+	
+	/**
+	* Creates a temporary directory holding a random dataset of the passed number of lines, and returns the dataset.
+	*/
+	static File write(int num_lines, long seed) throws IOException {
+		return write(Files.createTempDirectory("dataset").toFile(), "test", lines(num_lines, seed));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.evelynsalie;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenDictionaryTest {
+	@Test void tokenizesLearnedWords() {
+		TokenDictionary dict = new TokenDictionary();
+		dict.learnTokens("the food was good");
+		dict.learnTokens("the fool");
+		
+		assertEquals(5, dict.getNumTokens());
+		assertEquals(2, dict.getNumOccurences(dict.getTokenId("the")));
+		assertEquals(-1, dict.getTokenId("foo"));
+		
+		int[] tokens = dict.tokenize("the unknown food  was");
+		assertArrayEquals(new int[] {dict.getTokenId("the"), dict.getTokenId("food"), dict.getTokenId("was")}, tokens);
+		assertEquals("food", dict.getString(tokens[1]));
+	}
+	
+	@Test void pruneKeepsFrequentWordsAndTheirPrefixes() {
+		TokenDictionary dict = new TokenDictionary();
+		dict.learnTokens("food food fool foo");
+		dict.prune(2);
+		
+		assertEquals(1, dict.getNumTokens());
+		assertEquals(-1, dict.getTokenId("fool"));
+		assertEquals(-1, dict.getTokenId("foo"));
+		assertEquals("food", dict.getString(dict.getTokenId("food")));
+		assertEquals(5, dict.getNumNodes());
+	}
+}
\ No newline at end of file